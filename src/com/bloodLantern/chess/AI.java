@@ -2,14 +2,13 @@ package com.bloodLantern.chess;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import javax.swing.SwingUtilities;
 
-import com.bloodLantern.chess.pieces.Bishop;
-import com.bloodLantern.chess.pieces.King;
-import com.bloodLantern.chess.pieces.Knight;
 import com.bloodLantern.chess.pieces.Pawn;
 import com.bloodLantern.chess.pieces.Piece;
 import com.bloodLantern.chess.pieces.Queen;
-import com.bloodLantern.chess.pieces.Rook;
 
 /**
  * The AI class is used to instantiate Chess AIs to play against.
@@ -23,7 +22,52 @@ public final class AI {
 	private static final int bishopValue = 300;
 	private static final int rookValue = 500;
 	private static final int queenValue = 900;
+	/**
+	 * Built-in Piece values indexed by {@link Piece#getType()}, copied by
+	 * {@link EvaluationParameters}.
+	 */
+	static final int[] PIECE_VALUES = { pawnValue, knightValue, bishopValue, rookValue, queenValue, 0 };
+	/**
+	 * Score of a mate on the board. Mates in {@code n} plies are worth
+	 * {@code MATE_SCORE - n}.
+	 */
+	static final int MATE_SCORE = 100_000;
+	/**
+	 * Score of a position known to be won but without a known distance to mate.
+	 */
+	static final int KNOWN_WIN = 10_000;
+	/**
+	 * The opening book consulted before searching. May be null.
+	 */
+	private static OpeningBook openingBook = null;
+	/**
+	 * Table of the search results, shared by every AI and kept between Moves.
+	 */
+	private static TranspositionTable transpositionTable = new TranspositionTable(1 << 20);
+	/**
+	 * How long to search for each Move (in ms).
+	 */
+	private static long thinkingTime = 1000;
+	/**
+	 * Should the AI search on the opponent's time ? Cleared by the
+	 * {@code noponder} program argument.
+	 */
+	public static boolean pondering = true;
 	private final boolean white;
+	/**
+	 * The search running in the background while the opponent thinks. Null if
+	 * not pondering.
+	 */
+	private Search search = null;
+	/**
+	 * The search started by {@link #chooseMoveAsync()}. Null if not thinking.
+	 */
+	private Search thinking = null;
+	/**
+	 * The reply expected from the opponent in the Polyglot encoding, 0 if
+	 * unknown.
+	 */
+	private int ponderMove = 0;
 
 	/**
 	 * Constructs a new AI.
@@ -33,88 +77,41 @@ public final class AI {
 	}
 
 	/**
-	 * This method searches for the best Move.
+	 * Gives each Move a score guess and sorts them from the most promising one.
+	 *
+	 * @param moves    The Moves to sort.
+	 * @param hashMove The best Move found by a previous search in the Polyglot
+	 *                 encoding, searched first. 0 if none.
 	 */
-	private int search(int depth, int startingDepth, int alpha, int beta) {
-		if (depth == 0)
-			return searchAllCaptures(alpha, beta);
-
-		boolean turn = startingDepth == depth ? white : depth % 2 == startingDepth % 2;
-
-		List<Move> moves = Chess.getInstance().getPossibleMoves(turn);
-		if (moves.size() == 0) {
-			if (turn) {
-				if (King.getWhiteKing().isInDanger())
-					return Integer.MIN_VALUE;
-			} else if (King.getBlackKing().isInDanger())
-				return Integer.MIN_VALUE;
-			return 0;
-		}
-
-		for (Move move : moves) {
-			move.makeMove(false);
-			int evaluation = -search(depth - 1, startingDepth, -beta, -alpha);
-			move.unmakeMove(false);
-			if (evaluation >= beta)
-				// Move was too good, opponent will avoid this position
-				return beta;
-			alpha = Math.max(alpha, evaluation);
-		}
-
-		return alpha;
-	}
-
-	private int searchAllCaptures(int alpha, int beta) {
-		// Captures aren't typlically forced, so see what the eval is before making a
-		// capture. Otherwise if only bad captures are available, the position will be
-		// evaluated as bas, even if good non-capture moves exist.
-		int evaluation = evaluate();
-		if (evaluation >= beta)
-			return beta;
-		alpha = Math.max(alpha, evaluation);
-
-		List<Move> captureMoves = Chess.getInstance().getPossibleMoves(white);
-		for (Move move : captureMoves)
-			if (!move.isCapture())
-				captureMoves.remove(move);
-		orderMoves(captureMoves);
-
-		for (Move captureMove : captureMoves) {
-			captureMove.makeMove(false);
-			evaluation = -searchAllCaptures(-beta, -alpha);
-			captureMove.unmakeMove(false);
-
-			if (evaluation >= beta)
-				return beta;
-			alpha = Math.max(alpha, evaluation);
-		}
-
-		return alpha;
-	}
-
-	public void orderMoves(List<Move> moves) {
+	public static void orderMoves(List<Move> moves, int hashMove) {
+		int[] values = EvaluationParameters.getCurrent().pieceValues;
 		for (Move move : moves) {
 			int moveScoreGuess = 0;
 
 			// Priotitize capturing opponent's most vavluable pieces with our least valuable
 			// pieces
 			if (move.getMoveToPiece() != null)
-				moveScoreGuess = 10 * getPieceValue(move.getMoveToPiece()) - getPieceValue(move.getPiece());
+				moveScoreGuess = 10 * values[move.getMoveToPiece().getType()] - values[move.getPiece().getType()];
 
 			// Promoting a Pawn is likely to be good
 			if (move.isPromotion())
-				moveScoreGuess += getPieceValue(move.getPromotionPiece());
+				moveScoreGuess += values[move.getPromotionPiece() != null ? move.getPromotionPiece().getType()
+						: Piece.QUEEN];
 
 			// Penalize moving our pieces to a square attacked by an opponent pawn
 			boolean _protected = false;
-			for (Piece piece : move.getMoveTo().getEnemyProtection(white))
+			for (Piece piece : move.getMoveTo().getEnemyProtection(move.getPiece().isWhite()))
 				if (piece instanceof Pawn)
 					_protected = true;
 			if (_protected)
-				moveScoreGuess -= getPieceValue(move.getPiece());
+				moveScoreGuess -= values[move.getPiece().getType()];
+
+			if (hashMove != 0 && OpeningBook.encodeMove(move) == hashMove)
+				moveScoreGuess = Integer.MAX_VALUE;
 
 			move.setScore(moveScoreGuess);
 		}
+		moves.sort((a, b) -> Integer.compare(b.getScore(), a.getScore()));
 	}
 
 	public Piece choosePromotion(Pawn pawn) {
@@ -123,62 +120,214 @@ public final class AI {
 
 	/**
 	 * This method computes the different Move possibilities and returns the best
-	 * one.
+	 * one. If the position is in the {@link OpeningBook}, a book Move is played
+	 * without searching. If the opponent played the expected reply while we were
+	 * {@link #ponder() pondering}, the pondering search carries on for
+	 * {@link #thinkingTime} more, otherwise it is stopped and a new search is
+	 * started.
+	 * <p>
+	 * This method blocks until the search is over, so it must not be called on
+	 * the Event Dispatch Thread. Use {@link #chooseMoveAsync()} there.
 	 * 
 	 * @return The current best Move to play for the AI.
 	 */
 	public Move chooseMove() {
-		List<Move> moves = Chess.getInstance().getPossibleMoves(white);
+		Chess chess = Chess.getInstance();
+		Move move = chooseBookMove(chess);
+		if (move != null)
+			return move;
+		Search current = startSearch(chess);
+		try {
+			current.await();
+		} catch (InterruptedException e) {
+			current.stop();
+			Thread.currentThread().interrupt();
+		}
+		return getChosenMove(chess, current);
+	}
+
+	/**
+	 * Same as {@link #chooseMove()} but returns as soon as the search is started.
+	 * Must be called on the Event Dispatch Thread, where the returned future is
+	 * completed so that the Move can be played right away. It is cancelled if
+	 * {@link #cancel()} is called before the search is over.
+	 *
+	 * @return The future best Move to play for the AI.
+	 */
+	public CompletableFuture<Move> chooseMoveAsync() {
+		Chess chess = Chess.getInstance();
+		Move move = chooseBookMove(chess);
+		if (move != null)
+			return CompletableFuture.completedFuture(move);
+		Search current = thinking = startSearch(chess);
+		return current.getResult().thenApplyAsync(bestMove -> {
+			if (thinking == current)
+				thinking = null;
+			return getChosenMove(chess, current);
+		}, SwingUtilities::invokeLater);
+	}
+
+	/**
+	 * Looks the current position up in the {@link OpeningBook}. The pondering
+	 * search, if any, is stopped when a book Move is found.
+	 *
+	 * @return The book Move to play, null if there isn't any.
+	 */
+	private Move chooseBookMove(Chess chess) {
+		if (openingBook == null)
+			return null;
+		Move move = openingBook.chooseMove(chess, white, new Random());
+		if (move != null) {
+			stopPondering();
+			ponderMove = 0;
+		}
+		return move;
+	}
+
+	/**
+	 * Carries the pondering search on if the opponent played the expected reply,
+	 * otherwise stops it and starts a new one.
+	 *
+	 * @return The search of the current position.
+	 */
+	private Search startSearch(Chess chess) {
+		Search current = search;
+		search = null;
+		long deadline = System.currentTimeMillis() + thinkingTime;
+		if (current != null) {
+			try {
+				current.awaitReady();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (current.getKey() == chess.getPositionHash(white))
+				// Ponderhit
+				current.setDeadline(deadline);
+			else {
+				current.stop();
+				current = null;
+			}
+		}
+		if (current == null)
+			current = start(new Search(chess.generateFEN(), chess.getPositionHistory(), 0, white,
+					transpositionTable, deadline));
+		return current;
+	}
+
+	/**
+	 * Decodes the best Move of a finished search. Falls back on a random Move if
+	 * the search couldn't find any.
+	 */
+	private Move getChosenMove(Chess chess, Search current) {
+		ponderMove = current.getPonderMove();
+		Move move = OpeningBook.decodeMove(chess, white, current.getBestMove());
+		if (move != null)
+			return move;
+		List<Move> moves = chess.getPossibleMoves(white);
 		return moves.get(new Random().nextInt(0, moves.size()));
 	}
 
 	/**
-	 * This method evaluates who is currently winning the game and returns how much
-	 * the AI is winning. Note taht the returned value may be negative if the AI is
-	 * currently losing.
-	 * 
-	 * @return An int value representing how much the AI is currently winning.
+	 * Starts searching in the background the position after the reply expected
+	 * from the opponent, using its thinking time. Must be called once the Move
+	 * returned by {@link #chooseMove()} has been played. Does nothing if pondering
+	 * is disabled or no reply is expected.
+	 */
+	public void ponder() {
+		stopPondering();
+		if (!pondering || ponderMove == 0)
+			return;
+		Chess chess = Chess.getInstance();
+		search = start(new Search(chess.generateFEN(), chess.getPositionHistory(), ponderMove, white,
+				transpositionTable, Long.MAX_VALUE));
+	}
+
+	/**
+	 * Stops the pondering search, if any. Its results stay in the transposition
+	 * table.
+	 */
+	public void stopPondering() {
+		if (search != null) {
+			search.stop();
+			search = null;
+		}
+	}
+
+	/**
+	 * Cancels the search of {@link #chooseMoveAsync()} and the pondering search,
+	 * if any. They stop at their next deadline check and no Move is played.
 	 */
-	private int evaluate() {
-		if (white)
-			return evaluate(true) - evaluate(false);
-		else
-			return evaluate(false) - evaluate(true);
+	public void cancel() {
+		if (search != null) {
+			search.cancel();
+			search = null;
+		}
+		if (thinking != null) {
+			thinking.cancel();
+			thinking = null;
+		}
+		ponderMove = 0;
 	}
 
 	/**
-	 * This method is used by {@link #evaluate()} to get the winning value of each
-	 * player.
+	 * Runs {@code search} on a new daemon thread.
+	 */
+	private static Search start(Search search) {
+		Thread thread = new Thread(search, "Search");
+		thread.setDaemon(true);
+		thread.start();
+		return search;
+	}
+
+	/**
+	 * This method evaluates who is currently winning the game and returns how much
+	 * {@code white} is winning. Note that the returned value may be negative if
+	 * {@code white} is currently losing. The material and piece-square scores are
+	 * kept up to date by the board so this is O(1), and positions already
+	 * evaluated are read back from the {@link EvaluationCache} of the
+	 * {@link EvaluationParameters} of the board.
 	 * 
-	 * @param white Evaluate white or black ?
+	 * @param white The side for which the score should be returned.
 	 * @return An int value representing how much {@code white} is currently
 	 *         winning.
 	 */
-	private int evaluate(boolean white) {
-		int result = 0;
-		for (Tile[] tiles : Chess.getInstance().getTiles())
-			for (Tile tile : tiles)
-				if (tile.getPiece() != null)
-					if (tile.getPiece().isWhite() == white)
-						result += getPieceValue(tile.getPiece());
-		return result;
-	}
-
-	private static int getPieceValue(Piece piece) {
-		if (piece == null)
-			throw new NullPointerException("Cannot return the value of a null Piece.");
-		if (piece instanceof Pawn)
-			return pawnValue;
-		if (piece instanceof Knight)
-			return knightValue;
-		if (piece instanceof Bishop)
-			return bishopValue;
-		if (piece instanceof Rook)
-			return rookValue;
-		if (piece instanceof Queen)
-			return queenValue;
-		// piece instanceof King is true then
-		return 0;
+	static int evaluate(boolean white) {
+		Evaluation evaluation = Chess.getInstance().getEvaluation();
+		EvaluationCache cache = evaluation.getParameters().getCache();
+		long key = evaluation.getPieceKey();
+		int result = cache.probe(key);
+		if (result == EvaluationCache.MISS) {
+			result = evaluation.evaluate(true);
+			cache.store(key, result);
+		}
+		return white ? result : -result;
+	}
+
+	/**
+	 * Setter for the thinkingTime value.
+	 *
+	 * @param thinkingTime How long to search for each Move (in ms).
+	 */
+	public static void setThinkingTime(long thinkingTime) {
+		AI.thinkingTime = thinkingTime;
+	}
+
+	/**
+	 * Getter for the transpositionTable value.
+	 *
+	 * @return The transpositionTable to get.
+	 */
+	public static TranspositionTable getTranspositionTable() {
+		return transpositionTable;
+	}
+
+	/**
+	 * Setter for the openingBook value.
+	 *
+	 * @param openingBook The openingBook to set. May be null to stop using a book.
+	 */
+	public static void setOpeningBook(OpeningBook openingBook) {
+		AI.openingBook = openingBook;
 	}
 
 	/**
@@ -0,0 +1,330 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command-line tool building a Polyglot opening book from PGN files. The games
+ * are streamed and replayed on every core, each (position, Move) occurrence is
+ * collected in memory-bounded chunks that are sorted and written to temporary
+ * run files, and the runs are finally merged into the sorted book.
+ * <p>
+ * Arguments: {@code out=<path>} for the book to write (default
+ * {@code book.bin}), {@code plies=<n>} for how many plies of each game are
+ * kept (default 24), {@code chunk=<n>} for how many occurrences are held in
+ * memory before writing a run (default 2000000), {@code threads=<n>} for the
+ * number of replay threads (default: every core), {@code zobrist=<path>} for
+ * the hash keys to use instead of the ones chosen by {@link Zobrist}, then the
+ * PGN files. Games with an unreadable starting position or Move are counted
+ * and skipped, while failing to write a run aborts the build.
+ *
+ * @author BloodLantern
+ */
+public final class BookBuilder {
+
+	/**
+	 * A Move played in a position, with the game result from the point of view
+	 * of the side that played it.
+	 */
+	private record Occurrence(long key, int move, int wins, int draws, int losses) {
+	}
+
+	private static final Comparator<Occurrence> ORDER = (a, b) -> {
+		int result = Long.compareUnsigned(a.key, b.key);
+		return result != 0 ? result : Integer.compare(a.move, b.move);
+	};
+
+	private final int plies;
+	private final int chunkSize;
+	private final Path directory;
+	private final List<Path> runs = new ArrayList<>();
+	private List<Occurrence> chunk = new ArrayList<>();
+
+	private final AtomicLong games = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	/**
+	 * The first error met while writing a run from a replay thread.
+	 */
+	private volatile IOException failure;
+
+	private BookBuilder(int plies, int chunkSize) throws IOException {
+		this.plies = plies;
+		this.chunkSize = chunkSize;
+		directory = Files.createTempDirectory("book");
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path out = Path.of("book.bin");
+		int plies = 24;
+		int chunkSize = 2_000_000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<Path> inputs = new ArrayList<>();
+		for (String arg : args)
+			if (arg.startsWith("out="))
+				out = Path.of(arg.substring(4));
+			else if (arg.startsWith("plies="))
+				plies = Integer.valueOf(arg.substring(6));
+			else if (arg.startsWith("chunk="))
+				chunkSize = Integer.valueOf(arg.substring(6));
+			else if (arg.startsWith("threads="))
+				threads = Integer.valueOf(arg.substring(8));
+			else if (arg.startsWith("zobrist="))
+				Zobrist.load(Path.of(arg.substring(8)));
+			else
+				inputs.add(Path.of(arg));
+
+		if (!Zobrist.isStandard())
+			System.err.println("Not the standard Polyglot keys: the book will only be readable with the same keys");
+		long time = System.currentTimeMillis();
+		BookBuilder builder = new BookBuilder(plies, chunkSize);
+		try {
+			builder.replay(inputs, threads);
+			long entries = builder.merge(out);
+			System.out.println("Games: " + builder.games + "  Unreadable games: " + builder.errors + "  Runs: "
+					+ builder.runs.size() + "  Entries: " + entries + "  Time: "
+					+ (System.currentTimeMillis() - time) + " milliseconds");
+		} finally {
+			for (Path run : builder.runs)
+				Files.deleteIfExists(run);
+			Files.deleteIfExists(builder.directory);
+		}
+	}
+
+	/**
+	 * Reads every game of {@code inputs} and replays them on {@code threads}
+	 * threads.
+	 *
+	 * @throws IOException If a file can't be read or a run can't be written.
+	 */
+	private void replay(List<Path> inputs, int threads) throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// Bounds the number of games read but not replayed yet
+		Semaphore pending = new Semaphore(threads * 64);
+		try {
+			for (Path input : inputs)
+				try (PgnReader reader = new PgnReader(Files.newBufferedReader(input, StandardCharsets.ISO_8859_1))) {
+					for (PgnGame game = reader.next(); game != null && failure == null; game = reader.next()) {
+						PgnGame replayed = game;
+						pending.acquire();
+						pool.execute(() -> {
+							try {
+								add(replay(replayed));
+							} catch (IllegalArgumentException e) {
+								// Invalid starting position
+								errors.incrementAndGet();
+							} catch (IOException e) {
+								if (failure == null)
+									failure = e;
+							} finally {
+								pending.release();
+							}
+						});
+					}
+				}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		}
+		if (failure != null)
+			throw failure;
+		writeRun();
+	}
+
+	/**
+	 * Replays the first plies of {@code game} on a board bound to the current
+	 * thread.
+	 *
+	 * @return The Moves played and their results.
+	 */
+	private List<Occurrence> replay(PgnGame game) {
+		List<Occurrence> result = new ArrayList<>();
+		games.incrementAndGet();
+		int whiteScore = switch (game.getResult()) {
+		case "1-0" -> 2;
+		case "0-1" -> 0;
+		case "1/2-1/2" -> 1;
+		default -> -1;
+		};
+		if (whiteScore < 0)
+			// Unfinished games don't tell anything about their Moves
+			return result;
+		Chess chess = new Chess(game.getStartingFen());
+		List<String> moves = game.getMoves();
+		for (int ply = 0; ply < plies && ply < moves.size(); ply++) {
+			boolean white = chess.getTurn();
+			Move move = Notation.parseSan(chess, white, moves.get(ply));
+			if (move == null) {
+				errors.incrementAndGet();
+				break;
+			}
+			int score = white ? whiteScore : 2 - whiteScore;
+			result.add(new Occurrence(chess.getPositionHash(white), OpeningBook.encodeMove(move), score == 2 ? 1 : 0,
+					score == 1 ? 1 : 0, score == 0 ? 1 : 0));
+			chess.playMove(move);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds occurrences to the current chunk, writing it as a run once full.
+	 */
+	private synchronized void add(List<Occurrence> occurrences) throws IOException {
+		chunk.addAll(occurrences);
+		if (chunk.size() >= chunkSize)
+			writeRun();
+	}
+
+	/**
+	 * Sorts the current chunk, merges its duplicates and writes it to a new run
+	 * file.
+	 */
+	private synchronized void writeRun() throws IOException {
+		if (chunk.isEmpty())
+			return;
+		List<Occurrence> sorted = chunk;
+		chunk = new ArrayList<>();
+		sorted.sort(ORDER);
+		Path run = directory.resolve("run" + runs.size());
+		runs.add(run);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+			Occurrence current = null;
+			for (Occurrence occurrence : sorted)
+				if (current != null && ORDER.compare(current, occurrence) == 0)
+					current = combine(current, occurrence);
+				else {
+					if (current != null)
+						write(out, current);
+					current = occurrence;
+				}
+			write(out, current);
+		}
+	}
+
+	private static Occurrence combine(Occurrence a, Occurrence b) {
+		return new Occurrence(a.key, a.move, a.wins + b.wins, a.draws + b.draws, a.losses + b.losses);
+	}
+
+	private static void write(DataOutputStream out, Occurrence occurrence) throws IOException {
+		out.writeLong(occurrence.key);
+		out.writeShort(occurrence.move);
+		out.writeInt(occurrence.wins);
+		out.writeInt(occurrence.draws);
+		out.writeInt(occurrence.losses);
+	}
+
+	/**
+	 * A run file being merged, with its next occurrence.
+	 */
+	private static final class RunReader {
+		private final DataInputStream in;
+		private Occurrence current;
+
+		private RunReader(Path run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+			advance();
+		}
+
+		private void advance() throws IOException {
+			try {
+				current = new Occurrence(in.readLong(), in.readShort() & 0xFFFF, in.readInt(), in.readInt(),
+						in.readInt());
+			} catch (EOFException e) {
+				current = null;
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Merges every run into the book written to {@code out}.
+	 *
+	 * @return The number of book entries written.
+	 */
+	private long merge(Path out) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> ORDER.compare(a.current, b.current));
+		for (Path run : runs) {
+			RunReader reader = new RunReader(run);
+			if (reader.current != null)
+				queue.add(reader);
+		}
+		long entries = 0;
+		try (DataOutputStream book = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) {
+			List<Occurrence> position = new ArrayList<>();
+			Occurrence current = null;
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				Occurrence occurrence = reader.current;
+				reader.advance();
+				if (reader.current != null)
+					queue.add(reader);
+				if (current != null && ORDER.compare(current, occurrence) == 0) {
+					current = combine(current, occurrence);
+					continue;
+				}
+				if (current != null) {
+					if (current.key != occurrence.key) {
+						position.add(current);
+						entries += writePosition(book, position);
+						position.clear();
+					} else
+						position.add(current);
+				}
+				current = occurrence;
+			}
+			if (current != null) {
+				position.add(current);
+				entries += writePosition(book, position);
+			}
+		} finally {
+			for (RunReader reader : queue)
+				reader.in.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes the Moves of a single position. Each weight is twice the wins plus
+	 * the draws, scaled down so the greatest one fits in 16 bits. Moves that
+	 * never scored are left out.
+	 *
+	 * @return The number of entries written.
+	 */
+	private static int writePosition(DataOutputStream book, List<Occurrence> position) throws IOException {
+		long max = 0;
+		for (Occurrence occurrence : position)
+			max = Math.max(max, 2L * occurrence.wins + occurrence.draws);
+		int written = 0;
+		for (Occurrence occurrence : position) {
+			long weight = 2L * occurrence.wins + occurrence.draws;
+			if (max > 0xFFFF)
+				weight = weight * 0xFFFF / max;
+			if (weight == 0)
+				continue;
+			book.writeLong(occurrence.key);
+			book.writeShort(occurrence.move);
+			book.writeShort((int) weight);
+			book.writeInt(0);
+			written++;
+		}
+		return written;
+	}
+
+}
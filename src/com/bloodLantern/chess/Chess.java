@@ -3,36 +3,45 @@ package com.bloodLantern.chess;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
-import javax.imageio.ImageIO;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFormattedTextField;
 import javax.swing.JFrame;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.WindowConstants;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
-import com.bloodLantern.chess.pieces.Bishop;
-import com.bloodLantern.chess.pieces.IfNotMoved;
 import com.bloodLantern.chess.pieces.King;
-import com.bloodLantern.chess.pieces.Knight;
 import com.bloodLantern.chess.pieces.Pawn;
 import com.bloodLantern.chess.pieces.Piece;
-import com.bloodLantern.chess.pieces.Queen;
 import com.bloodLantern.chess.pieces.Rook;
 
 /**
@@ -48,8 +57,10 @@ public class Chess {
 	 * @param args Additional String arguments.
 	 */
 	public static void main(String[] args) {
+		// Decoded while the arguments are parsed and the dialog is shown
+		Textures.preload();
 		// Default board position
-		String board = "rnbqkbnr/pppppppp/////PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+		String board = STARTING_FEN;
 		int runTestMoves = 0;
 		for (String arg : args) {
 			if (arg.equalsIgnoreCase("devmode"))
@@ -58,14 +69,61 @@ public class Chess {
 				showPotentiallyProtectedTiles = true;
 			else if (arg.equalsIgnoreCase("notimer"))
 				timer = false;
+			else if (arg.equalsIgnoreCase("debugeval"))
+				Evaluation.debug = true;
+			else if (arg.equalsIgnoreCase("noponder"))
+				AI.pondering = false;
 			else if (arg.startsWith("board="))
 				board = arg.substring(6);
 			else if (arg.startsWith("testMoves="))
 				runTestMoves = Integer.valueOf(arg.substring(10));
+			else if (arg.startsWith("timeControl="))
+				timeControl = arg.substring(12);
+			else if (arg.startsWith("delay="))
+				delay = (long) (Double.valueOf(arg.substring(6)) * 1000);
+			else if (arg.startsWith("thinkingTime="))
+				AI.setThinkingTime(Long.valueOf(arg.substring(13)));
+			else if (arg.startsWith("evalCache="))
+				EvaluationParameters.getDefault().setCacheSize(Integer.valueOf(arg.substring(10)));
+			else if (arg.startsWith("zobrist="))
+				try {
+					Zobrist.load(Path.of(arg.substring(8)));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			else if (arg.startsWith("book="))
+				try {
+					AI.setOpeningBook(new OpeningBook(Path.of(arg.substring(5))));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			else if (arg.startsWith("nnue="))
+				try {
+					EvaluationParameters.getDefault().setNetwork(NeuralNetwork.load(Path.of(arg.substring(5))));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			else if (arg.startsWith("tablebases="))
+				try {
+					Tablebase.load(Path.of(arg.substring(11)));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			else if (arg.startsWith("params="))
+				try {
+					EvaluationParameters.getDefault().load(Path.of(arg.substring(7)));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 		}
 		new Chess(board, runTestMoves).start();
 	}
 
+	/**
+	 * The FEN of the standard starting position.
+	 */
+	public static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
 	/**
 	 * Whether to play against an AI or a player.
 	 */
@@ -84,11 +142,24 @@ public class Chess {
 	 * Should the timer decrease over time ?
 	 */
 	public static boolean timer = true;
-
 	/**
-	 * Last timer update time (in ms).
+	 * The time control of the games, as {@code minutes[+increment seconds]}.
+	 * Set by the {@code timeControl} program argument.
+	 */
+	private static String timeControl = "10";
+	/**
+	 * The delay of each turn (in ms). Set by the {@code delay} program argument,
+	 * in seconds.
 	 */
-	private long lastTimerUpdate;
+	private static long delay = 0;
+	/**
+	 * How often the clock is checked and the information frame repainted (in ms).
+	 */
+	private static final int TICK_INTERVAL = 100;
+	/**
+	 * How many of the games found in a {@link GameDatabase} are listed.
+	 */
+	private static final int MAX_FOUND_GAMES = 1000;
 	/**
 	 * False if the game has ended.
 	 */
@@ -108,13 +179,13 @@ public class Chess {
 	 */
 	private boolean turn = true;
 	/**
-	 * The play time left for the white player (in ms).
+	 * The play time left of both players. Null for the boards without frames.
 	 */
-	private int timeLeftWhite = DEFAULT_TIME;
+	private GameClock clock = null;
 	/**
-	 * The play time left for the black player (in ms).
+	 * Checks the clock and repaints the information frame while playing.
 	 */
-	private int timeLeftBlack = DEFAULT_TIME;
+	private Timer ticker = null;
 	/**
 	 * An Array of Tiles representing a Chess board.
 	 */
@@ -123,10 +194,6 @@ public class Chess {
 	 * The default rendering size of each Tile (in px).
 	 */
 	public static final int TILES_SIZE = 75;
-	/**
-	 * The default play time for each player (in ms).
-	 */
-	private static final int DEFAULT_TIME = 600000;
 	/**
 	 * The size of the game frame.
 	 */
@@ -140,17 +207,34 @@ public class Chess {
 	 */
 	private static final int INFO_FRAME_HEIGHT = 200;
 	/**
-	 * The last created instance of the Chess class.
+	 * The last created instance of the Chess class with frames.
 	 */
 	private static Chess instance = null;
+	/**
+	 * The headless instance bound to each thread, if any. Lets the command-line
+	 * tools use one board per thread.
+	 */
+	private static final ThreadLocal<Chess> threadInstance = new ThreadLocal<>();
 	/**
 	 * The taken Pieces.
 	 */
 	public CapturedPieces capturedPieces = new CapturedPieces();
 	/**
-	 * The board Image.
+	 * Overlay colors and fonts, created once instead of on every repaint.
+	 */
+	private static final Color MOVE_COLOR = new Color(255, 255, 0, 150);
+	private static final Color CAPTURE_COLOR = new Color(255, 0, 0, 150);
+	private static final Color PROTECTED_COLOR = new Color(255, 165, 0, 150);
+	private static final Color CASTLE_COLOR = new Color(220, 0, 255, 100);
+	private static final Color DEBUG_BACKGROUND_COLOR = new Color(0, 0, 0, 150);
+	private static final Font RESULT_FONT = new Font("Arial", Font.BOLD, 30);
+	private static final Font INFO_FONT = new Font("Arial", Font.PLAIN, 20);
+	private static final Font TIMER_FONT = new Font("Arial", Font.PLAIN, 30);
+	private static final Font DEBUG_FONT = new Font("Arial", Font.PLAIN, 12);
+	/**
+	 * Where the frame time is shown in developer mode.
 	 */
-	private static final Image BOARD = getBoardImage();
+	private static final Rectangle FRAME_TIME_BOUNDS = new Rectangle(0, 0, 130, 18);
 	/**
 	 * Information frame.
 	 */
@@ -175,25 +259,70 @@ public class Chess {
 	 * move.
 	 */
 	private int fullmoveNumber = 1;
+	/**
+	 * Reads and writes the FENs of this board.
+	 */
+	private final Fen fenCodec = new Fen();
+	/**
+	 * The FEN of the position the game started from.
+	 */
+	private String startingFen;
+	/**
+	 * The Moves played since {@link #startingFen}, to save the game.
+	 */
+	private final List<Move> playedMoves = new ArrayList<>();
+	/**
+	 * The times left of both players at the beginning of each turn played on the
+	 * board, the last ones matching the last {@link #playedMoves}, to set the
+	 * clock back when Moves are taken back. The Moves of a loaded game aren't
+	 * timed.
+	 */
+	private final List<long[]> clockTimes = new ArrayList<>();
+	/**
+	 * The game database last searched, to select it again in the file chooser.
+	 */
+	private Path databasePath;
+	/**
+	 * Runs the tasks that need a headless board on their own daemon thread, so
+	 * that neither the Event Dispatch Thread nor a shared pool thread gets bound
+	 * to it.
+	 */
+	private static final Executor BACKGROUND = task -> {
+		Thread thread = new Thread(task, "Background");
+		thread.setDaemon(true);
+		thread.start();
+	};
+	/**
+	 * Ring buffer of the position hashes, the current one being at
+	 * {@code historyPly - 1}. Only the last {@link #historyCount} ones, played
+	 * since the last irreversible Move, are used to detect repetitions. Large
+	 * enough for the fifty-move rule plus a full search depth.
+	 */
+	private final long[] positionHistory = new long[HISTORY_SIZE];
+	private int historyPly = 0;
+	/**
+	 * The number of positions since the last irreversible Move, the current one
+	 * included. No repetition can go further back.
+	 */
+	private int historyCount = 0;
+	private static final int HISTORY_SIZE = 256;
 	/**
 	 * The AI used to play against the player.
 	 */
 	public AI ai;
-
 	/**
-	 * Used to get the board Image. This must be made in this method because of the
-	 * exception thrown by this statement.
-	 *
-	 * @return The Image of the board.
+	 * The Move the AI is thinking about. Null if it isn't thinking.
 	 */
-	private static Image getBoardImage() {
-		try {
-			return ImageIO.read(new FileInputStream("board.jpg"));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return null;
-	}
+	private CompletableFuture<Move> aiMove = null;
+	/**
+	 * Incremental evaluation of the board, updated by the Tiles.
+	 */
+	private final Evaluation evaluation = new Evaluation();
+	/**
+	 * The Kings of this board.
+	 */
+	private King whiteKing;
+	private King blackKing;
 
 	private class Board {
 		private int possibleMoves;
@@ -277,6 +406,7 @@ public class Chess {
 		case JOptionPane.NO_OPTION -> multiplayer = true;
 		case JOptionPane.CANCEL_OPTION -> System.exit(0);
 		}
+		clock = GameClock.parse(timeControl, delay);
 		setupTiles();
 		setupPiecesFromFEN(fen);
 		setupFrames();
@@ -285,6 +415,28 @@ public class Chess {
 			moveGenerationTest(runTestMoves, runTestMoves);
 	}
 
+	/**
+	 * Constructs a Chess object without any frame or dialog. Used by the
+	 * command-line tools. The board is bound to the current thread, which means
+	 * {@link #getInstance()} returns it on this thread only.
+	 *
+	 * @param fen The FEN board to setup.
+	 */
+	Chess(String fen) {
+		threadInstance.set(this);
+		setupTiles();
+		setupPiecesFromFEN(fen);
+		computeTileProtection();
+	}
+
+	/**
+	 * Binds this headless board to the current thread again, after another one
+	 * was constructed on it, for example by a {@link Search} run on this thread.
+	 */
+	void bind() {
+		threadInstance.set(this);
+	}
+
 	Board moveGenerationTest(int depth, int startingDepth) {
 		if (depth == 0)
 			return new Board(1);
@@ -294,7 +446,7 @@ public class Chess {
 		Board board = new Board();
 
 		for (Move move : moves) {
-			move.makeMove(false);
+			move.makeFullMove();
 			if (depth == 1) {
 				if (move.isCapture())
 					board.captures++;
@@ -310,7 +462,7 @@ public class Chess {
 					board.draws++;
 			}
 			board.add(moveGenerationTest(depth - 1, startingDepth));
-			move.unmakeMove(false);
+			move.unmakeFullMove();
 		}
 
 		System.out.println("Depth: " + depth + " ply  Result: " + board + "  Time: "
@@ -336,22 +488,13 @@ public class Chess {
 					moves.add(new Move(piece, t));
 			return moves;
 		} else if (piece instanceof King king) {
-			// Castling check
-			for (int i = 2; i < 6; i += 4) {
-				Tile tile = tiles[i][king.getTile().getLine()];
-				if (tile.getLine() == piece.getTile().getLine())
-					if (tile.getRow() + 2 == piece.getTile().getRow()
-							|| tile.getRow() - 2 == piece.getTile().getRow()) {
-						Piece piece1 = null;
-						for (int i2 = 0; i2 < 14; i2 += 7) {
-							piece1 = tiles[i2][king.getTile().getLine()].getPiece();
-							if (piece1 instanceof Rook rook)
-								if (king.checkCastle(rook)) {
-									moves.add(new Move(king, tile));
-								}
-						}
-					}
-			}
+			// Castling check, the King moves two Tiles towards the Rook
+			int line = king.getTile().getLine();
+			if (king.getTile().getRow() == 4)
+				for (int row = 0; row < 8; row += 7)
+					if (tiles[row][line].getPiece() instanceof Rook rook && rook.isWhite() == king.isWhite())
+						if (king.checkCastle(rook))
+							moves.add(new Move(king, tiles[row == 0 ? 2 : 6][line]));
 		}
 		for (Tile t : piece.getProtectedTiles())
 			if (piece.checkMove(t))
@@ -372,249 +515,29 @@ public class Chess {
 	 * Setups the Pieces on the board.
 	 *
 	 * @param fen The FEN board to setup.
+	 * @throws Fen.FormatException If {@code fen} is malformed. The board is left
+	 *                             untouched.
 	 */
-	private void setupPiecesFromFEN(String fen) {
-		fen = fen.replaceAll("_", " ");
-		for (Tile[] tiles : tiles)
-			for (Tile tile : tiles)
-				tile.setPiece(null, false);
-		// Between 0 and 7 included
-		int row = 0;
-		// Between 0 and 7 included
-		int line = 0;
-		// Value between 1 and 6 included
-		int field = 1;
-		String halfmoveClock = "", fullmoveNumber = "";
-		// Read the board String
-		for (char c : fen.toCharArray()) {
-			if (c == ' ')
-				// We use an underscore instead of a space bacause the main method args are
-				// already separated with spaces
-				field++;
-			else
-				switch (field) {
-				case 1:
-					if (Character.getNumericValue(c) > 0 && Character.getNumericValue(c) <= 8)
-						// Change row
-						row += Character.getNumericValue(c);
-					else
-						switch (c) {
-						case '/':
-							// Change line
-							row = 0;
-							line++;
-							break;
-						case 'K':
-							new King(true, tiles[row][line]).setMoved(true);
-							row++;
-							break;
-						case 'k':
-							new King(false, tiles[row][line]).setMoved(true);
-							row++;
-							break;
-						case 'Q':
-							new Queen(true, tiles[row][line]);
-							row++;
-							break;
-						case 'q':
-							new Queen(false, tiles[row][line]);
-							row++;
-							break;
-						case 'B':
-							new Bishop(true, tiles[row][line]);
-							row++;
-							break;
-						case 'b':
-							new Bishop(false, tiles[row][line]);
-							row++;
-							break;
-						case 'N':
-							new Knight(true, tiles[row][line]);
-							row++;
-							break;
-						case 'n':
-							new Knight(false, tiles[row][line]);
-							row++;
-							break;
-						case 'R':
-							new Rook(true, tiles[row][line]).setMoved(true);
-							row++;
-							break;
-						case 'r':
-							new Rook(false, tiles[row][line]).setMoved(true);
-							row++;
-							break;
-						case 'P':
-							new Pawn(true, tiles[row][line]).setMoved(true);
-							row++;
-							break;
-						case 'p':
-							new Pawn(false, tiles[row][line]).setMoved(true);
-							row++;
-							break;
-						default:
-							System.err.println("Unknown FEN character: '" + c + "'");
-						}
-					break;
-				case 2:
-					if (c == 'w')
-						turn = true;
-					else if (c == 'b')
-						turn = false;
-					break;
-				case 3:
-					if (c == '-') {
-						// No castling possible
-						for (Tile[] tiles : tiles)
-							for (Tile tile : tiles)
-								if (tile.getPiece() instanceof IfNotMoved inm && !(tile.getPiece() instanceof Pawn))
-									inm.setMoved(true);
-					} else {
-						if (Character.isUpperCase(c)) {
-							((IfNotMoved) tiles[4][7].getPiece()).setMoved(false);
-							if (c == 'K')
-								((IfNotMoved) tiles[7][7].getPiece()).setMoved(false);
-							else if (c == 'Q')
-								((IfNotMoved) tiles[0][7].getPiece()).setMoved(false);
-						} else {
-							((IfNotMoved) tiles[4][0].getPiece()).setMoved(false);
-							if (c == 'k')
-								((IfNotMoved) tiles[7][0].getPiece()).setMoved(false);
-							else if (c == 'q')
-								((IfNotMoved) tiles[0][0].getPiece()).setMoved(false);
-						}
-					}
-					break;
-				case 4:
-					if (c == '-')
-						enPassant = null;
-					else {
-						if (enPassant == null)
-							enPassant = tiles[0][0];
-						switch (c) {
-						case 'a' -> enPassant = tiles[0][enPassant.getLine()];
-						case 'b' -> enPassant = tiles[1][enPassant.getLine()];
-						case 'c' -> enPassant = tiles[2][enPassant.getLine()];
-						case 'd' -> enPassant = tiles[3][enPassant.getLine()];
-						case 'e' -> enPassant = tiles[4][enPassant.getLine()];
-						case 'f' -> enPassant = tiles[5][enPassant.getLine()];
-						case 'g' -> enPassant = tiles[6][enPassant.getLine()];
-						case 'h' -> enPassant = tiles[7][enPassant.getLine()];
-						}
-						switch (Character.getNumericValue(c)) {
-						case 0 -> enPassant = tiles[enPassant.getRow()][0];
-						case 1 -> enPassant = tiles[enPassant.getRow()][1];
-						case 2 -> enPassant = tiles[enPassant.getRow()][2];
-						case 3 -> enPassant = tiles[enPassant.getRow()][3];
-						case 4 -> enPassant = tiles[enPassant.getRow()][4];
-						case 5 -> enPassant = tiles[enPassant.getRow()][5];
-						case 6 -> enPassant = tiles[enPassant.getRow()][6];
-						case 7 -> enPassant = tiles[enPassant.getRow()][7];
-						}
-					}
-					break;
-				case 5:
-					halfmoveClock += c;
-					break;
-				case 6:
-					fullmoveNumber += c;
-					break;
-				default:
-					System.err.println("A FEN field must be within 1 and 6 included. Current field: " + field);
-				}
-			if (!halfmoveClock.equals(""))
-				this.halfmoveClock = Integer.parseInt(halfmoveClock);
-			if (!fullmoveNumber.equals(""))
-				this.fullmoveNumber = Integer.parseInt(fullmoveNumber);
-		}
-		// Set moved value of each Pawn
-		for (Tile[] tiles : tiles)
-			for (Tile tile : tiles)
-				if (tile.getPiece() instanceof Pawn pawn)
-					if (pawn.isWhite()) {
-						if (tile.getLine() == 6)
-							pawn.setMoved(false);
-					} else {
-						if (tile.getLine() == 1)
-							pawn.setMoved(false);
-					}
+	private void setupPiecesFromFEN(CharSequence fen) {
+		fenCodec.parse(fen, this);
+		historyCount = 0;
+		pushPosition(getPositionHash(turn), true);
+		startingFen = generateFEN();
+		playedMoves.clear();
+		clockTimes.clear();
 		if (mainPanel != null) {
 			mainPanel.repaint();
 		}
 	}
 
 	/**
-	 * Converts the current board in a FEN String euivalent. May be used for saving.
+	 * Converts the current board in a FEN String equivalent. May be used for
+	 * saving.
 	 *
 	 * @return A FEN representation of the current board.
 	 */
-	private String generateFEN() {
-		String output = "";
-
-		// Field 1
-		int space;
-		for (int y = 0; y < 8; y++) {
-			space = 0;
-			for (int x = 0; x < 8; x++)
-				if (tiles[x][y].getPiece() != null) {
-					if (space > 0)
-						output += space;
-					output += tiles[x][y].getPiece().getFENValue();
-					space = 0;
-				} else
-					space++;
-			if (y < 7)
-				output += "/";
-		}
-		output += " ";
-
-		// Field 2
-		if (turn)
-			output += "w ";
-		else
-			output += "b ";
-
-		// Field 3
-		for (int y = 0; y < 14; y += 7)
-			if (tiles[4][y].getPiece() instanceof King king)
-				if (!king.isMoved()) {
-					if (tiles[0][y].getPiece() instanceof Rook leftRook)
-						if (!leftRook.isMoved())
-							if (leftRook.isWhite())
-								output += "Q";
-							else
-								output += "q";
-					if (tiles[7][y].getPiece() instanceof Rook rightRook)
-						if (!rightRook.isMoved())
-							if (rightRook.isWhite())
-								output += "K";
-							else
-								output += "k";
-				}
-		if (output.endsWith(" "))
-			output += "-";
-		output += " ";
-
-		// Field 4
-		if (enPassant == null)
-			output += "- ";
-		else {
-			switch (enPassant.getRow()) {
-			case 0 -> output += 'a';
-			case 1 -> output += 'b';
-			case 2 -> output += 'c';
-			case 3 -> output += 'd';
-			case 4 -> output += 'e';
-			case 5 -> output += 'f';
-			case 6 -> output += 'g';
-			case 7 -> output += 'h';
-			}
-			output += enPassant.getLine() + " ";
-		}
-
-		// Fields 5 and 6
-		output += (int) Math.floor(halfmoveClock) + " " + fullmoveNumber;
-		return output;
+	String generateFEN() {
+		return fenCodec.write(this, new StringBuilder(Fen.MAX_LENGTH)).toString();
 	}
 
 	private void setupFrames() {
@@ -629,89 +552,153 @@ public class Chess {
 
 			private Piece moving;
 			private Piece selected = null;
+			/**
+			 * The Tiles {@link #selected} can move to. Only computed again when another
+			 * Piece is selected or the position changes, as checking a Move is costly.
+			 */
+			private final List<Tile> destinations = new ArrayList<>();
+			/**
+			 * The Piece {@link #destinations} was computed for.
+			 */
+			private Piece destinationsPiece = null;
+			/**
+			 * The hash of the position {@link #destinations} was computed in.
+			 */
+			private long destinationsKey = 0;
+			/**
+			 * Average time taken by the last repaints (in ns). Only measured in
+			 * developer mode.
+			 */
+			private long frameTime = 0;
 
 			private BoardRenderer() {
 				addMouseListener(this);
 				addMouseMotionListener(this);
 			}
 
+			/**
+			 * Gets the Tiles the selected Piece can move to, from the cache if the
+			 * position didn't change since they were computed.
+			 *
+			 * @return The legal destinations of {@link #selected}, empty if no Piece is
+			 *         selected.
+			 */
+			private List<Tile> getDestinations() {
+				long key = getPositionHash();
+				if (selected != destinationsPiece || key != destinationsKey) {
+					destinations.clear();
+					if (selected != null)
+						for (Tile[] tiless : tiles)
+							for (Tile tile : tiless)
+								if (selected.checkMove(tile))
+									destinations.add(tile);
+					destinationsPiece = selected;
+					destinationsKey = key;
+				}
+				return destinations;
+			}
+
 			@Override
 			public void paintComponent(Graphics g) {
+				final long start = System.nanoTime();
+				// Only the dirty area needs to be drawn again
+				Rectangle clip = g.getClipBounds();
+				if (clip == null)
+					clip = new Rectangle(0, 0, FRAME_SIZE, FRAME_SIZE);
 				// Clears last frame
 				g.setColor(Color.WHITE);
-				g.fillRect(0, 0, FRAME_SIZE, FRAME_SIZE);
+				g.fillRect(clip.x, clip.y, clip.width, clip.height);
 				// Draw the board
-				g.drawImage(BOARD, 0, 0, null);
+				g.drawImage(Textures.getBoard(), 0, 0, null);
 				// Draw the moving/attacking/castling overlays
 				ArrayList<Piece> pieces = new ArrayList<>();
+				List<Tile> destinations = getDestinations();
 				for (Tile[] tiless : tiles)
 					for (Tile tile : tiless) {
-						if (selected != null)
-							if (selected.checkMove(tile)) {
-								if (tile.getPiece() == null) {
-									if (tile.equals(enPassant) && selected instanceof Pawn)
-										g.setColor(new Color(255, 0, 0, 150));
-									else
-										g.setColor(new Color(255, 255, 0, 150));
-									g.fillRect(tile.getRow() * TILES_SIZE, tile.getLine() * TILES_SIZE, TILES_SIZE,
-											TILES_SIZE);
-								} else if (tile.getPiece().isEnemy(selected.isWhite())) {
-									g.setColor(new Color(255, 0, 0, 150));
+						if (tile.getPiece() != null)
+							pieces.add(tile.getPiece());
+						if (selected == null || !clip.intersects(tile.getRow() * TILES_SIZE,
+								tile.getLine() * TILES_SIZE, TILES_SIZE, TILES_SIZE))
+							continue;
+						if (destinations.contains(tile)) {
+							if (tile.getPiece() == null) {
+								if (tile.equals(enPassant) && selected instanceof Pawn)
+									g.setColor(CAPTURE_COLOR);
+								else
+									g.setColor(MOVE_COLOR);
+								g.fillRect(tile.getRow() * TILES_SIZE, tile.getLine() * TILES_SIZE, TILES_SIZE,
+										TILES_SIZE);
+							} else if (tile.getPiece().isEnemy(selected.isWhite())) {
+								g.setColor(CAPTURE_COLOR);
+								g.fillRect(tile.getRow() * TILES_SIZE, tile.getLine() * TILES_SIZE, TILES_SIZE,
+										TILES_SIZE);
+							}
+						} else {
+							if (showPotentiallyProtectedTiles)
+								if (selected.getPotentiallyProtectedTiles().contains(tile)) {
+									g.setColor(PROTECTED_COLOR);
 									g.fillRect(tile.getRow() * TILES_SIZE, tile.getLine() * TILES_SIZE, TILES_SIZE,
 											TILES_SIZE);
 								}
-							} else {
-								if (showPotentiallyProtectedTiles)
-									if (selected.getPotentiallyProtectedTiles().contains(tile)) {
-										g.setColor(new Color(255, 165, 0, 150));
-										g.fillRect(tile.getRow() * TILES_SIZE, tile.getLine() * TILES_SIZE, TILES_SIZE,
-												TILES_SIZE);
-									}
-								// Castling overlay
-								if (selected instanceof King king) {
-									// If on the same line
-									if (tile.getLine() == selected.getTile().getLine())
-										// IF one of the castling Tiles
-										if (tile.getRow() + 2 == selected.getTile().getRow()
-												|| tile.getRow() - 2 == selected.getTile().getRow()) {
-											// Checking left Rook
-											Piece rook = tiles[0][selected.getTile().getLine()].getPiece();
-											if (rook instanceof Rook rook_) {
-												if (king.checkCastle(rook_)) {
-													g.setColor(new Color(220, 0, 255, 100));
-													g.fillRect((selected.getTile().getRow() - 2) * TILES_SIZE,
-															selected.getTile().getLine() * TILES_SIZE, TILES_SIZE,
-															TILES_SIZE);
-												}
+							// Castling overlay
+							if (selected instanceof King king) {
+								// If on the same line
+								if (tile.getLine() == selected.getTile().getLine())
+									// IF one of the castling Tiles
+									if (tile.getRow() + 2 == selected.getTile().getRow()
+											|| tile.getRow() - 2 == selected.getTile().getRow()) {
+										// Checking left Rook
+										Piece rook = tiles[0][selected.getTile().getLine()].getPiece();
+										if (rook instanceof Rook rook_) {
+											if (king.checkCastle(rook_)) {
+												g.setColor(CASTLE_COLOR);
+												g.fillRect((selected.getTile().getRow() - 2) * TILES_SIZE,
+														selected.getTile().getLine() * TILES_SIZE, TILES_SIZE,
+														TILES_SIZE);
 											}
-											// Checking right Rook
-											rook = tiles[7][selected.getTile().getLine()].getPiece();
-											if (rook instanceof Rook rook_) {
-												if (king.checkCastle(rook_)) {
-													g.setColor(new Color(220, 0, 255, 100));
-													g.fillRect((selected.getTile().getRow() + 2) * TILES_SIZE,
-															selected.getTile().getLine() * TILES_SIZE, TILES_SIZE,
-															TILES_SIZE);
-												}
+										}
+										// Checking right Rook
+										rook = tiles[7][selected.getTile().getLine()].getPiece();
+										if (rook instanceof Rook rook_) {
+											if (king.checkCastle(rook_)) {
+												g.setColor(CASTLE_COLOR);
+												g.fillRect((selected.getTile().getRow() + 2) * TILES_SIZE,
+														selected.getTile().getLine() * TILES_SIZE, TILES_SIZE,
+														TILES_SIZE);
 											}
 										}
-								}
+									}
 							}
-						if (tile.getPiece() != null)
-							pieces.add(tile.getPiece());
+						}
 					}
-				// Draw the Pieces
+				// Draw the Pieces, the dragged one on top of the others
 				for (Piece p : pieces)
-					g.drawImage(p.getTexture(), p.getX(), p.getY(), TILES_SIZE, TILES_SIZE, null);
+					if (p != moving && clip.intersects(p.getX(), p.getY(), TILES_SIZE, TILES_SIZE))
+						g.drawImage(p.getSprite(), p.getX(), p.getY(), null);
+				if (moving != null)
+					g.drawImage(moving.getSprite(), moving.getX(), moving.getY(), null);
 				// Print winner's name if the game ended
 				if (!playing) {
-					g.setFont(new Font("Arial", Font.BOLD, 30));
+					g.setFont(RESULT_FONT);
 					g.setColor(Color.DARK_GRAY);
 					if (!draw)
 						g.drawString(winner ? "White wins!" : "Black wins!", 218, 310);
 					else
 						g.drawString("Draw!", 255, 310);
 				}
+				if (devMode) {
+					// Repaints of the overlay alone aren't measured
+					if (!clip.equals(FRAME_TIME_BOUNDS))
+						frameTime = (frameTime * 7 + System.nanoTime() - start) / 8;
+					if (clip.intersects(FRAME_TIME_BOUNDS)) {
+						g.setColor(DEBUG_BACKGROUND_COLOR);
+						g.fillRect(FRAME_TIME_BOUNDS.x, FRAME_TIME_BOUNDS.y, FRAME_TIME_BOUNDS.width,
+								FRAME_TIME_BOUNDS.height);
+						g.setFont(DEBUG_FONT);
+						g.setColor(Color.WHITE);
+						g.drawString(String.format("Frame time: %.3f ms", frameTime / 1e6), 4, 13);
+					}
+				}
 			}
 
 			@Override
@@ -720,7 +707,8 @@ public class Chess {
 
 			@Override
 			public void mousePressed(MouseEvent e) {
-				if (playing)
+				// The player can't move while the AI is thinking
+				if (playing && aiMove == null)
 					if (e.getButton() == MouseEvent.BUTTON1) {
 						Tile t = getTileAtPosition(e.getPoint());
 						if (t != null)
@@ -728,6 +716,7 @@ public class Chess {
 								// Only select and move the Piece if it is the right turn
 								if (isTurn(t.getPiece().isWhite())) {
 									selected = moving = t.getPiece();
+									getDestinations();
 									return;
 								}
 							} else {
@@ -744,19 +733,19 @@ public class Chess {
 					if (moving != null) {
 						Tile tile = getTileAtPosition(e.getPoint());
 						if (tile != null)
-							if (moving.checkMove(tile)) {
+							// The moving Piece is always the selected one
+							if (getDestinations().contains(tile)) {
 								// Moving
-								new Move(moving, tile).finalizeMove();
+								Move move = new Move(moving, tile);
+								move.finalizeMove();
+								playedMoves.add(move);
 								selected = null;
 								moving = null;
 								repaint();
 								switchTurn();
 								checkWin(true);
-								if (!multiplayer && playing) {
-									ai.chooseMove().finalizeMove();
-									switchTurn();
-									checkWin(true);
-								}
+								if (!multiplayer && playing)
+									playAIMove();
 							} else {
 								// Castling
 								if (moving instanceof King king)
@@ -774,7 +763,9 @@ public class Chess {
 													new Move(rook, tiles[tile.getRow()
 															+ (king.getTile().getRow() - tile.getRow()) / 2][tile
 																	.getLine()]).finalizeMove();
-													new Move(king, tile).finalizeMove();
+													Move castle = new Move(king, tile);
+													castle.finalizeMove();
+													playedMoves.add(castle);
 													king.setMoved(true);
 													rook.setMoved(true);
 													moving = null;
@@ -782,11 +773,8 @@ public class Chess {
 													repaint();
 													switchTurn();
 													checkWin(true);
-													if (!multiplayer && playing) {
-														ai.chooseMove().finalizeMove();
-														switchTurn();
-														checkWin(true);
-													}
+													if (!multiplayer && playing)
+														playAIMove();
 													return;
 												}
 										}
@@ -816,9 +804,11 @@ public class Chess {
 			public void mouseDragged(MouseEvent e) {
 				if (playing)
 					if (moving != null) {
+						// Only repaint where the Piece was and where it is now
+						repaint(moving.getX(), moving.getY(), TILES_SIZE, TILES_SIZE);
 						moving.setX(e.getX() - TILES_SIZE / 2);
 						moving.setY(e.getY() - TILES_SIZE / 2);
-						repaint();
+						repaint(moving.getX(), moving.getY(), TILES_SIZE, TILES_SIZE);
 					}
 			}
 
@@ -831,7 +821,16 @@ public class Chess {
 		frame.setSize(FRAME_SIZE + 16, FRAME_SIZE + 39);
 		frame.setLocationRelativeTo(null);
 		frame.add(mainPanel = new BoardRenderer());
+		if (devMode)
+			// Refreshes the frame time
+			new Timer(250, (ActionEvent event) -> mainPanel.repaint(FRAME_TIME_BOUNDS)).start();
 		frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				cancelAIMove();
+			}
+		});
 		frame.setTitle("Chess");
 		frame.setVisible(true);
 		// Shows the taken Pieces as well as the timer and save/load buttons
@@ -855,33 +854,33 @@ public class Chess {
 				g.setColor(Color.WHITE);
 				g.fillRect(0, 0, INFO_FRAME_WIDTH, INFO_FRAME_HEIGHT);
 				g.setColor(Color.BLACK);
-				g.setFont(new Font("Arial", Font.PLAIN, 20));
+				g.setFont(INFO_FONT);
 				// Draw white pieces and count
-				g.drawImage(Piece.TEXTURE_WHITE_PAWN, 0, 0, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_WHITE_PAWN, 60), 0, 0, null);
 				g.drawString(String.valueOf(capturedPieces.getWhite().pawns), 25, 70);
-				g.drawImage(Piece.TEXTURE_WHITE_ROOK, 45, 0, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_WHITE_ROOK, 60), 45, 0, null);
 				g.drawString(String.valueOf(capturedPieces.getWhite().rooks), 70, 70);
-				g.drawImage(Piece.TEXTURE_WHITE_KNIGHT, 90, 0, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_WHITE_KNIGHT, 60), 90, 0, null);
 				g.drawString(String.valueOf(capturedPieces.getWhite().knights), 115, 70);
-				g.drawImage(Piece.TEXTURE_WHITE_BISHOP, 135, 0, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_WHITE_BISHOP, 60), 135, 0, null);
 				g.drawString(String.valueOf(capturedPieces.getWhite().bishops), 160, 70);
-				g.drawImage(Piece.TEXTURE_WHITE_QUEEN, 180, 0, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_WHITE_QUEEN, 60), 180, 0, null);
 				g.drawString(String.valueOf(capturedPieces.getWhite().queens), 205, 70);
 
 				// Draw black pieces and count
-				g.drawImage(Piece.TEXTURE_BLACK_PAWN, 0, 100, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_BLACK_PAWN, 60), 0, 100, null);
 				g.drawString(String.valueOf(capturedPieces.getBlack().pawns), 25, 105);
-				g.drawImage(Piece.TEXTURE_BLACK_ROOK, 45, 100, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_BLACK_ROOK, 60), 45, 100, null);
 				g.drawString(String.valueOf(capturedPieces.getBlack().rooks), 70, 105);
-				g.drawImage(Piece.TEXTURE_BLACK_KNIGHT, 90, 100, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_BLACK_KNIGHT, 60), 90, 100, null);
 				g.drawString(String.valueOf(capturedPieces.getBlack().knights), 115, 105);
-				g.drawImage(Piece.TEXTURE_BLACK_BISHOP, 135, 100, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_BLACK_BISHOP, 60), 135, 100, null);
 				g.drawString(String.valueOf(capturedPieces.getBlack().bishops), 160, 105);
-				g.drawImage(Piece.TEXTURE_BLACK_QUEEN, 180, 100, 60, 60, null);
+				g.drawImage(Piece.getSprite(Piece.TEXTURE_BLACK_QUEEN, 60), 180, 100, null);
 				g.drawString(String.valueOf(capturedPieces.getBlack().queens), 205, 105);
 
 				// Draw the timer
-				g.setFont(new Font("Arial", Font.PLAIN, 30));
+				g.setFont(TIMER_FONT);
 				g.drawString(getTimer(true), 240, 40);
 				g.drawString(getTimer(false), 240, 135);
 
@@ -896,7 +895,7 @@ public class Chess {
 			timer = false;
 			JFrame f = new JFrame("The current game FEN");
 			f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-			f.setSize(505, 100);
+			f.setSize(605, 100);
 			f.setLayout(null);
 			f.setResizable(false);
 			f.setLocationRelativeTo(null);
@@ -904,6 +903,21 @@ public class Chess {
 			textField.setBounds(10, 15, 470, 35);
 			textField.setEditable(false);
 			f.add(textField);
+			JButton pgnButton = new JButton("Save game");
+			pgnButton.setBounds(480, 15, 100, 35);
+			pgnButton.addActionListener((ActionEvent e) -> {
+				JFileChooser chooser = createGameChooser();
+				if (chooser.showSaveDialog(f) == JFileChooser.APPROVE_OPTION) {
+					f.dispose();
+					Path path = chooser.getSelectedFile().toPath();
+					// Adds the extension of the chosen format if there isn't any
+					if (!path.getFileName().toString().contains(".")
+							&& chooser.getFileFilter() instanceof FileNameExtensionFilter filter)
+						path = path.resolveSibling(path.getFileName() + "." + filter.getExtensions()[0]);
+					saveGame(path);
+				}
+			});
+			f.add(pgnButton);
 			f.addWindowListener(new WindowListener() {
 				@Override
 				public void windowOpened(WindowEvent e) {
@@ -937,14 +951,15 @@ public class Chess {
 			f.setAlwaysOnTop(true);
 			f.setVisible(true);
 		});
-		button.setBounds(350, 0, 84, INFO_FRAME_HEIGHT / 2 - 16);
+		int buttonHeight = (INFO_FRAME_HEIGHT - 32) / 4;
+		button.setBounds(350, 0, 84, buttonHeight);
 		container.add(button);
 		button = new JButton("Load");
 		button.addActionListener((ActionEvent event) -> {
 			timer = false;
 			JFrame f = new JFrame("Enter an FEN to load");
 			f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-			f.setSize(605, 100);
+			f.setSize(805, 100);
 			f.setLayout(null);
 			f.setResizable(false);
 			f.setLocationRelativeTo(null);
@@ -954,11 +969,42 @@ public class Chess {
 			JButton confirmButton = new JButton("Confirm");
 			confirmButton.setBounds(480, 15, 100, 35);
 			confirmButton.addActionListener((ActionEvent e) -> {
+				try {
+					fenCodec.validate(textField.getText());
+				} catch (Fen.FormatException exception) {
+					JOptionPane.showMessageDialog(f, exception.getMessage(), "Invalid FEN", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
 				f.dispose();
+				cancelAIMove();
 				setupPiecesFromFEN(textField.getText());
 				computeTileProtection();
+				clock.setTurn(turn);
 			});
 			f.add(confirmButton);
+			JButton pgnButton = new JButton("Open game");
+			pgnButton.setBounds(580, 15, 100, 35);
+			pgnButton.addActionListener((ActionEvent e) -> {
+				JFileChooser chooser = createGameChooser();
+				if (chooser.showOpenDialog(f) == JFileChooser.APPROVE_OPTION) {
+					f.dispose();
+					openGame(chooser.getSelectedFile().toPath());
+				}
+			});
+			f.add(pgnButton);
+			JButton databaseButton = new JButton("Find games");
+			databaseButton.setBounds(680, 15, 100, 35);
+			databaseButton.addActionListener((ActionEvent e) -> {
+				JFileChooser chooser = new JFileChooser();
+				if (databasePath != null)
+					chooser.setSelectedFile(databasePath.toFile());
+				if (chooser.showOpenDialog(f) == JFileChooser.APPROVE_OPTION) {
+					f.dispose();
+					databasePath = chooser.getSelectedFile().toPath();
+					findGames(databasePath);
+				}
+			});
+			f.add(databaseButton);
 			f.addWindowListener(new WindowListener() {
 				@Override
 				public void windowOpened(WindowEvent e) {
@@ -992,7 +1038,25 @@ public class Chess {
 			f.setAlwaysOnTop(true);
 			f.setVisible(true);
 		});
-		button.setBounds(350, INFO_FRAME_HEIGHT / 2 - 16, 84, INFO_FRAME_HEIGHT / 2 - 16);
+		button.setBounds(350, buttonHeight, 84, buttonHeight);
+		container.add(button);
+		button = new JButton("Resign");
+		button.addActionListener((ActionEvent event) -> {
+			if (!playing)
+				return;
+			cancelAIMove();
+			// Against the AI, the player resigns even while the AI is thinking
+			winner = multiplayer ? !turn : ai.isWhite();
+			playing = false;
+			mainPanel.repaint();
+		});
+		button.setBounds(350, 2 * buttonHeight, 84, buttonHeight);
+		container.add(button);
+		button = new JButton("Undo");
+		// Against the AI, the player takes their Move back even while the AI is
+		// thinking about its reply
+		button.addActionListener((ActionEvent event) -> undo());
+		button.setBounds(350, 3 * buttonHeight, 84, buttonHeight);
 		container.add(button);
 		infoFrame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
 		infoFrame.setTitle("Informations");
@@ -1002,32 +1066,538 @@ public class Chess {
 	}
 
 	/**
-	 * 
+	 * Lets the AI choose its Move on a background thread and plays it on the Event
+	 * Dispatch Thread once found, so that the frames keep being repainted in the
+	 * meantime. The player can't move until then.
 	 */
-	boolean checkWin(boolean stopGame) {
-		boolean result = true;
-		for (Tile[] tiles : tiles)
-			for (Tile t : tiles) // CA MET PAS TRUE JCOMPRENDS PAS WTF
-				if (t.getPiece() != null)
-					if (turn == t.getPiece().isWhite())
-						for (Tile[] tiles2 : Chess.this.tiles)
-							for (Tile t2 : tiles2)
-								if (t.getPiece().checkMove(t2))
-									result = false;
-		if (result) {
-			for (Tile[] tiles : tiles)
-				for (Tile t : tiles)
-					if (t.getPiece() != null)
-						if (turn == t.getPiece().isWhite())
-							if (!t.getPiece().getKing().isInDanger())
-								draw = true;
-			winner = !turn;
-			playing = !stopGame;
-			return true;
+	private void playAIMove() {
+		CompletableFuture<Move> future = aiMove = ai.chooseMoveAsync();
+		future.thenAccept(move -> {
+			// Cancelled or replaced by another one
+			if (aiMove != future)
+				return;
+			aiMove = null;
+			if (!playing)
+				return;
+			move.finalizeMove();
+			playedMoves.add(move);
+			switchTurn();
+			checkWin(true);
+			mainPanel.repaint();
+			if (playing)
+				ai.ponder();
+		});
+	}
+
+	/**
+	 * Takes back the last Move pair against the AI: its reply, if it already
+	 * played it, and the last Move of the player. Only the last Move is taken back
+	 * between two players. The AI stops thinking first.
+	 * <p>
+	 * {@link Move#unmakeMove(boolean)} only puts the Pieces back, not the Rook of
+	 * a castling, a promoted Pawn, the taken Pieces nor the castling, en passant
+	 * and fifty-move state, so the position is set up again from
+	 * {@link #startingFen} and the remaining {@link #playedMoves} are replayed.
+	 * The clocks are set back to the beginning of the turn. Must be called on the
+	 * Event Dispatch Thread.
+	 */
+	private void undo() {
+		if (playedMoves.isEmpty())
+			return;
+		cancelAIMove();
+		int count = multiplayer || turn == ai.isWhite() ? 1 : 2;
+		int[] moves = encodePlayedMoves();
+		int kept = Math.max(moves.length - count, 0);
+		int timed = Math.max(clockTimes.size() - (moves.length - kept), 0);
+		long[] times = timed < clockTimes.size() ? clockTimes.get(timed) : null;
+		List<long[]> keptTimes = new ArrayList<>(clockTimes.subList(0, timed));
+
+		setupPiecesFromFEN(startingFen);
+		computeTileProtection();
+		for (int i = 0; i < kept; i++)
+			playMove(OpeningBook.decodeMove(this, turn, moves[i]));
+		clockTimes.addAll(keptTimes);
+		if (times != null)
+			clock.setTimes(times, turn);
+		else
+			clock.setTurn(turn);
+		draw = false;
+		playing = !checkWin(true);
+		if (playing && ticker != null && !ticker.isRunning())
+			ticker.start();
+		mainPanel.repaint();
+		if (playing && !multiplayer && turn == ai.isWhite())
+			playAIMove();
+	}
+
+	/**
+	 * Encodes the Moves played since {@link #startingFen} the Polyglot way. Must
+	 * be called on the Event Dispatch Thread.
+	 *
+	 * @return The encoded Moves.
+	 */
+	private int[] encodePlayedMoves() {
+		int[] moves = new int[playedMoves.size()];
+		for (int i = 0; i < moves.length; i++) {
+			Move move = playedMoves.get(i);
+			// The player chooses the promotion after the Move was played
+			if (move.isPromotion() && move.getPromotionPiece() == null && move.getPiece() instanceof Pawn pawn)
+				move.setPromotionPiece(pawn.getPromotion());
+			moves[i] = OpeningBook.encodeMove(move);
 		}
+		return moves;
+	}
+
+	/**
+	 * @return A file chooser for the PGN and {@link GameRecord} files.
+	 */
+	private static JFileChooser createGameChooser() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("PGN games", "pgn"));
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("Compact binary games", GameRecord.EXTENSION));
+		return chooser;
+	}
+
+	/**
+	 * Writes the game played since the position was set up to a file, then shows
+	 * its size per Move. The file is a {@link GameRecord} if its extension is
+	 * {@link GameRecord#EXTENSION}, a PGN file otherwise. The Moves are encoded on
+	 * a background thread. Must be called on the Event Dispatch Thread.
+	 *
+	 * @param path The file to write.
+	 */
+	private void saveGame(Path path) {
+		int[] moves = encodePlayedMoves();
+		String fen = startingFen;
+		String result = playing ? "*" : draw ? "1/2-1/2" : winner ? "1-0" : "0-1";
+		String white = multiplayer || !ai.isWhite() ? "Player" : "AI";
+		String black = multiplayer || ai.isWhite() ? "Player" : "AI";
+		String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd"));
+		boolean binary = path.getFileName().toString().endsWith("." + GameRecord.EXTENSION);
+		CompletableFuture.supplyAsync(() -> {
+			try {
+				if (binary) {
+					GameRecord record = new GameRecord(fen, moves);
+					record.setTag("Event", "Casual game");
+					record.setTag("Date", date);
+					record.setTag("White", white);
+					record.setTag("Black", black);
+					record.setResult(result);
+					return (long) record.write(path, true);
+				}
+				PgnGame game = PgnGame.fromMoves(fen, moves);
+				game.setTag("Event", "Casual game");
+				game.setTag("Date", date);
+				game.setTag("White", white);
+				game.setTag("Black", black);
+				game.setResult(result);
+				try (PgnWriter writer = new PgnWriter(path)) {
+					writer.write(game);
+				}
+				return Files.size(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, BACKGROUND).whenComplete((size, error) -> SwingUtilities.invokeLater(() -> {
+			if (error != null)
+				showError("Couldn't save the game", error);
+			else
+				JOptionPane.showMessageDialog(null,
+						moves.length + " moves saved in " + size + " bytes"
+								+ (moves.length > 0 ? String.format(", %.2f bytes per move", (double) size / moves.length)
+										: ""),
+						"Game saved", JOptionPane.INFORMATION_MESSAGE);
+		}));
+	}
+
+	/**
+	 * Reads a {@link GameRecord} or the first game of a PGN file, checks its Moves
+	 * on a background thread and then replays it on this board. The board is left
+	 * untouched if the game is invalid. Must be called on the Event Dispatch
+	 * Thread.
+	 *
+	 * @param path The file to read.
+	 */
+	private void openGame(Path path) {
+		CompletableFuture.supplyAsync(() -> {
+			try {
+				if (GameRecord.isGameRecord(path))
+					return GameRecord.read(path).toPgn();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			try (PgnReader reader = new PgnReader(path)) {
+				PgnGame game = reader.next();
+				if (game == null)
+					throw new IllegalArgumentException("No game in " + path);
+				game.replay();
+				return game;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, BACKGROUND).whenComplete((game, error) -> SwingUtilities.invokeLater(() -> {
+			if (error != null)
+				showError("Couldn't open the game", error);
+			else
+				loadGame(game);
+		}));
+	}
+
+	/**
+	 * Searches a {@link GameDatabase} for the games that reached the current
+	 * position on a background thread, then lists them in a new frame from which
+	 * one of them can be opened. Must be called on the Event Dispatch Thread.
+	 *
+	 * @param path The games file of the database.
+	 */
+	private void findGames(Path path) {
+		record Found(long count, List<GameDatabase.Position> positions, List<GameDatabase.Game> games, long time) {
+		}
+		long key = getPositionHash();
+		CompletableFuture.supplyAsync(() -> {
+			try (GameDatabase database = new GameDatabase(path)) {
+				long time = System.nanoTime();
+				long count = database.count(key);
+				List<GameDatabase.Position> positions = database.find(key, MAX_FOUND_GAMES);
+				List<GameDatabase.Game> games = new ArrayList<>();
+				for (GameDatabase.Position position : positions)
+					games.add(database.read(position.offset()));
+				return new Found(count, positions, games, (System.nanoTime() - time) / 1_000_000);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, BACKGROUND).whenComplete((found, error) -> SwingUtilities.invokeLater(() -> {
+			if (error != null) {
+				showError("Couldn't search the games", error);
+				return;
+			}
+			String[] lines = new String[found.games.size()];
+			for (int i = 0; i < lines.length; i++) {
+				GameDatabase.Game game = found.games.get(i);
+				lines[i] = game.tags().getOrDefault("White", "?") + " - " + game.tags().getOrDefault("Black", "?")
+						+ "  " + game.result() + "  " + game.tags().getOrDefault("Date", "?") + "  (ply "
+						+ found.positions.get(i).ply() + ")";
+			}
+			JFrame f = new JFrame(found.count + " games found in " + found.time + " ms");
+			f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+			f.setSize(605, 400);
+			f.setLayout(null);
+			f.setResizable(false);
+			f.setLocationRelativeTo(null);
+			JList<String> list = new JList<>(lines);
+			JScrollPane scrollPane = new JScrollPane(list);
+			scrollPane.setBounds(10, 10, 570, 300);
+			f.add(scrollPane);
+			JButton openButton = new JButton("Open");
+			openButton.setBounds(480, 315, 100, 35);
+			openButton.addActionListener((ActionEvent e) -> {
+				int index = list.getSelectedIndex();
+				if (index < 0)
+					return;
+				f.dispose();
+				GameDatabase.Game game = found.games.get(index);
+				CompletableFuture.supplyAsync(game::toPgn, BACKGROUND).whenComplete((pgn, pgnError) -> SwingUtilities
+						.invokeLater(() -> {
+							if (pgnError != null)
+								showError("Couldn't open the game", pgnError);
+							else
+								loadGame(pgn);
+						}));
+			});
+			f.add(openButton);
+			f.setAlwaysOnTop(true);
+			f.setVisible(true);
+		}));
+	}
+
+	/**
+	 * Sets the starting position of a game up and plays its Moves.
+	 *
+	 * @param game The game, already checked by {@link PgnGame#replay()}.
+	 */
+	private void loadGame(PgnGame game) {
+		cancelAIMove();
+		setupPiecesFromFEN(game.getStartingFen());
+		computeTileProtection();
+		for (String san : game.getMoves())
+			playMove(Notation.parseSan(this, turn, san));
+		clock.setTurn(turn);
+		checkWin(true);
+		mainPanel.repaint();
+	}
+
+	private static void showError(String message, Throwable error) {
+		// Unwraps the exceptions of the background tasks
+		while (error.getCause() != null
+				&& (error instanceof CompletionException || error instanceof UncheckedIOException))
+			error = error.getCause();
+		JOptionPane.showMessageDialog(null, message + ": " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Cancels the Move the AI is thinking about as well as its pondering, if any.
+	 * Must be called on the Event Dispatch Thread.
+	 */
+	private void cancelAIMove() {
+		aiMove = null;
+		if (ai != null)
+			ai.cancel();
+	}
+
+	/**
+	 * Checks if the game is over for the side to move and sets {@link #winner}
+	 * and {@link #draw} accordingly.
+	 *
+	 * @param stopGame Should {@link #playing} be set to false if the game is over ?
+	 * @return True if the game is over.
+	 * @see #getStatus(boolean)
+	 */
+	boolean checkWin(boolean stopGame) {
+		GameStatus status = getStatus(turn);
+		if (status == GameStatus.ONGOING)
+			return false;
+		draw = status.isDraw();
+		winner = !turn;
+		playing = !stopGame;
+		return true;
+	}
+
+	/**
+	 * Classifies the current position. The legal Moves are only looked for until
+	 * the first one is found, using the Tile protection to skip the Pieces that
+	 * can't move.
+	 *
+	 * @param white The side to move.
+	 * @return The status of the game for {@code white}.
+	 */
+	public GameStatus getStatus(boolean white) {
+		if (!hasLegalMove(white))
+			return (white ? whiteKing : blackKing).isInDanger() ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+		if (halfmoveClock >= 50)
+			return GameStatus.FIFTY_MOVES;
+		if (isRepetition())
+			return GameStatus.REPETITION;
+		if (isInsufficientMaterial())
+			return GameStatus.INSUFFICIENT_MATERIAL;
+		return GameStatus.ONGOING;
+	}
+
+	/**
+	 * Checks if a side has at least one legal Move.
+	 *
+	 * @param white The side to check.
+	 * @return True as soon as a legal Move is found.
+	 */
+	public boolean hasLegalMove(boolean white) {
+		King king = white ? whiteKing : blackKing;
+		// Castling is never the only legal Move, as the King could stop halfway
+		for (Tile tile : king.getProtectedTiles())
+			if (king.checkMove(tile))
+				return true;
+		// Only the King can get out of a double check
+		if (king.getTile().getEnemyProtection(white).size() > 1)
+			return false;
+		for (Tile[] tiless : tiles)
+			for (Tile t : tiless) {
+				Piece piece = t.getPiece();
+				if (piece == null || piece.isWhite() != white || piece == king)
+					continue;
+				for (Tile tile : piece instanceof Pawn pawn ? pawn.getMovingTiles() : piece.getProtectedTiles())
+					if (piece.checkMove(tile))
+						return true;
+			}
 		return false;
 	}
 
+	/**
+	 * Checks if the current position occurred at least three times since the last
+	 * irreversible Move.
+	 *
+	 * @return True if the position is repeated.
+	 */
+	public boolean isRepetition() {
+		return countRepetitions() >= 2;
+	}
+
+	/**
+	 * Counts how many times the current position occurred before. Only the
+	 * positions since the last irreversible Move with the same side to move are
+	 * compared, so this is O(k) with k bounded by the fifty-move rule.
+	 *
+	 * @return The number of previous occurrences.
+	 */
+	int countRepetitions() {
+		long key = positionHistory[(historyPly - 1) & (HISTORY_SIZE - 1)];
+		int count = 0;
+		// Going back and forth takes at least 4 plies
+		for (int i = 4; i < historyCount; i += 2)
+			if (positionHistory[(historyPly - 1 - i) & (HISTORY_SIZE - 1)] == key)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Adds a position to the history. Used by the search on its own board, where
+	 * Moves aren't finalized.
+	 *
+	 * @param key          The hash of the new position.
+	 * @param irreversible Was the Move leading to it a capture or a Pawn Move ?
+	 * @return The previous history count, to give back to
+	 *         {@link #popPosition(int)}.
+	 */
+	int pushPosition(long key, boolean irreversible) {
+		int previous = historyCount;
+		if (irreversible)
+			historyCount = 0;
+		positionHistory[historyPly++ & (HISTORY_SIZE - 1)] = key;
+		historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+		return previous;
+	}
+
+	/**
+	 * Removes the last position added by {@link #pushPosition(long, boolean)}.
+	 *
+	 * @param previous The value returned by {@link #pushPosition(long, boolean)}.
+	 */
+	void popPosition(int previous) {
+		historyPly--;
+		historyCount = previous;
+	}
+
+	/**
+	 * Gets the positions since the last irreversible Move.
+	 *
+	 * @return Their hashes, the current position last.
+	 */
+	long[] getPositionHistory() {
+		long[] history = new long[historyCount];
+		for (int i = 0; i < historyCount; i++)
+			history[i] = positionHistory[(historyPly - historyCount + i) & (HISTORY_SIZE - 1)];
+		return history;
+	}
+
+	/**
+	 * Replaces the history, for example by the one of the game a search board was
+	 * set up from.
+	 *
+	 * @param history The hashes as returned by {@link #getPositionHistory()}.
+	 */
+	void setPositionHistory(long[] history) {
+		historyCount = 0;
+		for (int i = 0; i < history.length; i++)
+			pushPosition(history[i], i == 0);
+	}
+
+	/**
+	 * Checks if neither side can checkmate anymore: lone Kings, a single minor
+	 * Piece or Bishops all on the same color.
+	 *
+	 * @return True if the position is a dead draw.
+	 */
+	public boolean isInsufficientMaterial() {
+		if (evaluation.getPieceCount() > 4)
+			return false;
+		int knights = 0;
+		int bishops = 0;
+		// Bit 0 for the Bishops on light Tiles, bit 1 for the dark ones
+		int bishopColors = 0;
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless)
+				switch (tile.getPiece() == null ? Piece.KING : tile.getPiece().getType()) {
+				case Piece.KING -> {
+				}
+				case Piece.KNIGHT -> knights++;
+				case Piece.BISHOP -> {
+					bishops++;
+					bishopColors |= 1 << ((tile.getRow() + tile.getLine()) & 1);
+				}
+				default -> {
+					return false;
+				}
+				}
+		return knights + bishops <= 1 || knights == 0 && bishopColors != 3;
+	}
+
+	/**
+	 * Records the current position in {@link #positionHistory}, which is first
+	 * cleared if the last Move can't be undone.
+	 */
+	private void recordPosition() {
+		pushPosition(getPositionHash(turn), halfmoveClock == 0);
+	}
+
+	/**
+	 * Finalizes {@code move} and gives the turn to the other player, without
+	 * touching the frames nor the clock. Used to replay recorded games.
+	 *
+	 * @param move The Move to play.
+	 */
+	void playMove(Move move) {
+		move.finalizeMove();
+		playedMoves.add(move);
+		turn = !turn;
+		recordPosition();
+	}
+
+	/**
+	 * Gets the Polyglot-compatible hash of the current position, with
+	 * {@link #turn} as the side to move.
+	 *
+	 * @return The hash of the position.
+	 */
+	public long getPositionHash() {
+		return getPositionHash(turn);
+	}
+
+	/**
+	 * Gets the Polyglot-compatible hash of the current position. As in Polyglot,
+	 * the en passant file is only hashed if a Pawn can actually take en passant.
+	 *
+	 * @param white The side to move.
+	 * @return The hash of the position.
+	 */
+	public long getPositionHash(boolean white) {
+		long hash = evaluation.getPieceKey();
+		// Castling rights
+		if (canCastle(true, true))
+			hash ^= Zobrist.KEYS[Zobrist.CASTLING];
+		if (canCastle(true, false))
+			hash ^= Zobrist.KEYS[Zobrist.CASTLING + 1];
+		if (canCastle(false, true))
+			hash ^= Zobrist.KEYS[Zobrist.CASTLING + 2];
+		if (canCastle(false, false))
+			hash ^= Zobrist.KEYS[Zobrist.CASTLING + 3];
+		// En passant
+		if (enPassant != null) {
+			// The Pawn that just moved stands behind the en passant Tile
+			int line = enPassant.getLine() + (white ? 1 : -1);
+			for (int row = enPassant.getRow() - 1; row <= enPassant.getRow() + 1; row += 2)
+				if (row >= 0 && row <= 7 && line >= 0 && line <= 7)
+					if (tiles[row][line].getPiece() instanceof Pawn pawn && pawn.isWhite() == white) {
+						hash ^= Zobrist.KEYS[Zobrist.EN_PASSANT + enPassant.getRow()];
+						break;
+					}
+		}
+		if (white)
+			hash ^= Zobrist.KEYS[Zobrist.TURN];
+		return hash;
+	}
+
+	/**
+	 * Checks if a castling right is still available, that means neither the King
+	 * nor the Rook of that side moved.
+	 *
+	 * @param white    The color of the King.
+	 * @param kingSide True for the King side, false for the Queen side.
+	 * @return True if the castling right is available.
+	 */
+	public boolean canCastle(boolean white, boolean kingSide) {
+		int line = white ? 7 : 0;
+		return tiles[4][line].getPiece() instanceof King king && king.isWhite() == white && !king.isMoved()
+				&& tiles[kingSide ? 7 : 0][line].getPiece() instanceof Rook rook && rook.isWhite() == white
+				&& !rook.isMoved();
+	}
+
 	/**
 	 * Gets a String representation of {@code player}'s timer as said in
 	 * {@link #turn} for its meaning.
@@ -1038,11 +1608,11 @@ public class Chess {
 	 *         milliseconds of {@code player}'s timer.
 	 */
 	private String getTimer(boolean player) {
+		final long timeLeft = clock.getTimeLeft(player);
 		String result = "";
-		result += player ? (int) Math.floor(timeLeftWhite / 60000) : (int) Math.floor(timeLeftBlack / 60000);
+		result += timeLeft / 60000;
 		result += ":";
-		final int seconds = player ? (int) Math.floor((timeLeftWhite % 60000) / 1000)
-				: (int) Math.floor((timeLeftBlack % 60000) / 1000);
+		final int seconds = (int) (timeLeft % 60000 / 1000);
 		result += seconds < 10 ? "0" + seconds : seconds;
 		result += "s";
 		return result;
@@ -1086,32 +1656,37 @@ public class Chess {
 		computeTileProtection();
 		playing = true;
 		mainPanel.repaint();
-		// Timer
-		lastTimerUpdate = System.currentTimeMillis();
+		clock.setTurn(turn);
+		if (timer) {
+			clock.resume();
+			ticker = new Timer(TICK_INTERVAL, (ActionEvent event) -> tick());
+			ticker.start();
+		}
+	}
+
+	/**
+	 * Pauses the clock while {@link #timer} is false, repaints it and ends the game
+	 * if the current player ran out of time. Called on the Event Dispatch Thread
+	 * every {@link #TICK_INTERVAL}.
+	 */
+	private void tick() {
+		if (!playing) {
+			clock.pause();
+			ticker.stop();
+			return;
+		}
 		if (timer)
-			while (playing) {
-				if (!timer) {
-					lastTimerUpdate = System.currentTimeMillis();
-					continue;
-				}
-				if (turn)
-					// White turn
-					timeLeftWhite -= System.currentTimeMillis() - lastTimerUpdate;
-				else
-					// Black turn
-					timeLeftBlack -= System.currentTimeMillis() - lastTimerUpdate;
-				lastTimerUpdate = System.currentTimeMillis();
-				infoFrame.repaint();
-				if (timeLeftWhite <= 0) {
-					winner = false;
-					playing = false;
-					mainPanel.repaint();
-				} else if (timeLeftBlack <= 0) {
-					winner = true;
-					playing = false;
-					mainPanel.repaint();
-				}
-			}
+			clock.resume();
+		else
+			clock.pause();
+		infoFrame.repaint();
+		if (clock.isFlagFallen()) {
+			cancelAIMove();
+			winner = !clock.getTurn();
+			playing = false;
+			ticker.stop();
+			mainPanel.repaint();
+		}
 	}
 
 	/**
@@ -1151,15 +1726,24 @@ public class Chess {
 			turn = false;
 		else
 			turn = true;
+		if (clock != null) {
+			clockTimes.add(clock.getTimes());
+			clock.press();
+		}
+		recordPosition();
 	}
 
 	/**
 	 * Returns the current instance of Chess. May be null.
 	 *
-	 * @return The last constructed instance of Chess. May be null if never
-	 *         instantiated.
+	 * @return The headless instance bound to the current thread if any, the last
+	 *         constructed instance of Chess with frames otherwise. May be null if
+	 *         never instantiated.
 	 */
 	public static Chess getInstance() {
+		Chess chess = threadInstance.get();
+		if (chess != null)
+			return chess;
 		return instance;
 	}
 
@@ -1186,7 +1770,7 @@ public class Chess {
 	 *
 	 * @param halfmoveClock The halfmoveClock to set.
 	 */
-	void setHalfmoveClock(int halfmoveClock) {
+	void setHalfmoveClock(float halfmoveClock) {
 		this.halfmoveClock = halfmoveClock;
 	}
 
@@ -1219,6 +1803,15 @@ public class Chess {
 		return turn;
 	}
 
+	/**
+	 * Setter for the turn value. Only used when setting a position up.
+	 *
+	 * @param turn The turn to set.
+	 */
+	void setTurn(boolean turn) {
+		this.turn = turn;
+	}
+
 	/**
 	 * Getter for the enPassant value.
 	 *
@@ -1267,4 +1860,44 @@ public class Chess {
 		return capturedPieces;
 	}
 
+	/**
+	 * Registers {@code king} as the King of its color on this board. Called by
+	 * the King constructor.
+	 *
+	 * @param king The King to register.
+	 */
+	public void setKing(King king) {
+		if (king.isWhite())
+			whiteKing = king;
+		else
+			blackKing = king;
+	}
+
+	/**
+	 * Getter for the whiteKing value.
+	 *
+	 * @return The whiteKing to get.
+	 */
+	public King getWhiteKing() {
+		return whiteKing;
+	}
+
+	/**
+	 * Getter for the blackKing value.
+	 *
+	 * @return The blackKing to get.
+	 */
+	public King getBlackKing() {
+		return blackKing;
+	}
+
+	/**
+	 * Getter for the evaluation value.
+	 *
+	 * @return The evaluation to get.
+	 */
+	public Evaluation getEvaluation() {
+		return evaluation;
+	}
+
 }
@@ -0,0 +1,293 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.bloodLantern.chess.pieces.King;
+
+/**
+ * Command-line tool solving the positions of EPD test suites such as WAC or
+ * STS. Each position is searched on a pool of threads, every thread having its
+ * own {@link TranspositionTable} cleared before each position so that the
+ * results don't depend on the order. A position is solved if the best Move is
+ * one of its {@code bm} Moves and none of its {@code am} Moves.
+ * <p>
+ * The results are written as CSV, one line per position: its index and
+ * {@code id}, whether it was solved, the best Move in coordinate notation, the
+ * expected Moves, the completed depth, the score, the nodes and time of the
+ * whole search and the nodes and time after which the best Move was a solution
+ * and stayed one, left empty if it was never solved, and finally why the
+ * position couldn't be searched, if so.
+ * <p>
+ * Arguments: {@code out=<path>} for the CSV file to write (default
+ * {@code epd.csv}), {@code time=<ms>} for the time limit of each position
+ * (default 1000 unless a node limit is given), {@code nodes=<n>} for the node
+ * limit of each position, {@code threads=<n>} for the number of search threads
+ * (default: every core), {@code hash=<n>} for the number of transposition table
+ * entries of each thread (default 262144), then the EPD files.
+ *
+ * @author BloodLantern
+ */
+public final class EpdRunner {
+
+	private static final String HEADER = "index,id,solved,move,expected,depth,score,nodes,time_ms,solution_nodes,solution_time_ms,error";
+
+	/**
+	 * The outcome of a single position.
+	 *
+	 * @param error Why the position couldn't be searched, null if it was.
+	 */
+	private record Result(int index, String id, boolean solved, String move, String expected, int depth, int score,
+			long nodes, long time, long solutionNodes, long solutionTime, String error) {
+	}
+
+	private final long timeLimit;
+	private final long nodeLimit;
+	private final ThreadLocal<TranspositionTable> tables;
+	private final LongAdder pawnHits = new LongAdder();
+	private final LongAdder pawnProbes = new LongAdder();
+
+	private EpdRunner(long timeLimit, long nodeLimit, int hash) {
+		this.timeLimit = timeLimit;
+		this.nodeLimit = nodeLimit;
+		tables = ThreadLocal.withInitial(() -> new TranspositionTable(hash));
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path out = Path.of("epd.csv");
+		long time = -1;
+		long nodes = -1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int hash = 1 << 18;
+		List<Path> inputs = new ArrayList<>();
+		for (String arg : args)
+			if (arg.startsWith("out="))
+				out = Path.of(arg.substring(4));
+			else if (arg.startsWith("time="))
+				time = Long.valueOf(arg.substring(5));
+			else if (arg.startsWith("nodes="))
+				nodes = Long.valueOf(arg.substring(6));
+			else if (arg.startsWith("threads="))
+				threads = Integer.valueOf(arg.substring(8));
+			else if (arg.startsWith("hash="))
+				hash = Integer.valueOf(arg.substring(5));
+			else
+				inputs.add(Path.of(arg));
+		if (time < 0 && nodes < 0)
+			time = 1000;
+
+		long start = System.currentTimeMillis();
+		EpdRunner runner = new EpdRunner(time, nodes, hash);
+		List<Result> results = runner.run(inputs, threads);
+		int solved = 0;
+		int errors = 0;
+		long totalNodes = 0;
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8))) {
+			writer.println(HEADER);
+			for (Result result : results) {
+				writer.println(toCsv(result));
+				if (result.error != null) {
+					errors++;
+					System.err.println("Position " + result.index + ": " + result.error);
+				} else if (result.solved)
+					solved++;
+				totalNodes += result.nodes;
+			}
+		}
+		System.out.println("Positions: " + results.size() + "  Solved: " + solved + "  Errors: " + errors + "  Nodes: "
+				+ totalNodes + "  Evaluation cache: " + EvaluationParameters.getDefault().getCache().getStatistics()
+				+ "  Pawn table: " + EvaluationCache.getStatistics(runner.pawnHits.sum(), runner.pawnProbes.sum())
+				+ "  Time: " + (System.currentTimeMillis() - start) + " milliseconds");
+	}
+
+	/**
+	 * Solves every position of {@code inputs} on {@code threads} threads.
+	 *
+	 * @return The results in the order of the positions.
+	 */
+	private List<Result> run(List<Path> inputs, int threads) throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<>();
+		try {
+			for (Path input : inputs)
+				try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.ISO_8859_1)) {
+					for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+						if (line.isBlank() || line.startsWith("#"))
+							continue;
+						int index = futures.size() + 1;
+						String epd = line;
+						futures.add(pool.submit(() -> solve(index, epd)));
+					}
+				}
+		} finally {
+			pool.shutdown();
+		}
+		List<Result> results = new ArrayList<>();
+		for (Future<Result> future : futures)
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		return results;
+	}
+
+	/**
+	 * Parses and searches a single EPD line on the current thread.
+	 */
+	private Result solve(int index, String epd) {
+		int end;
+		try {
+			end = new Fen().validate(epd, 0, epd.length());
+		} catch (Fen.FormatException e) {
+			return new Result(index, "", false, "", "", 0, 0, 0, 0, -1, -1, e.getMessage());
+		}
+		Map<String, String> operations = parseOperations(epd, end);
+		String id = operations.getOrDefault("id", "");
+		String fen = epd.substring(0, end).trim();
+		Chess chess = new Chess(fen);
+		chess.computeTileProtection();
+		boolean white = chess.getTurn();
+
+		String expected = "";
+		List<Integer> best = new ArrayList<>();
+		List<Integer> avoid = new ArrayList<>();
+		for (String opcode : new String[] { "bm", "am" }) {
+			String operand = operations.get(opcode);
+			if (operand == null)
+				continue;
+			expected = (expected.isEmpty() ? "" : expected + " ") + opcode + " " + operand;
+			for (String san : operand.split("\\s+")) {
+				Move move = Notation.parseSan(chess, white, san);
+				if (move == null)
+					return new Result(index, id, false, "", expected, 0, 0, 0, 0, -1, -1, "Illegal move: " + san);
+				(opcode.equals("bm") ? best : avoid).add(OpeningBook.encodeMove(move));
+			}
+		}
+		if (best.isEmpty() && avoid.isEmpty())
+			return new Result(index, id, false, "", "", 0, 0, 0, 0, -1, -1, "No bm nor am operation");
+
+		TranspositionTable table = tables.get();
+		table.clear();
+		long start = System.nanoTime();
+		Search search = new Search(fen, new long[] { chess.getPositionHash(white) }, 0, white, table,
+				timeLimit < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeLimit);
+		if (nodeLimit >= 0)
+			search.setNodeLimit(nodeLimit);
+		// Nodes then time (in ns) after which the best Move was a solution
+		long[] solution = { -1, -1 };
+		search.setListener(current -> {
+			if (!isSolution(current.getBestMove(), best, avoid))
+				solution[0] = solution[1] = -1;
+			else if (solution[0] < 0) {
+				solution[0] = current.getNodes();
+				solution[1] = System.nanoTime() - start;
+			}
+		});
+		search.run();
+		long time = (System.nanoTime() - start) / 1_000_000;
+		pawnHits.add(search.getPawnTable().getHits());
+		pawnProbes.add(search.getPawnTable().getProbes());
+
+		boolean solved = isSolution(search.getBestMove(), best, avoid);
+		if (solved && solution[0] < 0) {
+			// Not even the first depth was completed
+			solution[0] = search.getNodes();
+			solution[1] = System.nanoTime() - start;
+		}
+		return new Result(index, id, solved, toCoordinates(chess, search.getBestMove()), expected,
+				search.getCompletedDepth(), search.getScore(), search.getNodes(), time, solved ? solution[0] : -1,
+				solved ? solution[1] / 1_000_000 : -1, null);
+	}
+
+	private static boolean isSolution(int move, List<Integer> best, List<Integer> avoid) {
+		return move != 0 && (best.isEmpty() || best.contains(move)) && !avoid.contains(move);
+	}
+
+	/**
+	 * Reads the operations following the position of an EPD line, each being an
+	 * opcode then operands up to a semicolon. Quotes around a single operand are
+	 * removed.
+	 *
+	 * @return The operands by opcode.
+	 */
+	private static Map<String, String> parseOperations(String epd, int start) {
+		Map<String, String> operations = new LinkedHashMap<>();
+		int i = start;
+		while (i < epd.length()) {
+			while (i < epd.length() && (Character.isWhitespace(epd.charAt(i)) || epd.charAt(i) == ';'))
+				i++;
+			int opcodeStart = i;
+			while (i < epd.length() && !Character.isWhitespace(epd.charAt(i)) && epd.charAt(i) != ';')
+				i++;
+			if (i == opcodeStart)
+				break;
+			String opcode = epd.substring(opcodeStart, i);
+			int operandStart = i;
+			boolean quoted = false;
+			for (; i < epd.length() && (quoted || epd.charAt(i) != ';'); i++)
+				if (epd.charAt(i) == '"')
+					quoted = !quoted;
+			String operand = epd.substring(operandStart, i).trim();
+			if (operand.length() >= 2 && operand.startsWith("\"") && operand.endsWith("\""))
+				operand = operand.substring(1, operand.length() - 1);
+			operations.put(opcode, operand);
+		}
+		return operations;
+	}
+
+	/**
+	 * Writes a Polyglot encoded Move in coordinate notation, for example
+	 * {@code e7e8q}. Castling is written as the King Move.
+	 *
+	 * @param chess The board the Move is played on.
+	 */
+	private static String toCoordinates(Chess chess, int move) {
+		if (move == 0)
+			return "";
+		int fromRow = move >>> 6 & 7;
+		int fromLine = 7 - (move >>> 9 & 7);
+		int toRow = move & 7;
+		int toLine = 7 - (move >>> 3 & 7);
+		if (chess.getTiles()[fromRow][fromLine].getPiece() instanceof King && fromRow == 4
+				&& (toRow == 0 || toRow == 7))
+			toRow = toRow == 7 ? 6 : 2;
+		StringBuilder result = new StringBuilder(5).append((char) ('a' + fromRow)).append((char) ('8' - fromLine))
+				.append((char) ('a' + toRow)).append((char) ('8' - toLine));
+		int promotion = move >>> 12 & 7;
+		if (promotion != 0)
+			result.append(" nbrq".charAt(promotion));
+		return result.toString();
+	}
+
+	private static String toCsv(Result result) {
+		return result.index + "," + escape(result.id) + "," + result.solved + "," + result.move + ","
+				+ escape(result.expected) + "," + result.depth + "," + result.score + "," + result.nodes + ","
+				+ result.time + "," + (result.solutionNodes < 0 ? "" : result.solutionNodes) + ","
+				+ (result.solutionTime < 0 ? "" : result.solutionTime) + ","
+				+ (result.error == null ? "" : escape(result.error));
+	}
+
+	/**
+	 * Quotes a CSV field if needed.
+	 */
+	private static String escape(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+			return field;
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+}
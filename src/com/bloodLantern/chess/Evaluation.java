@@ -0,0 +1,421 @@
+package com.bloodLantern.chess;
+
+import com.bloodLantern.chess.pieces.King;
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Incrementally updated material and piece-square evaluation of a board. Every
+ * time a {@link Tile} changes its Piece, the old Piece's contribution is
+ * removed and the new one's is added, so reading the score never needs to scan
+ * the board. The middlegame and endgame scores are tapered by the remaining
+ * material (the game phase). The pawn structure is read from a
+ * {@link PawnHashTable} keyed by a pawn-only hash kept up to date the same way.
+ * Mobility and king safety are read from the protection lists of the Tiles.
+ * The weights, the network and whether mobility and king safety are evaluated
+ * come from the {@link EvaluationParameters} of the thread setting the board
+ * up. If they have a {@link NeuralNetwork}, its accumulator is updated the same
+ * way too and the network replaces the classical evaluation.
+ *
+ * @author BloodLantern
+ */
+public final class Evaluation {
+
+	/**
+	 * Should every evaluation be cross-checked against a full recompute of the
+	 * board ? Set by the {@code debugeval} program argument.
+	 */
+	public static boolean debug = false;
+
+	/**
+	 * The phase value of a board with all its starting Pieces.
+	 */
+	static final int MAX_PHASE = 24;
+
+	/**
+	 * How much each Piece type counts in the game phase, indexed by
+	 * {@link Piece#getType()}.
+	 */
+	private static final int[] PHASE_VALUES = { 0, 1, 1, 2, 4, 0 };
+
+	// Built-in piece-square tables, from the white point of view with a8 as index
+	// 0. Black Pieces use them mirrored vertically. The evaluation reads the
+	// copies of these and of the other weights held by its EvaluationParameters.
+	static final int[] PAWN_MG = {
+			0, 0, 0, 0, 0, 0, 0, 0,
+			50, 50, 50, 50, 50, 50, 50, 50,
+			10, 10, 20, 30, 30, 20, 10, 10,
+			5, 5, 10, 25, 25, 10, 5, 5,
+			0, 0, 0, 20, 20, 0, 0, 0,
+			5, -5, -10, 0, 0, -10, -5, 5,
+			5, 10, 10, -20, -20, 10, 10, 5,
+			0, 0, 0, 0, 0, 0, 0, 0 };
+	static final int[] PAWN_EG = {
+			0, 0, 0, 0, 0, 0, 0, 0,
+			80, 80, 80, 80, 80, 80, 80, 80,
+			50, 50, 50, 50, 50, 50, 50, 50,
+			30, 30, 30, 30, 30, 30, 30, 30,
+			20, 20, 20, 20, 20, 20, 20, 20,
+			10, 10, 10, 10, 10, 10, 10, 10,
+			10, 10, 10, 10, 10, 10, 10, 10,
+			0, 0, 0, 0, 0, 0, 0, 0 };
+	static final int[] KNIGHT_TABLE = {
+			-50, -40, -30, -30, -30, -30, -40, -50,
+			-40, -20, 0, 0, 0, 0, -20, -40,
+			-30, 0, 10, 15, 15, 10, 0, -30,
+			-30, 5, 15, 20, 20, 15, 5, -30,
+			-30, 0, 15, 20, 20, 15, 0, -30,
+			-30, 5, 10, 15, 15, 10, 5, -30,
+			-40, -20, 0, 5, 5, 0, -20, -40,
+			-50, -40, -30, -30, -30, -30, -40, -50 };
+	static final int[] BISHOP_TABLE = {
+			-20, -10, -10, -10, -10, -10, -10, -20,
+			-10, 0, 0, 0, 0, 0, 0, -10,
+			-10, 0, 5, 10, 10, 5, 0, -10,
+			-10, 5, 5, 10, 10, 5, 5, -10,
+			-10, 0, 10, 10, 10, 10, 0, -10,
+			-10, 10, 10, 10, 10, 10, 10, -10,
+			-10, 5, 0, 0, 0, 0, 5, -10,
+			-20, -10, -10, -10, -10, -10, -10, -20 };
+	static final int[] ROOK_TABLE = {
+			0, 0, 0, 0, 0, 0, 0, 0,
+			5, 10, 10, 10, 10, 10, 10, 5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			-5, 0, 0, 0, 0, 0, 0, -5,
+			0, 0, 0, 5, 5, 0, 0, 0 };
+	static final int[] QUEEN_TABLE = {
+			-20, -10, -10, -5, -5, -10, -10, -20,
+			-10, 0, 0, 0, 0, 0, 0, -10,
+			-10, 0, 5, 5, 5, 5, 0, -10,
+			-5, 0, 5, 5, 5, 5, 0, -5,
+			0, 0, 5, 5, 5, 5, 0, -5,
+			-10, 5, 5, 5, 5, 5, 0, -10,
+			-10, 0, 5, 0, 0, 0, 0, -10,
+			-20, -10, -10, -5, -5, -10, -10, -20 };
+	static final int[] KING_MG = {
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-20, -30, -30, -40, -40, -30, -30, -20,
+			-10, -20, -20, -20, -20, -20, -20, -10,
+			20, 20, 0, 0, 0, 0, 20, 20,
+			20, 30, 10, 0, 0, 10, 30, 20 };
+	static final int[] KING_EG = {
+			-50, -40, -30, -20, -20, -30, -40, -50,
+			-30, -20, -10, 0, 0, -10, -20, -30,
+			-30, -10, 20, 30, 30, 20, -10, -30,
+			-30, -10, 30, 40, 40, 30, -10, -30,
+			-30, -10, 30, 40, 40, 30, -10, -30,
+			-30, -10, 20, 30, 30, 20, -10, -30,
+			-30, -30, 0, 0, 0, 0, -30, -30,
+			-50, -30, -30, -30, -30, -30, -30, -50 };
+
+	/**
+	 * Middlegame bonus per protected Tile, indexed by {@link Piece#getType()}.
+	 */
+	static final int[] MOBILITY_MG = { 0, 4, 5, 2, 1, 0 };
+	/**
+	 * Endgame bonus per protected Tile, indexed by {@link Piece#getType()}.
+	 */
+	static final int[] MOBILITY_EG = { 0, 4, 5, 4, 2, 0 };
+	/**
+	 * Attack units for each Tile of the enemy King zone protected by a Piece,
+	 * indexed by {@link Piece#getType()}.
+	 */
+	static final int[] KING_ATTACK_UNITS = { 1, 2, 2, 3, 5, 0 };
+	/**
+	 * Maximum middlegame penalty for an attacked King.
+	 */
+	static final int MAX_KING_DANGER = 300;
+
+	/**
+	 * The weights, network and cache of this evaluation.
+	 */
+	private final EvaluationParameters parameters;
+	/**
+	 * White minus black middlegame score.
+	 */
+	private int middlegame = 0;
+	/**
+	 * White minus black endgame score.
+	 */
+	private int endgame = 0;
+	/**
+	 * Current game phase. {@link #MAX_PHASE} means no Piece has been taken yet
+	 * while 0 means only Kings and Pawns are left.
+	 */
+	private int phase = 0;
+	/**
+	 * Number of Pieces on the board, Kings included.
+	 */
+	private int pieceCount = 0;
+	/**
+	 * Zobrist hash of every Piece placement.
+	 */
+	private long pieceKey = 0;
+	/**
+	 * Zobrist hash of the Pawns only.
+	 */
+	private long pawnKey = 0;
+	/**
+	 * Cache of the pawn structure scores.
+	 */
+	private final PawnHashTable pawnTable;
+	/**
+	 * The first layer of the network of {@link #parameters}. Null if there isn't
+	 * any network.
+	 */
+	private final NeuralNetwork.Accumulator accumulator;
+
+	/**
+	 * Constructs an Evaluation of an empty board, using the
+	 * {@link EvaluationParameters#getCurrent() parameters of the current thread}.
+	 */
+	public Evaluation() {
+		this(EvaluationParameters.getCurrent());
+	}
+
+	private Evaluation(EvaluationParameters parameters) {
+		this(parameters, new PawnHashTable(1 << 14, parameters));
+	}
+
+	private Evaluation(EvaluationParameters parameters, PawnHashTable pawnTable) {
+		this.parameters = parameters;
+		this.pawnTable = pawnTable;
+		NeuralNetwork network = parameters.getNetwork();
+		accumulator = network == null ? null : network.newAccumulator();
+	}
+
+	/**
+	 * Adds the contribution of {@code piece} standing on {@code tile}.
+	 *
+	 * @param piece The Piece to add.
+	 * @param tile  The Tile on which {@code piece} now stands.
+	 */
+	void add(Piece piece, Tile tile) {
+		int square = getSquare(piece.isWhite(), tile);
+		int type = piece.getType();
+		int sign = piece.isWhite() ? 1 : -1;
+		int value = parameters.pieceValues[type];
+		middlegame += sign * (value + parameters.mgTables[type][square]);
+		endgame += sign * (value + parameters.egTables[type][square]);
+		phase += PHASE_VALUES[type];
+		pieceCount++;
+		long key = Zobrist.getPieceKey(piece, tile);
+		pieceKey ^= key;
+		if (type == Piece.PAWN)
+			pawnKey ^= key;
+		if (accumulator != null)
+			accumulator.add(piece, tile);
+	}
+
+	/**
+	 * Removes the contribution of {@code piece} standing on {@code tile}.
+	 *
+	 * @param piece The Piece to remove.
+	 * @param tile  The Tile on which {@code piece} was standing.
+	 */
+	void remove(Piece piece, Tile tile) {
+		int square = getSquare(piece.isWhite(), tile);
+		int type = piece.getType();
+		int sign = piece.isWhite() ? 1 : -1;
+		int value = parameters.pieceValues[type];
+		middlegame -= sign * (value + parameters.mgTables[type][square]);
+		endgame -= sign * (value + parameters.egTables[type][square]);
+		phase -= PHASE_VALUES[type];
+		pieceCount--;
+		long key = Zobrist.getPieceKey(piece, tile);
+		pieceKey ^= key;
+		if (type == Piece.PAWN)
+			pawnKey ^= key;
+		if (accumulator != null)
+			accumulator.remove(piece, tile);
+	}
+
+	/**
+	 * Gets the score of the board from the point of view of {@code white}. This
+	 * uses the {@link KpkBitbase} in King and Pawn versus King endings, the
+	 * network if there is one and the classical evaluation otherwise.
+	 *
+	 * @param white The side for which the score should be returned.
+	 * @return A positive value if {@code white} is winning, a negative one
+	 *         otherwise.
+	 */
+	public int evaluate(boolean white) {
+		if (pieceCount == 3 && pawnKey != 0) {
+			int kpk = KpkBitbase.evaluate(Chess.getInstance().getTiles());
+			if (kpk != KpkBitbase.UNKNOWN)
+				return white ? kpk : -kpk;
+		}
+		if (accumulator == null)
+			return evaluateClassical(white);
+		if (debug)
+			verify(Chess.getInstance().getTiles());
+		return parameters.getNetwork().evaluate(accumulator, white);
+	}
+
+	/**
+	 * Gets the tapered score of the board from the point of view of
+	 * {@code white}. This is O(1) as the underlying scores are kept up to date by
+	 * the Tiles.
+	 *
+	 * @param white The side for which the score should be returned.
+	 * @return A positive value if {@code white} is winning, a negative one
+	 *         otherwise.
+	 */
+	int evaluateClassical(boolean white) {
+		Tile[][] tiles = Chess.getInstance().getTiles();
+		if (debug)
+			verify(tiles);
+		int pawns = pawnTable.probe(pawnKey, tiles);
+		int[] score = { middlegame + pawnTable.getMiddlegame(pawns), endgame + pawnTable.getEndgame(pawns) };
+		if (parameters.isActivity())
+			addActivity(tiles, score);
+		int result = taper(score[0], score[1], phase);
+		return white ? result : -result;
+	}
+
+	/**
+	 * Adds the mobility and king safety terms to {@code score}. Both are read from
+	 * the {@link Tile#getProtecting() protection lists} that
+	 * {@link Chess#computeTileProtection()} already built for the move generation
+	 * instead of generating the moves again.
+	 *
+	 * @param tiles The board.
+	 * @param score The white minus black middlegame and endgame scores to add the
+	 *              terms to.
+	 */
+	private void addActivity(Tile[][] tiles, int[] score) {
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless) {
+				Piece target = tile.getPiece();
+				for (Piece piece : tile.getProtecting())
+					if (target == null || target.isEnemy(piece.isWhite())) {
+						int sign = piece.isWhite() ? 1 : -1;
+						score[0] += sign * parameters.mobilityMg[piece.getType()];
+						score[1] += sign * parameters.mobilityEg[piece.getType()];
+					}
+			}
+		score[0] -= getKingDanger(tiles, King.getWhiteKing());
+		score[0] += getKingDanger(tiles, King.getBlackKing());
+	}
+
+	/**
+	 * Gets the middlegame penalty of {@code king} for the enemy Pieces protecting
+	 * its Tile and the adjacent ones.
+	 */
+	private int getKingDanger(Tile[][] tiles, King king) {
+		if (king == null || king.getTile() == null)
+			return 0;
+		int units = 0;
+		Tile tile = king.getTile();
+		for (int row = Math.max(tile.getRow() - 1, 0); row <= Math.min(tile.getRow() + 1, 7); row++)
+			for (int line = Math.max(tile.getLine() - 1, 0); line <= Math.min(tile.getLine() + 1, 7); line++)
+				for (Piece piece : tiles[row][line].getProtecting())
+					if (piece.isEnemy(king.isWhite()))
+						units += parameters.kingAttackUnits[piece.getType()];
+		return Math.min(units * units / 4, MAX_KING_DANGER);
+	}
+
+	/**
+	 * Recomputes the whole evaluation from {@code tiles} and throws if it doesn't
+	 * match the incrementally updated one.
+	 *
+	 * @param tiles The board to recompute the evaluation from.
+	 * @throws IllegalStateException If the incremental evaluation drifted from
+	 *                               the board.
+	 */
+	public void verify(Tile[][] tiles) {
+		// The recompute doesn't need its own pawn table
+		Evaluation full = new Evaluation(parameters, null);
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless)
+				if (tile.getPiece() != null)
+					full.add(tile.getPiece(), tile);
+		if (accumulator != null && !accumulator.matches(full.accumulator))
+			throw new IllegalStateException("Incremental network accumulator doesn't match the board.");
+		if (full.middlegame != middlegame || full.endgame != endgame || full.phase != phase
+				|| full.pieceCount != pieceCount || full.pieceKey != pieceKey || full.pawnKey != pawnKey)
+			throw new IllegalStateException("Incremental evaluation (mg=" + middlegame + ", eg=" + endgame
+					+ ", phase=" + phase + ", pawnKey=" + Long.toHexString(pawnKey) + ") doesn't match the board (mg="
+					+ full.middlegame + ", eg=" + full.endgame + ", phase=" + full.phase + ", pawnKey="
+					+ Long.toHexString(full.pawnKey) + ").");
+	}
+
+	/**
+	 * Blends a middlegame and an endgame score according to {@code phase}.
+	 */
+	static int taper(int middlegame, int endgame, int phase) {
+		int mgPhase = Math.min(phase, MAX_PHASE);
+		return (middlegame * mgPhase + endgame * (MAX_PHASE - mgPhase)) / MAX_PHASE;
+	}
+
+	/**
+	 * Gets the piece-square table index of {@code tile} for a Piece of the given
+	 * color.
+	 */
+	static int getSquare(boolean white, Tile tile) {
+		if (white)
+			return tile.getLine() * 8 + tile.getRow();
+		return (7 - tile.getLine()) * 8 + tile.getRow();
+	}
+
+	/**
+	 * Getter for the phase value.
+	 *
+	 * @return The phase to get.
+	 */
+	public int getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Getter for the pieceCount value.
+	 *
+	 * @return The pieceCount to get.
+	 */
+	public int getPieceCount() {
+		return pieceCount;
+	}
+
+	/**
+	 * Getter for the pieceKey value. The static evaluation only depends on the
+	 * Piece placement so this is the key used to cache it.
+	 *
+	 * @return The pieceKey to get.
+	 */
+	public long getPieceKey() {
+		return pieceKey;
+	}
+
+	/**
+	 * Getter for the pawnKey value.
+	 *
+	 * @return The pawnKey to get.
+	 */
+	public long getPawnKey() {
+		return pawnKey;
+	}
+
+	/**
+	 * Getter for the parameters value.
+	 *
+	 * @return The parameters to get.
+	 */
+	public EvaluationParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Getter for the pawnTable value.
+	 *
+	 * @return The pawnTable to get.
+	 */
+	public PawnHashTable getPawnTable() {
+		return pawnTable;
+	}
+
+}
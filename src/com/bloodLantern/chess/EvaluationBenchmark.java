@@ -0,0 +1,127 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Command-line benchmark comparing the number of evaluations per second of the
+ * classical evaluation and of the {@link NeuralNetwork}. It also measures the
+ * nodes per second (make, evaluate and unmake a Move) with and without the
+ * mobility and king safety terms of the classical evaluation, and the cost of
+ * an evaluation read back from the {@link EvaluationCache}. The hit rates of
+ * that cache and of the {@link PawnHashTable} while making Moves are printed.
+ * <p>
+ * Arguments: {@code nnue=<path>} to benchmark a network file instead of a
+ * random 256x32 one, {@code iterations=<n>} to set how many times each position
+ * is evaluated. Run it with {@code --add-modules jdk.incubator.vector} to
+ * benchmark the Vector API {@link NetworkKernels}.
+ *
+ * @author BloodLantern
+ */
+public final class EvaluationBenchmark {
+
+	private static final String[] POSITIONS = { "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1" };
+
+	private EvaluationBenchmark() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		int iterations = 2000;
+		NeuralNetwork network = null;
+		for (String arg : args)
+			if (arg.startsWith("nnue="))
+				network = NeuralNetwork.load(Path.of(arg.substring(5)));
+			else if (arg.startsWith("iterations="))
+				iterations = Integer.valueOf(arg.substring(11));
+		if (network == null)
+			network = NeuralNetwork.random(256, 32, 1);
+		EvaluationParameters.getDefault().setNetwork(network);
+
+		// The first round only warms the JIT up
+		run(iterations / 10, false);
+		run(iterations, true);
+		runNodes(iterations / 100, false);
+		runNodes(iterations / 10, true);
+	}
+
+	private static void runNodes(int iterations, boolean print) {
+		long[] time = new long[2];
+		long nodes = 0;
+		int checksum = 0;
+		long pawnHits = 0;
+		long pawnProbes = 0;
+		for (String fen : POSITIONS) {
+			Chess chess = new Chess(fen);
+			Evaluation evaluation = chess.getEvaluation();
+			List<Move> moves = chess.getPossibleMoves(chess.getTurn());
+			for (int activity = 0; activity < 2; activity++) {
+				chess.getEvaluation().getParameters().setActivity(activity == 1);
+				long start = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					for (Move move : moves) {
+						move.makeMove(false);
+						checksum += evaluation.evaluateClassical(true);
+						move.unmakeMove(false);
+					}
+				time[activity] += System.nanoTime() - start;
+			}
+			nodes += (long) iterations * moves.size();
+			pawnHits += evaluation.getPawnTable().getHits();
+			pawnProbes += evaluation.getPawnTable().getProbes();
+		}
+		EvaluationParameters.getDefault().setActivity(true);
+		if (print) {
+			System.out.println("Nodes: " + nodes + "  Checksum: " + checksum);
+			System.out.println("Material and pawns only: " + nodes * 1_000_000_000L / time[0] + " nodes/s");
+			System.out.println("With mobility and king safety: " + nodes * 1_000_000_000L / time[1] + " nodes/s");
+			System.out.println("Pawn table: " + EvaluationCache.getStatistics(pawnHits, pawnProbes));
+		}
+	}
+
+	private static void run(int iterations, boolean print) {
+		long classicalTime = 0;
+		long networkTime = 0;
+		long cachedTime = 0;
+		long evaluations = 0;
+		int checksum = 0;
+		EvaluationCache cache = EvaluationParameters.getDefault().getCache();
+		// Starts from an empty cache so that the printed hit rate is this round's
+		EvaluationParameters.getDefault().setCacheSize(cache.getSize());
+		for (String fen : POSITIONS) {
+			Chess chess = new Chess(fen);
+			Evaluation evaluation = chess.getEvaluation();
+			List<Move> moves = chess.getPossibleMoves(chess.getTurn());
+			for (Move move : moves) {
+				move.makeMove(false);
+				long time = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					checksum += evaluation.evaluateClassical(true);
+				classicalTime += System.nanoTime() - time;
+				time = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					checksum += evaluation.evaluate(true);
+				networkTime += System.nanoTime() - time;
+				time = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					checksum += AI.evaluate(true);
+				cachedTime += System.nanoTime() - time;
+				evaluations += iterations;
+				move.unmakeMove(false);
+			}
+		}
+		if (print) {
+			System.out.println("Network kernels: " + NetworkKernels.INSTANCE.getName());
+			System.out.println("Positions: " + evaluations / iterations + "  Evaluations: " + evaluations
+					+ "  Checksum: " + checksum);
+			System.out.println("Classical: " + evaluations * 1_000_000_000L / classicalTime + " evaluations/s");
+			System.out.println("Network:   " + evaluations * 1_000_000_000L / networkTime + " evaluations/s");
+			System.out.println("Cached:    " + evaluations * 1_000_000_000L / cachedTime + " evaluations/s  ("
+					+ EvaluationParameters.getDefault().getCache().getStatistics() + ")");
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.bloodLantern.chess;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free cache of static evaluations keyed by position hash. Each entry is
+ * stored as two longs: the key XORed with the data and the data itself. A torn
+ * write from another thread then simply fails the key check and is treated as a
+ * miss, so no lock is ever taken and a hit costs a single memory load.
+ *
+ * @author BloodLantern
+ */
+public final class EvaluationCache {
+
+	/**
+	 * Returned by {@link #probe(long)} when the position isn't cached.
+	 */
+	public static final int MISS = Integer.MIN_VALUE;
+
+	/**
+	 * Two longs per entry: {@code key ^ data} then {@code data}.
+	 */
+	private final long[] entries;
+	private final int mask;
+
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Constructs an EvaluationCache.
+	 *
+	 * @param size The number of entries. Rounded up to a power of two.
+	 * @throws IllegalArgumentException If {@code size} is negative or zero.
+	 */
+	public EvaluationCache(int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("The evaluation cache size must be positive.");
+		size = Integer.highestOneBit(size - 1) << 1;
+		if (size == 0)
+			size = 1;
+		entries = new long[size * 2];
+		mask = size - 1;
+	}
+
+	/**
+	 * Looks up the evaluation of a position.
+	 *
+	 * @param key The hash of the position.
+	 * @return The cached evaluation or {@link #MISS}.
+	 */
+	public int probe(long key) {
+		int index = ((int) key & mask) << 1;
+		probes.increment();
+		long data = entries[index + 1];
+		if ((entries[index] ^ data) != key || data == 0)
+			return MISS;
+		hits.increment();
+		return (int) data;
+	}
+
+	/**
+	 * Stores the evaluation of a position, replacing whatever was in its slot.
+	 *
+	 * @param key        The hash of the position.
+	 * @param evaluation The evaluation to store.
+	 */
+	public void store(long key, int evaluation) {
+		int index = ((int) key & mask) << 1;
+		// The high bit marks the entry as used so that a 0 evaluation isn't a miss
+		long data = (evaluation & 0xFFFFFFFFL) | 1L << 32;
+		entries[index] = key ^ data;
+		entries[index + 1] = data;
+	}
+
+	/**
+	 * Gets the proportion of probes that found their entry already cached.
+	 *
+	 * @return A value between 0 and 1.
+	 */
+	public double getHitRate() {
+		long probes = this.probes.sum();
+		return probes == 0 ? 0 : (double) hits.sum() / probes;
+	}
+
+	/**
+	 * Getter for the probes value.
+	 *
+	 * @return The number of probes since this cache was created.
+	 */
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	/**
+	 * Getter for the hits value.
+	 *
+	 * @return The number of successful probes since this cache was created.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Describes how well this cache worked, for the summaries of the
+	 * command-line tools.
+	 *
+	 * @return The hit rate and the number of probes.
+	 */
+	public String getStatistics() {
+		return getStatistics(getHits(), getProbes());
+	}
+
+	/**
+	 * Describes how well a cache worked, for the summaries of the command-line
+	 * tools.
+	 *
+	 * @param hits   The number of successful probes.
+	 * @param probes The number of probes.
+	 * @return The hit rate and the number of probes.
+	 */
+	static String getStatistics(long hits, long probes) {
+		return String.format("%.1f%% hits of %d probes", probes == 0 ? 0 : 100.0 * hits / probes, probes);
+	}
+
+	/**
+	 * @return The number of entries of this cache.
+	 */
+	public int getSize() {
+		return mask + 1;
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The settings of the evaluation of an engine: the weights of the classical
+ * evaluation (the Piece values, the piece-square, mobility and king safety
+ * tables and the pawn structure weights), whether it includes the mobility and
+ * king safety terms, the {@link NeuralNetwork} replacing it and the
+ * {@link EvaluationCache} of its scores. The weights start as the built-in
+ * tables of {@link AI}, {@link Evaluation} and {@link PawnHashTable} and can be
+ * saved to and loaded from a text file, the one written by {@link TexelTuner}
+ * for example.
+ * <p>
+ * Every board reads the parameters bound to the thread that set it up (see
+ * {@link #bind()}), or the default ones used by the game and the command-line
+ * tools. Two engines can then play each other with their own parameters, as in
+ * the {@link MatchRunner}.
+ * <p>
+ * The file is a list of tables, each being its name followed by all its
+ * values, separated by any whitespace. Everything after a {@code #} on a line
+ * is a comment. Tables missing from the file keep their built-in values.
+ *
+ * @author BloodLantern
+ */
+public final class EvaluationParameters {
+
+	/**
+	 * The values of a table are only used by the middlegame score.
+	 */
+	static final int MIDDLEGAME = 0;
+	/**
+	 * The values of a table are only used by the endgame score.
+	 */
+	static final int ENDGAME = 1;
+	/**
+	 * The values of a table are added to both the middlegame and endgame scores.
+	 */
+	static final int BOTH = 2;
+	/**
+	 * A table of two values: the middlegame one then the endgame one.
+	 */
+	static final int PAIR = 3;
+	/**
+	 * The values of a table are the King attack units, which the King danger
+	 * grows with quadratically.
+	 */
+	static final int KING_ATTACK = 4;
+
+	/**
+	 * A named table of weights.
+	 *
+	 * @param values The table itself, read by the evaluation.
+	 * @param kind   How the values are used: {@link #MIDDLEGAME},
+	 *               {@link #ENDGAME}, {@link #BOTH}, {@link #PAIR} or
+	 *               {@link #KING_ATTACK}.
+	 */
+	record Table(String name, int[] values, int kind) {
+	}
+
+	/**
+	 * The parameters of the boards set up by a thread without bound parameters.
+	 */
+	private static final EvaluationParameters DEFAULT = new EvaluationParameters();
+	/**
+	 * The parameters bound to the current thread, null to use {@link #DEFAULT}.
+	 */
+	private static final ThreadLocal<EvaluationParameters> threadParameters = new ThreadLocal<>();
+
+	// Copies of the built-in tables, read directly by the evaluation
+	final int[] pieceValues = AI.PIECE_VALUES.clone();
+	final int[] pawnMg = Evaluation.PAWN_MG.clone();
+	final int[] pawnEg = Evaluation.PAWN_EG.clone();
+	final int[] knight = Evaluation.KNIGHT_TABLE.clone();
+	final int[] bishop = Evaluation.BISHOP_TABLE.clone();
+	final int[] rook = Evaluation.ROOK_TABLE.clone();
+	final int[] queen = Evaluation.QUEEN_TABLE.clone();
+	final int[] kingMg = Evaluation.KING_MG.clone();
+	final int[] kingEg = Evaluation.KING_EG.clone();
+	final int[] mobilityMg = Evaluation.MOBILITY_MG.clone();
+	final int[] mobilityEg = Evaluation.MOBILITY_EG.clone();
+	final int[] kingAttackUnits = Evaluation.KING_ATTACK_UNITS.clone();
+	final int[] doubled = PawnHashTable.DOUBLED.clone();
+	final int[] isolated = PawnHashTable.ISOLATED.clone();
+	final int[] backward = PawnHashTable.BACKWARD.clone();
+	final int[] passedMg = PawnHashTable.PASSED_MG.clone();
+	final int[] passedEg = PawnHashTable.PASSED_EG.clone();
+	/**
+	 * Middlegame piece-square tables indexed by
+	 * {@link com.bloodLantern.chess.pieces.Piece#getType()}.
+	 */
+	final int[][] mgTables = { pawnMg, knight, bishop, rook, queen, kingMg };
+	/**
+	 * Endgame piece-square tables indexed by
+	 * {@link com.bloodLantern.chess.pieces.Piece#getType()}.
+	 */
+	final int[][] egTables = { pawnEg, knight, bishop, rook, queen, kingEg };
+
+	/**
+	 * Every tunable table, in file order. The phase values and the maximum King
+	 * danger define the scale of the other weights and are left out.
+	 */
+	private final List<Table> tables = List.of(
+			new Table("pieceValues", pieceValues, BOTH),
+			new Table("pawnMg", pawnMg, MIDDLEGAME),
+			new Table("pawnEg", pawnEg, ENDGAME),
+			new Table("knight", knight, BOTH),
+			new Table("bishop", bishop, BOTH),
+			new Table("rook", rook, BOTH),
+			new Table("queen", queen, BOTH),
+			new Table("kingMg", kingMg, MIDDLEGAME),
+			new Table("kingEg", kingEg, ENDGAME),
+			new Table("mobilityMg", mobilityMg, MIDDLEGAME),
+			new Table("mobilityEg", mobilityEg, ENDGAME),
+			new Table("kingAttackUnits", kingAttackUnits, KING_ATTACK),
+			new Table("doubled", doubled, PAIR),
+			new Table("isolated", isolated, PAIR),
+			new Table("backward", backward, PAIR),
+			new Table("passedMg", passedMg, MIDDLEGAME),
+			new Table("passedEg", passedEg, ENDGAME));
+
+	/**
+	 * The network used instead of the classical evaluation. Null to use the
+	 * classical evaluation.
+	 */
+	private NeuralNetwork network = null;
+	/**
+	 * Should the classical evaluation include the mobility and king safety terms
+	 * ?
+	 */
+	private boolean activity = true;
+	/**
+	 * Cache of the static evaluations made with these parameters.
+	 */
+	private EvaluationCache cache = new EvaluationCache(1 << 16);
+
+	/**
+	 * Constructs EvaluationParameters holding the built-in tables, without any
+	 * network.
+	 */
+	public EvaluationParameters() {
+	}
+
+	/**
+	 * Getter for the DEFAULT value.
+	 *
+	 * @return The parameters used by the threads without bound parameters.
+	 */
+	public static EvaluationParameters getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets the parameters of the boards set up by the current thread.
+	 *
+	 * @return The parameters bound to the current thread, or the default ones.
+	 */
+	public static EvaluationParameters getCurrent() {
+		EvaluationParameters parameters = threadParameters.get();
+		return parameters == null ? DEFAULT : parameters;
+	}
+
+	/**
+	 * Makes the boards set up by the current thread from now on use these
+	 * parameters.
+	 */
+	public void bind() {
+		threadParameters.set(this);
+	}
+
+	/**
+	 * Loads the tables of a parameters file and empties the evaluation cache. As
+	 * for {@link #setNetwork(NeuralNetwork)}, this must be done before any board
+	 * using these parameters is set up as their scores are updated
+	 * incrementally.
+	 *
+	 * @param path The file to read.
+	 * @throws IOException              If the file can't be read.
+	 * @throws IllegalArgumentException If the file names an unknown table, or
+	 *                                  has a missing or invalid value.
+	 */
+	public void load(Path path) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			int comment = line.indexOf('#');
+			text.append(comment == -1 ? line : line.substring(0, comment)).append('\n');
+		}
+		try (Scanner scanner = new Scanner(text.toString())) {
+			while (scanner.hasNext()) {
+				String name = scanner.next();
+				Table table = tables.stream().filter(t -> t.name.equals(name)).findFirst()
+						.orElseThrow(() -> new IllegalArgumentException("Unknown evaluation parameter: " + name));
+				for (int i = 0; i < table.values.length; i++) {
+					if (!scanner.hasNextInt())
+						throw new IllegalArgumentException("The " + name + " table needs " + table.values.length
+								+ " values, found " + i + ".");
+					table.values[i] = scanner.nextInt();
+				}
+			}
+		}
+		setCacheSize(cache.getSize());
+	}
+
+	/**
+	 * Writes every table to a parameters file, the piece-square tables as eight
+	 * rows from the 8th rank to the 1st.
+	 *
+	 * @param path The file to write.
+	 * @throws IOException If the file can't be written.
+	 */
+	public void save(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("# Evaluation parameters, indexed by Piece type or by square from a8 to h1");
+			writer.newLine();
+			for (Table table : tables) {
+				writer.write(table.name);
+				int[] values = table.values;
+				int width = values.length == 64 ? 8 : values.length;
+				for (int i = 0; i < values.length; i++) {
+					if (i % width == 0) {
+						writer.newLine();
+						writer.write('\t');
+					} else
+						writer.write(' ');
+					writer.write(String.valueOf(values[i]));
+				}
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Getter for the tables value.
+	 *
+	 * @return Every tunable table, in file order.
+	 */
+	List<Table> getTables() {
+		return tables;
+	}
+
+	/**
+	 * @return The total number of values of every table.
+	 */
+	int size() {
+		int size = 0;
+		for (Table table : tables)
+			size += table.values.length;
+		return size;
+	}
+
+	/**
+	 * Getter for the network value.
+	 *
+	 * @return The network to get. Null if the classical evaluation is used.
+	 */
+	public NeuralNetwork getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Setter for the network value. Must be called before any board using these
+	 * parameters is set up.
+	 *
+	 * @param network The network to use instead of the classical evaluation.
+	 *                Null to use the classical evaluation.
+	 */
+	public void setNetwork(NeuralNetwork network) {
+		this.network = network;
+		setCacheSize(cache.getSize());
+	}
+
+	/**
+	 * Getter for the activity value.
+	 *
+	 * @return True if the mobility and king safety terms are evaluated.
+	 */
+	public boolean isActivity() {
+		return activity;
+	}
+
+	/**
+	 * Setter for the activity value.
+	 *
+	 * @param activity False to leave the mobility and king safety terms out of
+	 *                 the classical evaluation.
+	 */
+	public void setActivity(boolean activity) {
+		this.activity = activity;
+		setCacheSize(cache.getSize());
+	}
+
+	/**
+	 * Getter for the cache value.
+	 *
+	 * @return The cache to get.
+	 */
+	public EvaluationCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Replaces the evaluation cache by an empty one of {@code size} entries.
+	 *
+	 * @param size The number of entries, rounded up to a power of two.
+	 */
+	public void setCacheSize(int size) {
+		cache = new EvaluationCache(size);
+	}
+
+}
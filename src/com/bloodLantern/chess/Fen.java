@@ -0,0 +1,579 @@
+package com.bloodLantern.chess;
+
+import java.nio.charset.StandardCharsets;
+
+import com.bloodLantern.chess.pieces.Bishop;
+import com.bloodLantern.chess.pieces.IfNotMoved;
+import com.bloodLantern.chess.pieces.King;
+import com.bloodLantern.chess.pieces.Knight;
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+import com.bloodLantern.chess.pieces.Queen;
+import com.bloodLantern.chess.pieces.Rook;
+
+/**
+ * Single-pass FEN reader and writer meant for batch analysis. The reader works
+ * on any {@link CharSequence} or on ASCII bytes, validates the whole position
+ * before touching the board and then reuses the Pieces already on it, so that
+ * loading positions one after the other into the same board doesn't allocate.
+ * The writer appends to a {@link StringBuilder} or to a byte array.
+ * <p>
+ * Underscores are accepted in place of spaces, because the main method args are
+ * already separated with spaces. The halfmove clock and fullmove number are
+ * optional, as in EPD.
+ * <p>
+ * The Tiles protected by the Pieces aren't refreshed, so
+ * {@link Chess#computeTileProtection()} must be called before generating Moves.
+ * A Fen keeps state between calls and must only be used by one thread at a
+ * time, on the board returned by {@link Chess#getInstance()}.
+ *
+ * @author BloodLantern
+ */
+public final class Fen {
+
+	/**
+	 * Thrown when a FEN is malformed or describes an illegal position.
+	 */
+	public static final class FormatException extends IllegalArgumentException {
+
+		private static final long serialVersionUID = -3528307157346610542L;
+
+		private final int index;
+
+		public FormatException(String message, int index) {
+			super(message + " at index " + index);
+			this.index = index;
+		}
+
+		/**
+		 * Getter for the index value.
+		 *
+		 * @return The index of the faulty character in the parsed sequence.
+		 */
+		public int getIndex() {
+			return index;
+		}
+	}
+
+	/**
+	 * The FEN characters of the Pieces, white ones then black ones, each color in
+	 * the order of {@link Piece#getType()}.
+	 */
+	private static final String PIECES = "PNBRQKpnbrqk";
+	private static final int EMPTY = -1;
+	/**
+	 * Castling rights bits, in the FEN order.
+	 */
+	private static final int WHITE_KING_SIDE = 1, WHITE_QUEEN_SIDE = 2, BLACK_KING_SIDE = 4, BLACK_QUEEN_SIDE = 8;
+	/**
+	 * The most Pieces of one kind a legal position can have: eight promoted Pawns
+	 * and the two original Pieces.
+	 */
+	private static final int MAX_PIECES = 10;
+	/**
+	 * The longest FEN {@link #write(Chess, byte[], int)} can produce.
+	 */
+	public static final int MAX_LENGTH = 100;
+
+	/**
+	 * The parsed Pieces as indices in {@link #PIECES}, {@link #EMPTY} if none. The
+	 * squares are in the FEN order, from a8 to h1.
+	 */
+	private final byte[] squares = new byte[64];
+	/**
+	 * Squares of the white then black King.
+	 */
+	private final int[] kings = new int[2];
+	private boolean turn;
+	private int castling;
+	/**
+	 * Square of the en passant Tile in the {@link #squares} order, -1 if none.
+	 */
+	private int enPassant;
+	private int halfmoves;
+	private int fullmoves;
+
+	/**
+	 * The Pieces taken off the board by {@link #apply(Chess)}, by index in
+	 * {@link #PIECES}, to put them back on their new Tile. The unused ones are
+	 * kept for the next positions, which may need them.
+	 */
+	private final Piece[][] spares = new Piece[PIECES.length()][MAX_PIECES];
+	private final int[] spareCounts = new int[PIECES.length()];
+
+	private final Ascii ascii = new Ascii();
+
+	/**
+	 * Sets a board up from a FEN. Nothing but whitespace may follow the position.
+	 *
+	 * @param fen   The FEN.
+	 * @param chess The board to set up.
+	 * @throws FormatException If {@code fen} is malformed. The board is left
+	 *                         untouched.
+	 */
+	public void parse(CharSequence fen, Chess chess) {
+		int end = read(fen, 0, fen.length());
+		checkEnd(fen, end);
+		apply(chess);
+	}
+
+	/**
+	 * Sets a board up from a FEN stored as ASCII bytes.
+	 *
+	 * @param fen    The bytes.
+	 * @param offset The index of the first character of the FEN.
+	 * @param length The number of bytes to read.
+	 * @param chess  The board to set up.
+	 * @throws FormatException If the FEN is malformed. The index is relative to
+	 *                         {@code offset}. The board is left untouched.
+	 */
+	public void parse(byte[] fen, int offset, int length, Chess chess) {
+		ascii.set(fen, offset, length);
+		parse(ascii, chess);
+	}
+
+	/**
+	 * Sets a board up from the position at the beginning of a sequence, for
+	 * example an EPD line, and tells where it ends.
+	 *
+	 * @param text  The sequence.
+	 * @param start The index of the first character of the position.
+	 * @param end   The index after the last character that may be read.
+	 * @param chess The board to set up.
+	 * @return The index after the last field of the position.
+	 * @throws FormatException If the position is malformed. The board is left
+	 *                         untouched.
+	 */
+	public int parse(CharSequence text, int start, int end, Chess chess) {
+		int index = read(text, start, end);
+		apply(chess);
+		return index;
+	}
+
+	/**
+	 * Checks a FEN without setting any board up.
+	 *
+	 * @param fen The FEN.
+	 * @throws FormatException If {@code fen} is malformed.
+	 */
+	public void validate(CharSequence fen) {
+		checkEnd(fen, read(fen, 0, fen.length()));
+	}
+
+	/**
+	 * Checks the position at the beginning of a sequence without setting any
+	 * board up, and tells where it ends.
+	 *
+	 * @param text  The sequence.
+	 * @param start The index of the first character of the position.
+	 * @param end   The index after the last character that may be read.
+	 * @return The index after the last field of the position.
+	 * @throws FormatException If the position is malformed.
+	 */
+	public int validate(CharSequence text, int start, int end) {
+		return read(text, start, end);
+	}
+
+	private static void checkEnd(CharSequence fen, int index) {
+		for (; index < fen.length(); index++)
+			if (!Character.isWhitespace(fen.charAt(index)))
+				throw new FormatException("Unexpected character '" + fen.charAt(index) + "'", index);
+	}
+
+	/**
+	 * Parses a position into the fields of this Fen.
+	 *
+	 * @return The index after the last field.
+	 */
+	private int read(CharSequence text, int start, int end) {
+		int i = skipSeparators(text, start, end);
+
+		// Field 1
+		int row = 0;
+		int line = 0;
+		int whites = 0;
+		int blacks = 0;
+		kings[0] = kings[1] = -1;
+		for (;; i++) {
+			char c = i < end ? text.charAt(i) : ' ';
+			if (isSeparator(c)) {
+				if (line != 7 || row != 8)
+					throw new FormatException("The board is incomplete", i);
+				break;
+			} else if (c == '/') {
+				if (row != 8)
+					throw new FormatException("The rank is incomplete", i);
+				if (++line > 7)
+					throw new FormatException("Too many ranks", i);
+				row = 0;
+			} else if (c >= '1' && c <= '8') {
+				if (row + c - '0' > 8)
+					throw new FormatException("Too many squares on the rank", i);
+				for (int n = c - '0'; n > 0; n--)
+					squares[line * 8 + row++] = EMPTY;
+			} else {
+				int piece = PIECES.indexOf(c);
+				if (piece < 0)
+					throw new FormatException("Unknown piece '" + c + "'", i);
+				if (row == 8)
+					throw new FormatException("Too many squares on the rank", i);
+				int color = piece < 6 ? 0 : 1;
+				if (piece % 6 == Piece.PAWN && (line == 0 || line == 7))
+					throw new FormatException("Pawn on the first or last rank", i);
+				if (piece % 6 == Piece.KING) {
+					if (kings[color] >= 0)
+						throw new FormatException("More than one King of a color", i);
+					kings[color] = line * 8 + row;
+				}
+				if ((color == 0 ? ++whites : ++blacks) > 16)
+					throw new FormatException("More than 16 Pieces of a color", i);
+				squares[line * 8 + row++] = (byte) piece;
+			}
+		}
+		if (kings[0] < 0 || kings[1] < 0)
+			throw new FormatException("Missing King", i);
+
+		// Field 2
+		i = skipSeparators(text, i, end);
+		char c = i < end ? text.charAt(i) : ' ';
+		if (c == 'w')
+			turn = true;
+		else if (c == 'b')
+			turn = false;
+		else
+			throw new FormatException("The side to move must be 'w' or 'b'", i);
+		i = expectSeparator(text, i + 1, end);
+
+		// Field 3
+		castling = 0;
+		if (i < end && text.charAt(i) == '-')
+			i++;
+		else {
+			int first = i;
+			for (; i < end && !isSeparator(text.charAt(i)); i++) {
+				int right;
+				switch (text.charAt(i)) {
+				case 'K' -> right = checkCastling(WHITE_KING_SIDE, 60, 63, i);
+				case 'Q' -> right = checkCastling(WHITE_QUEEN_SIDE, 60, 56, i);
+				case 'k' -> right = checkCastling(BLACK_KING_SIDE, 4, 7, i);
+				case 'q' -> right = checkCastling(BLACK_QUEEN_SIDE, 4, 0, i);
+				default -> throw new FormatException("Unknown castling right '" + text.charAt(i) + "'", i);
+				}
+				if ((castling & right) != 0)
+					throw new FormatException("Duplicate castling right", i);
+				castling |= right;
+			}
+			if (i == first)
+				throw new FormatException("Missing castling rights", i);
+		}
+		i = expectSeparator(text, i, end);
+
+		// Field 4
+		enPassant = -1;
+		if (i < end && text.charAt(i) == '-')
+			i++;
+		else {
+			char file = i < end ? text.charAt(i) : ' ';
+			char rank = i + 1 < end ? text.charAt(i + 1) : ' ';
+			if (file < 'a' || file > 'h' || rank != (turn ? '6' : '3'))
+				throw new FormatException("Invalid en passant square", i);
+			enPassant = ('8' - rank) * 8 + file - 'a';
+			// The Pawn that just moved stands in front of the en passant Tile
+			int pawn = enPassant + (turn ? 8 : -8);
+			if (squares[enPassant] != EMPTY || squares[pawn] != PIECES.indexOf(turn ? 'p' : 'P'))
+				throw new FormatException("No Pawn can be taken en passant", i);
+			i += 2;
+		}
+
+		// Fields 5 and 6
+		halfmoves = 0;
+		fullmoves = 1;
+		int next = skipSeparators(text, i, end);
+		if (i < end && isSeparator(text.charAt(i)) && next < end && isDigit(text.charAt(next))) {
+			i = next;
+			halfmoves = 0;
+			for (; i < end && isDigit(text.charAt(i)); i++)
+				if ((halfmoves = halfmoves * 10 + text.charAt(i) - '0') > 99999)
+					throw new FormatException("Halfmove clock too large", i);
+			if (i < end && !isSeparator(text.charAt(i)))
+				throw new FormatException("Invalid halfmove clock", i);
+			next = skipSeparators(text, i, end);
+			if (next < end && isDigit(text.charAt(next))) {
+				i = next;
+				fullmoves = 0;
+				for (; i < end && isDigit(text.charAt(i)); i++)
+					if ((fullmoves = fullmoves * 10 + text.charAt(i) - '0') > 99999)
+						throw new FormatException("Fullmove number too large", i);
+				if (i < end && !isSeparator(text.charAt(i)))
+					throw new FormatException("Invalid fullmove number", i);
+				if (fullmoves == 0)
+					fullmoves = 1;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Checks that the King and the Rook of a castling right are on their
+	 * starting squares.
+	 *
+	 * @return {@code right}.
+	 */
+	private int checkCastling(int right, int king, int rook, int index) {
+		int white = right <= WHITE_QUEEN_SIDE ? 0 : 6;
+		if (squares[king] != Piece.KING + white || squares[rook] != Piece.ROOK + white)
+			throw new FormatException("Castling right without its King and Rook", index);
+		return right;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == ' ' || c == '_' || c == '\t';
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int skipSeparators(CharSequence text, int i, int end) {
+		while (i < end && isSeparator(text.charAt(i)))
+			i++;
+		return i;
+	}
+
+	private static int expectSeparator(CharSequence text, int i, int end) {
+		if (i >= end || !isSeparator(text.charAt(i)))
+			throw new FormatException("Missing field", i);
+		return skipSeparators(text, i, end);
+	}
+
+	/**
+	 * Moves the Pieces of the board to the parsed position, creating new ones
+	 * only when it lacks some.
+	 */
+	private void apply(Chess chess) {
+		Tile[][] tiles = chess.getTiles();
+		for (Tile[] column : tiles)
+			for (Tile tile : column) {
+				Piece piece = tile.getPiece();
+				if (piece == null)
+					continue;
+				int index = piece.getType() + (piece.isWhite() ? 0 : 6);
+				if (spareCounts[index] < MAX_PIECES)
+					spares[index][spareCounts[index]++] = piece;
+				tile.setPiece(null, false);
+			}
+		for (int square = 0; square < 64; square++) {
+			int index = squares[square];
+			if (index == EMPTY)
+				continue;
+			Tile tile = tiles[square & 7][square >> 3];
+			if (spareCounts[index] > 0) {
+				Piece piece = spares[index][--spareCounts[index]];
+				spares[index][spareCounts[index]] = null;
+				tile.setPiece(piece, true);
+			} else
+				create(index, tile);
+		}
+
+		for (Tile[] column : tiles)
+			for (Tile tile : column)
+				if (tile.getPiece() instanceof IfNotMoved piece)
+					if (piece instanceof Pawn pawn)
+						pawn.setMoved(tile.getLine() != (pawn.isWhite() ? 6 : 1));
+					else
+						piece.setMoved(true);
+		if ((castling & (WHITE_KING_SIDE | WHITE_QUEEN_SIDE)) != 0)
+			((IfNotMoved) tiles[4][7].getPiece()).setMoved(false);
+		if ((castling & WHITE_KING_SIDE) != 0)
+			((IfNotMoved) tiles[7][7].getPiece()).setMoved(false);
+		if ((castling & WHITE_QUEEN_SIDE) != 0)
+			((IfNotMoved) tiles[0][7].getPiece()).setMoved(false);
+		if ((castling & (BLACK_KING_SIDE | BLACK_QUEEN_SIDE)) != 0)
+			((IfNotMoved) tiles[4][0].getPiece()).setMoved(false);
+		if ((castling & BLACK_KING_SIDE) != 0)
+			((IfNotMoved) tiles[7][0].getPiece()).setMoved(false);
+		if ((castling & BLACK_QUEEN_SIDE) != 0)
+			((IfNotMoved) tiles[0][0].getPiece()).setMoved(false);
+
+		for (int king : kings)
+			chess.setKing((King) tiles[king & 7][king >> 3].getPiece());
+
+		chess.setTurn(turn);
+		chess.setEnPassant(enPassant < 0 ? null : tiles[enPassant & 7][enPassant >> 3]);
+		chess.setHalfmoveClock(halfmoves / 2f);
+		chess.setFullmoveNumber(fullmoves);
+	}
+
+	/**
+	 * Creates a Piece on a Tile.
+	 *
+	 * @param index The index of the Piece in {@link #PIECES}.
+	 */
+	private static void create(int index, Tile tile) {
+		boolean white = index < 6;
+		switch (index % 6) {
+		case Piece.PAWN -> new Pawn(white, tile);
+		case Piece.KNIGHT -> new Knight(white, tile);
+		case Piece.BISHOP -> new Bishop(white, tile);
+		case Piece.ROOK -> new Rook(white, tile);
+		case Piece.QUEEN -> new Queen(white, tile);
+		default -> new King(white, tile);
+		}
+	}
+
+	/**
+	 * Appends the FEN of a board.
+	 *
+	 * @param chess  The board.
+	 * @param output Where to append the FEN.
+	 * @return {@code output}.
+	 */
+	public StringBuilder write(Chess chess, StringBuilder output) {
+		Tile[][] tiles = chess.getTiles();
+		for (int line = 0; line < 8; line++) {
+			if (line > 0)
+				output.append('/');
+			int empty = 0;
+			for (int row = 0; row < 8; row++) {
+				Piece piece = tiles[row][line].getPiece();
+				if (piece == null)
+					empty++;
+				else {
+					if (empty > 0)
+						output.append((char) ('0' + empty));
+					output.append(piece.getFENValue());
+					empty = 0;
+				}
+			}
+			if (empty > 0)
+				output.append((char) ('0' + empty));
+		}
+		output.append(chess.getTurn() ? " w " : " b ");
+		int length = output.length();
+		if (chess.canCastle(true, true))
+			output.append('K');
+		if (chess.canCastle(true, false))
+			output.append('Q');
+		if (chess.canCastle(false, true))
+			output.append('k');
+		if (chess.canCastle(false, false))
+			output.append('q');
+		if (output.length() == length)
+			output.append('-');
+		output.append(' ');
+		Tile enPassant = chess.getEnPassant();
+		if (enPassant == null)
+			output.append('-');
+		else
+			output.append((char) ('a' + enPassant.getRow())).append((char) ('8' - enPassant.getLine()));
+		return output.append(' ').append((int) (chess.getHalfmoveClock() * 2)).append(' ')
+				.append(chess.getFullmoveNumber());
+	}
+
+	/**
+	 * Writes the FEN of a board as ASCII bytes.
+	 *
+	 * @param chess  The board.
+	 * @param output Where to write the FEN. At least {@link #MAX_LENGTH} bytes
+	 *               must be available from {@code offset}.
+	 * @param offset The index of the first byte to write.
+	 * @return The index after the last written byte.
+	 */
+	public int write(Chess chess, byte[] output, int offset) {
+		Tile[][] tiles = chess.getTiles();
+		int i = offset;
+		for (int line = 0; line < 8; line++) {
+			if (line > 0)
+				output[i++] = '/';
+			int empty = 0;
+			for (int row = 0; row < 8; row++) {
+				Piece piece = tiles[row][line].getPiece();
+				if (piece == null)
+					empty++;
+				else {
+					if (empty > 0)
+						output[i++] = (byte) ('0' + empty);
+					output[i++] = (byte) piece.getFENValue();
+					empty = 0;
+				}
+			}
+			if (empty > 0)
+				output[i++] = (byte) ('0' + empty);
+		}
+		output[i++] = ' ';
+		output[i++] = (byte) (chess.getTurn() ? 'w' : 'b');
+		output[i++] = ' ';
+		int start = i;
+		if (chess.canCastle(true, true))
+			output[i++] = 'K';
+		if (chess.canCastle(true, false))
+			output[i++] = 'Q';
+		if (chess.canCastle(false, true))
+			output[i++] = 'k';
+		if (chess.canCastle(false, false))
+			output[i++] = 'q';
+		if (i == start)
+			output[i++] = '-';
+		output[i++] = ' ';
+		Tile enPassant = chess.getEnPassant();
+		if (enPassant == null)
+			output[i++] = '-';
+		else {
+			output[i++] = (byte) ('a' + enPassant.getRow());
+			output[i++] = (byte) ('8' - enPassant.getLine());
+		}
+		output[i++] = ' ';
+		i = writeNumber((int) (chess.getHalfmoveClock() * 2), output, i);
+		output[i++] = ' ';
+		return writeNumber(chess.getFullmoveNumber(), output, i);
+	}
+
+	private static int writeNumber(int number, byte[] output, int i) {
+		int digits = 1;
+		for (int n = number; n >= 10; n /= 10)
+			digits++;
+		for (int d = digits - 1; d >= 0; d--, number /= 10)
+			output[i + d] = (byte) ('0' + number % 10);
+		return i + digits;
+	}
+
+	/**
+	 * Reusable view of ASCII bytes as a CharSequence.
+	 */
+	private static final class Ascii implements CharSequence {
+
+		private byte[] bytes;
+		private int offset;
+		private int length;
+
+		void set(byte[] bytes, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > bytes.length)
+				throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length)
+						+ ") out of bounds for length " + bytes.length);
+			this.bytes = bytes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes[offset + index] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+		}
+	}
+
+}
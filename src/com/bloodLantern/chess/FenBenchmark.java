@@ -0,0 +1,76 @@
+package com.bloodLantern.chess;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Command-line benchmark of the {@link Fen} reader and writer, in FENs per
+ * second, from and to Strings and ASCII bytes. The positions are read one after
+ * the other into the same board, as a batch analysis does.
+ * <p>
+ * Arguments: {@code iterations=<n>} to set how many times each position is
+ * read and written.
+ *
+ * @author BloodLantern
+ */
+public final class FenBenchmark {
+
+	private static final String[] POSITIONS = { "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1" };
+
+	private FenBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		int iterations = 100_000;
+		for (String arg : args)
+			if (arg.startsWith("iterations="))
+				iterations = Integer.valueOf(arg.substring(11));
+
+		// The first round only warms the JIT up
+		run(iterations / 10, false);
+		run(iterations, true);
+	}
+
+	private static void run(int iterations, boolean print) {
+		Chess chess = new Chess(POSITIONS[0]);
+		Fen fen = new Fen();
+		byte[][] bytes = new byte[POSITIONS.length][];
+		for (int i = 0; i < POSITIONS.length; i++)
+			bytes[i] = POSITIONS[i].getBytes(StandardCharsets.US_ASCII);
+		StringBuilder builder = new StringBuilder(Fen.MAX_LENGTH);
+		byte[] buffer = new byte[Fen.MAX_LENGTH];
+		long[] time = new long[4];
+		long fens = 0;
+		int checksum = 0;
+		for (int i = 0; i < iterations; i++)
+			for (int position = 0; position < POSITIONS.length; position++) {
+				long start = System.nanoTime();
+				fen.parse(POSITIONS[position], chess);
+				long parsed = System.nanoTime();
+				builder.setLength(0);
+				checksum += fen.write(chess, builder).length();
+				long written = System.nanoTime();
+				fen.parse(bytes[position], 0, bytes[position].length, chess);
+				long parsedBytes = System.nanoTime();
+				checksum += fen.write(chess, buffer, 0);
+				long writtenBytes = System.nanoTime();
+				time[0] += parsed - start;
+				time[1] += written - parsed;
+				time[2] += parsedBytes - written;
+				time[3] += writtenBytes - parsedBytes;
+				fens++;
+			}
+		if (print) {
+			System.out.println("FENs: " + fens + "  Checksum: " + checksum);
+			System.out.println("Read String:   " + fens * 1_000_000_000L / time[0] + " FENs/s");
+			System.out.println("Write String:  " + fens * 1_000_000_000L / time[1] + " FENs/s");
+			System.out.println("Read bytes:    " + fens * 1_000_000_000L / time[2] + " FENs/s");
+			System.out.println("Write bytes:   " + fens * 1_000_000_000L / time[3] + " FENs/s");
+		}
+	}
+
+}
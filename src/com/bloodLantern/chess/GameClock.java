@@ -0,0 +1,195 @@
+package com.bloodLantern.chess;
+
+/**
+ * Chess clock of both players. Times are measured with
+ * {@link System#nanoTime()} and only read when needed, so nothing has to tick
+ * for the clock to stay accurate: the frames just repaint it at their own pace.
+ * <p>
+ * Supports the Fischer increment, added after each Move, and the simple delay,
+ * waited at the beginning of each turn before the time starts running.
+ *
+ * @author BloodLantern
+ */
+public final class GameClock {
+
+	private static final long NANOS_PER_MILLI = 1_000_000;
+
+	private final long increment;
+	private final long delay;
+	private long timeLeftWhite;
+	private long timeLeftBlack;
+	/**
+	 * Whose clock is running. See {@link Chess#getTurn()} for its meaning.
+	 */
+	private boolean turn = true;
+	/**
+	 * Time spent by the current player on this turn before the last pause (in
+	 * ns).
+	 */
+	private long spent = 0;
+	/**
+	 * When the clock was started or resumed, as returned by
+	 * {@link System#nanoTime()}. Meaningless while paused.
+	 */
+	private long resumed;
+	private boolean paused = true;
+
+	/**
+	 * Constructs a paused GameClock.
+	 *
+	 * @param time      The starting time of each player (in ms).
+	 * @param increment The time added after each Move (in ms).
+	 * @param delay     The time waited at the beginning of each turn before the
+	 *                  clock runs (in ms).
+	 * @throws IllegalArgumentException If {@code time} isn't positive or another
+	 *                                  time is negative.
+	 */
+	public GameClock(long time, long increment, long delay) {
+		if (time <= 0 || increment < 0 || delay < 0)
+			throw new IllegalArgumentException("Invalid time control: " + time + "+" + increment + ", delay " + delay);
+		timeLeftWhite = timeLeftBlack = time * NANOS_PER_MILLI;
+		this.increment = increment * NANOS_PER_MILLI;
+		this.delay = delay * NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Parses a time control of the form {@code minutes[+seconds]}, for example
+	 * {@code 5+3}.
+	 *
+	 * @param timeControl The time control.
+	 * @param delay       The delay of each turn (in ms).
+	 * @return A new GameClock.
+	 * @throws IllegalArgumentException If {@code timeControl} is invalid.
+	 */
+	public static GameClock parse(String timeControl, long delay) {
+		int plus = timeControl.indexOf('+');
+		try {
+			double minutes = Double.parseDouble(plus < 0 ? timeControl : timeControl.substring(0, plus));
+			double seconds = plus < 0 ? 0 : Double.parseDouble(timeControl.substring(plus + 1));
+			return new GameClock((long) (minutes * 60000), (long) (seconds * 1000), delay);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid time control: " + timeControl, e);
+		}
+	}
+
+	/**
+	 * Runs the clock of the current player. Does nothing if already running.
+	 */
+	public void resume() {
+		if (!paused)
+			return;
+		paused = false;
+		resumed = System.nanoTime();
+	}
+
+	/**
+	 * Stops the clocks until {@link #resume()} is called. Does nothing if already
+	 * paused.
+	 */
+	public void pause() {
+		if (paused)
+			return;
+		spent += System.nanoTime() - resumed;
+		paused = true;
+	}
+
+	/**
+	 * Ends the turn of the current player, adding the increment to their time,
+	 * and runs the clock of the other one.
+	 */
+	public void press() {
+		long used = getUsed();
+		if (turn)
+			timeLeftWhite += increment - used;
+		else
+			timeLeftBlack += increment - used;
+		turn = !turn;
+		spent = 0;
+		resumed = System.nanoTime();
+	}
+
+	/**
+	 * Runs the clock of a player without ending the current turn. Used when a new
+	 * position is set up.
+	 *
+	 * @param turn The player whose clock should run.
+	 */
+	public void setTurn(boolean turn) {
+		this.turn = turn;
+		spent = 0;
+		resumed = System.nanoTime();
+	}
+
+	/**
+	 * Gets the times left of both players at the beginning of the current turn,
+	 * to set them back with {@link #setTimes(long[], boolean)}.
+	 *
+	 * @return The white then black times left (in ns).
+	 */
+	public long[] getTimes() {
+		return new long[] { timeLeftWhite, timeLeftBlack };
+	}
+
+	/**
+	 * Sets the times left of both players back to ones returned by
+	 * {@link #getTimes()} and runs the clock of a player from the beginning of
+	 * their turn. Used when Moves are taken back.
+	 *
+	 * @param times The white then black times left (in ns).
+	 * @param turn  The player whose clock should run.
+	 */
+	public void setTimes(long[] times, boolean turn) {
+		timeLeftWhite = times[0];
+		timeLeftBlack = times[1];
+		setTurn(turn);
+	}
+
+	/**
+	 * Gets the time spent by the current player on this turn, minus the delay.
+	 */
+	private long getUsed() {
+		long elapsed = spent + (paused ? 0 : System.nanoTime() - resumed);
+		return Math.max(0, elapsed - delay);
+	}
+
+	/**
+	 * Gets the time left of a player.
+	 *
+	 * @param white The player.
+	 * @return Their time left (in ms), never negative.
+	 */
+	public long getTimeLeft(boolean white) {
+		long timeLeft = white ? timeLeftWhite : timeLeftBlack;
+		if (white == turn)
+			timeLeft -= getUsed();
+		return Math.max(0, timeLeft / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Checks if the current player ran out of time.
+	 *
+	 * @return True if their time left is 0.
+	 */
+	public boolean isFlagFallen() {
+		return getTimeLeft(turn) == 0;
+	}
+
+	/**
+	 * Getter for the turn value.
+	 *
+	 * @return The player whose clock is running.
+	 */
+	public boolean getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Getter for the paused value.
+	 *
+	 * @return The paused to get.
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+}
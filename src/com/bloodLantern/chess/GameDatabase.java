@@ -0,0 +1,242 @@
+package com.bloodLantern.chess;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reader of the game databases written by {@link GameDatabaseBuilder}, finding
+ * every game that reached a position.
+ * <p>
+ * A database is made of two files. The games file starts with
+ * {@link #MAGIC}, followed by one record per game: its length in bytes
+ * ({@code int}), its tags (an unsigned {@code short} count then each name and
+ * value in modified UTF-8), its result and its Moves (an unsigned
+ * {@code short} count then each Polyglot encoded Move as a {@code short}). The
+ * index file, named after the games file plus {@code .idx}, holds a 16-byte
+ * entry for every distinct position of every game: the Polyglot hash of the
+ * position ({@code long}) then the offset of the game record shifted left by 16
+ * bits plus the ply ({@code long}). The entries are sorted by unsigned hash,
+ * then by game, so the index is memory-mapped and searched like an
+ * {@link OpeningBook}. Everything is big-endian.
+ *
+ * @author BloodLantern
+ */
+public final class GameDatabase implements Closeable {
+
+	/**
+	 * The first 8 bytes of a games file, {@code CHESSDB1} in ASCII.
+	 */
+	static final long MAGIC = 0x4348455353444231L;
+	/**
+	 * Size of an index entry in bytes.
+	 */
+	static final int ENTRY_SIZE = 16;
+	/**
+	 * Size of each mapping of the index, a multiple of {@link #ENTRY_SIZE} so that
+	 * no entry is split. Indexes over 2 GB need several mappings.
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final FileChannel games;
+	private final MappedByteBuffer[] segments;
+	private final long entries;
+
+	/**
+	 * A game reaching a position.
+	 *
+	 * @param offset The offset of the game record, to {@link #read(long) read} it.
+	 * @param ply    How many plies were played when the position was reached.
+	 */
+	public record Position(long offset, int ply) {
+	}
+
+	/**
+	 * A game record.
+	 *
+	 * @param tags   The PGN tags, in their original order.
+	 * @param result One of {@code 1-0}, {@code 0-1}, {@code 1/2-1/2} or
+	 *               {@code *}.
+	 * @param moves  The Polyglot encoded Moves.
+	 */
+	public record Game(Map<String, String> tags, String result, int[] moves) {
+
+		/**
+		 * Gets the FEN of the position the game starts from.
+		 *
+		 * @return The {@code FEN} tag if set, the standard starting position
+		 *         otherwise.
+		 */
+		public String getStartingFen() {
+			return tags.getOrDefault("FEN", Chess.STARTING_FEN);
+		}
+
+		/**
+		 * Converts this game to PGN, replaying it on a new headless board bound to
+		 * the current thread.
+		 *
+		 * @return The game with its Moves in Standard Algebraic Notation.
+		 * @throws IllegalArgumentException If a Move is illegal.
+		 */
+		public PgnGame toPgn() {
+			PgnGame game = PgnGame.fromMoves(getStartingFen(), moves);
+			for (Map.Entry<String, String> tag : tags.entrySet())
+				if (!tag.getKey().equals("FEN") && !tag.getKey().equals("SetUp"))
+					game.setTag(tag.getKey(), tag.getValue());
+			game.setResult(result);
+			return game;
+		}
+
+	}
+
+	/**
+	 * Opens a game database.
+	 *
+	 * @param path The games file, its index being next to it.
+	 * @throws IOException If a file can't be opened or mapped, or isn't a valid
+	 *                     database.
+	 */
+	public GameDatabase(Path path) throws IOException {
+		games = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(8);
+			if (games.read(magic, 0) != 8 || magic.getLong(0) != MAGIC)
+				throw new IOException(path + " isn't a game database.");
+			try (FileChannel channel = FileChannel.open(getIndexPath(path), StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size % ENTRY_SIZE != 0)
+					throw new IOException("The index size must be a multiple of " + ENTRY_SIZE + " bytes.");
+				entries = size / ENTRY_SIZE;
+				segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+				// The mappings stay valid after the channel is closed
+				for (int i = 0; i < segments.length; i++)
+					segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, i * SEGMENT_SIZE,
+							Math.min(SEGMENT_SIZE, size - i * SEGMENT_SIZE));
+			}
+		} catch (IOException e) {
+			games.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the index file of a database.
+	 *
+	 * @param path The games file.
+	 * @return The index file next to it.
+	 */
+	public static Path getIndexPath(Path path) {
+		return path.resolveSibling(path.getFileName() + ".idx");
+	}
+
+	/**
+	 * Finds the games that reached a position.
+	 *
+	 * @param key   The Polyglot hash of the position.
+	 * @param limit The maximum number of games to return.
+	 * @return The games, in the order they were added to the database.
+	 */
+	public List<Position> find(long key, int limit) {
+		List<Position> result = new ArrayList<>();
+		for (long i = findFirst(key); i < entries && getKey(i) == key && result.size() < limit; i++) {
+			long value = getValue(i);
+			result.add(new Position(value >>> 16, (int) (value & 0xFFFF)));
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the games that reached a position.
+	 *
+	 * @param key The Polyglot hash of the position.
+	 * @return The number of games.
+	 */
+	public long count(long key) {
+		long first = findFirst(key);
+		long end = first;
+		while (end < entries && getKey(end) == key)
+			end++;
+		return end - first;
+	}
+
+	/**
+	 * @return The index of the first entry with {@code key} or of the entry it
+	 *         would be inserted before.
+	 */
+	private long findFirst(long key) {
+		long low = 0;
+		long high = entries;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(getKey(middle), key) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private long getKey(long index) {
+		long offset = index * ENTRY_SIZE;
+		return segments[(int) (offset / SEGMENT_SIZE)].getLong((int) (offset % SEGMENT_SIZE));
+	}
+
+	private long getValue(long index) {
+		long offset = index * ENTRY_SIZE + 8;
+		return segments[(int) (offset / SEGMENT_SIZE)].getLong((int) (offset % SEGMENT_SIZE));
+	}
+
+	/**
+	 * Reads a game record.
+	 *
+	 * @param offset The offset of the record, as found by {@link #find(long, int)}.
+	 * @return The game.
+	 * @throws IOException If the record can't be read.
+	 */
+	public Game read(long offset) throws IOException {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(length, offset);
+		ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+		readFully(record, offset + 4);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+		Map<String, String> tags = new LinkedHashMap<>();
+		for (int count = in.readUnsignedShort(); count > 0; count--)
+			tags.put(in.readUTF(), in.readUTF());
+		String result = in.readUTF();
+		int[] moves = new int[in.readUnsignedShort()];
+		for (int i = 0; i < moves.length; i++)
+			moves[i] = in.readUnsignedShort();
+		return new Game(tags, result, moves);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			if (games.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Truncated game record at " + position);
+	}
+
+	/**
+	 * @return The number of index entries, that is of positions reached by the
+	 *         games, counted once per game.
+	 */
+	public long size() {
+		return entries;
+	}
+
+	@Override
+	public void close() throws IOException {
+		games.close();
+	}
+
+}
@@ -0,0 +1,298 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command-line tool building a {@link GameDatabase} from PGN files. The games
+ * are replayed on every core and written in reading order. The (position,
+ * game) entries of the index are collected in memory-bounded chunks that are
+ * sorted and written to temporary run files, and the runs are finally merged
+ * into the sorted index, as in {@link BookBuilder}.
+ * <p>
+ * Arguments: {@code out=<path>} for the games file to write (default
+ * {@code games.db}, the index being written next to it),
+ * {@code chunk=<n>} for how many entries are held in memory before writing a
+ * run (default 4000000), {@code threads=<n>} for the number of replay threads
+ * (default: every core), then the PGN files.
+ *
+ * @author BloodLantern
+ */
+public final class GameDatabaseBuilder {
+
+	/**
+	 * An index entry: a position and where it was reached.
+	 *
+	 * @param value The offset of the game record shifted left by 16 bits plus the
+	 *              ply.
+	 */
+	private record Entry(long key, long value) {
+	}
+
+	/**
+	 * A replayed game.
+	 *
+	 * @param record The game record, without its length.
+	 * @param keys   The distinct positions of the game.
+	 * @param plies  The ply at which each position was first reached.
+	 */
+	private record Replayed(byte[] record, long[] keys, int[] plies) {
+	}
+
+	private static final Comparator<Entry> ORDER = (a, b) -> {
+		int result = Long.compareUnsigned(a.key, b.key);
+		return result != 0 ? result : Long.compare(a.value, b.value);
+	};
+
+	private final int chunkSize;
+	private final Path directory;
+	private final List<Path> runs = new ArrayList<>();
+	private List<Entry> chunk = new ArrayList<>();
+
+	private DataOutputStream games;
+	/**
+	 * Where the next game record is written.
+	 */
+	private long offset;
+	private long count = 0;
+	private long errors = 0;
+	private long entries = 0;
+
+	private GameDatabaseBuilder(int chunkSize) throws IOException {
+		this.chunkSize = chunkSize;
+		directory = Files.createTempDirectory("games");
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path out = Path.of("games.db");
+		int chunkSize = 4_000_000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<Path> inputs = new ArrayList<>();
+		for (String arg : args)
+			if (arg.startsWith("out="))
+				out = Path.of(arg.substring(4));
+			else if (arg.startsWith("chunk="))
+				chunkSize = Integer.valueOf(arg.substring(6));
+			else if (arg.startsWith("threads="))
+				threads = Integer.valueOf(arg.substring(8));
+			else
+				inputs.add(Path.of(arg));
+
+		long time = System.currentTimeMillis();
+		GameDatabaseBuilder builder = new GameDatabaseBuilder(chunkSize);
+		try {
+			builder.build(inputs, out, threads);
+			builder.merge(GameDatabase.getIndexPath(out));
+			System.out.println("Games: " + builder.count + "  Unreadable games: " + builder.errors + "  Runs: "
+					+ builder.runs.size() + "  Positions: " + builder.entries + "  Size: "
+					+ (Files.size(out) + Files.size(GameDatabase.getIndexPath(out))) + " bytes  Time: "
+					+ (System.currentTimeMillis() - time) + " milliseconds");
+		} finally {
+			for (Path run : builder.runs)
+				Files.deleteIfExists(run);
+			Files.deleteIfExists(builder.directory);
+		}
+	}
+
+	/**
+	 * Reads every game of {@code inputs}, replays them on {@code threads} threads
+	 * and writes them to the games file in reading order.
+	 */
+	private void build(List<Path> inputs, Path out, int threads) throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// The games read but not written yet, bounded to keep the memory low
+		Deque<Future<Replayed>> pending = new ArrayDeque<>();
+		try (DataOutputStream games = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) {
+			this.games = games;
+			games.writeLong(GameDatabase.MAGIC);
+			offset = 8;
+			for (Path input : inputs)
+				try (PgnReader reader = new PgnReader(input)) {
+					for (PgnGame game = reader.next(); game != null; game = reader.next()) {
+						PgnGame replayed = game;
+						pending.add(pool.submit(() -> replay(replayed)));
+						if (pending.size() >= threads * 64)
+							write(pending.poll());
+					}
+				}
+			while (!pending.isEmpty())
+				write(pending.poll());
+		} finally {
+			pool.shutdownNow();
+		}
+		writeRun();
+	}
+
+	/**
+	 * Replays a game on a board bound to the current thread and encodes it.
+	 *
+	 * @return The game or null if it has an illegal Move.
+	 */
+	private static Replayed replay(PgnGame game) {
+		List<String> moves = game.getMoves();
+		if (moves.size() > 0xFFFF)
+			return null;
+		Chess chess;
+		try {
+			chess = new Chess(game.getStartingFen());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		long[] keys = new long[moves.size() + 1];
+		int[] plies = new int[keys.length];
+		int distinct = 0;
+		Set<Long> seen = new HashSet<>();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 2 * moves.size());
+		DataOutputStream record = new DataOutputStream(bytes);
+		try {
+			record.writeShort(game.getTags().size());
+			for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+				record.writeUTF(tag.getKey());
+				record.writeUTF(tag.getValue());
+			}
+			record.writeUTF(game.getResult());
+			record.writeShort(moves.size());
+			for (int ply = 0;; ply++) {
+				boolean white = chess.getTurn();
+				long key = chess.getPositionHash(white);
+				// A repeated position is indexed at its first occurrence only
+				if (seen.add(key)) {
+					keys[distinct] = key;
+					plies[distinct++] = ply;
+				}
+				if (ply == moves.size())
+					break;
+				Move move = Notation.parseSan(chess, white, moves.get(ply));
+				if (move == null || move.isPromotion() && move.getPromotionPiece() == null)
+					return null;
+				record.writeShort(OpeningBook.encodeMove(move));
+				chess.playMove(move);
+			}
+		} catch (IOException e) {
+			// Tags too long for the modified UTF-8
+			return null;
+		}
+		return new Replayed(bytes.toByteArray(), Arrays.copyOf(keys, distinct), Arrays.copyOf(plies, distinct));
+	}
+
+	/**
+	 * Writes a replayed game to the games file and adds its positions to the
+	 * current chunk, writing it as a run once full.
+	 */
+	private void write(Future<Replayed> future) throws IOException, InterruptedException {
+		Replayed replayed;
+		try {
+			replayed = future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		if (replayed == null) {
+			errors++;
+			return;
+		}
+		count++;
+		for (int i = 0; i < replayed.keys.length; i++)
+			chunk.add(new Entry(replayed.keys[i], offset << 16 | replayed.plies[i]));
+		games.writeInt(replayed.record.length);
+		games.write(replayed.record);
+		offset += 4 + replayed.record.length;
+		if (chunk.size() >= chunkSize)
+			writeRun();
+	}
+
+	/**
+	 * Sorts the current chunk on every core and writes it to a new run file.
+	 */
+	private void writeRun() throws IOException {
+		if (chunk.isEmpty())
+			return;
+		Entry[] sorted = chunk.toArray(new Entry[0]);
+		chunk = new ArrayList<>();
+		Arrays.parallelSort(sorted, ORDER);
+		Path run = directory.resolve("run" + runs.size());
+		runs.add(run);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+			for (Entry entry : sorted)
+				write(out, entry);
+		}
+	}
+
+	private static void write(DataOutputStream out, Entry entry) throws IOException {
+		out.writeLong(entry.key);
+		out.writeLong(entry.value);
+	}
+
+	/**
+	 * A run file being merged, with its next entry.
+	 */
+	private static final class RunReader {
+		private final DataInputStream in;
+		private Entry current;
+
+		private RunReader(Path run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+			advance();
+		}
+
+		private void advance() throws IOException {
+			try {
+				current = new Entry(in.readLong(), in.readLong());
+			} catch (EOFException e) {
+				current = null;
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Merges every run into the index written to {@code out}.
+	 */
+	private void merge(Path out) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> ORDER.compare(a.current, b.current));
+		try {
+			for (Path run : runs) {
+				RunReader reader = new RunReader(run);
+				if (reader.current != null)
+					queue.add(reader);
+			}
+			try (DataOutputStream index = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(out), 1 << 16))) {
+				while (!queue.isEmpty()) {
+					RunReader reader = queue.poll();
+					write(index, reader.current);
+					entries++;
+					reader.advance();
+					if (reader.current != null)
+						queue.add(reader);
+				}
+			}
+		} finally {
+			for (RunReader reader : queue)
+				reader.in.close();
+		}
+	}
+
+}
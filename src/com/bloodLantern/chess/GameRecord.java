@@ -0,0 +1,616 @@
+package com.bloodLantern.chess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * A game in the compact binary format, several times smaller than PGN. Each
+ * Move is stored as its index in the list of the legal Moves of its position,
+ * sorted by Polyglot code with each promoting Move counted once per promotion
+ * Piece, so the order only depends on the position.
+ * <p>
+ * The indexes are either stored as one byte each or entropy coded:
+ * arithmetic coding with a uniform model over the legal Moves, done exactly by
+ * packing the indexes of a segment into a single mixed-radix number. A Move
+ * then costs the base 2 logarithm of the number of legal Moves in bits, and a
+ * forced Move nothing at all.
+ * <p>
+ * The Moves are cut into segments of {@link #getCheckpointInterval()} plies,
+ * each starting from a position checkpoint, so that any ply can be reached by
+ * replaying at most one segment (see {@link #seek(byte[], int)}).
+ * <p>
+ * Layout, big-endian: {@link #MAGIC}, a flags byte (bit 0: entropy coded, bit
+ * 1: standard starting position, whose checkpoint is left out), the checkpoint
+ * interval (unsigned byte), the tags (an unsigned {@code short} count then
+ * each name and value in modified UTF-8), the result, the number of plies
+ * (unsigned {@code short}), then for each checkpoint its position and the
+ * length of its segment in bytes (unsigned {@code short}), then the segments.
+ * A position is the occupied Tiles as a {@code long} in FEN order, a nibble per
+ * Piece in the same order, a byte for the side to move and castling rights, a
+ * byte for the en passant file (255 if none) and the halfmove clock and
+ * fullmove number as {@code short}s.
+ *
+ * @author BloodLantern
+ */
+public final class GameRecord {
+
+	/**
+	 * The first 8 bytes of a game record, {@code CHESSGR1} in ASCII.
+	 */
+	static final long MAGIC = 0x4348455353475231L;
+	/**
+	 * The file extension of game records.
+	 */
+	public static final String EXTENSION = "cgr";
+	/**
+	 * The default number of plies between two checkpoints.
+	 */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+
+	private static final int ENTROPY_CODED = 1;
+	/**
+	 * The flag telling that the game starts from the standard starting position,
+	 * which isn't stored.
+	 */
+	private static final int STANDARD_START = 2;
+	private static final String PIECES = "PNBRQKpnbrqk";
+	private static final String CASTLING = "KQkq";
+
+	private final String startingFen;
+	private final int[] moves;
+	private final Map<String, String> tags = new LinkedHashMap<>();
+	private String result = "*";
+	private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	/**
+	 * Constructs a GameRecord.
+	 *
+	 * @param startingFen The FEN of the position the game starts from.
+	 * @param moves       The Polyglot encoded Moves. Promoting Moves without
+	 *                    promotion are promotions into a Queen.
+	 */
+	public GameRecord(String startingFen, int[] moves) {
+		this.startingFen = startingFen;
+		this.moves = moves.clone();
+	}
+
+	/**
+	 * Converts a PGN game, replaying it on a new headless board bound to the
+	 * current thread.
+	 *
+	 * @param game The game.
+	 * @return The game record.
+	 * @throws IllegalArgumentException If the game has an illegal Move.
+	 */
+	public static GameRecord fromPgn(PgnGame game) {
+		Chess chess = new Chess(game.getStartingFen());
+		String fen = chess.generateFEN();
+		List<String> sans = game.getMoves();
+		int[] moves = new int[sans.size()];
+		for (int i = 0; i < moves.length; i++) {
+			boolean white = chess.getTurn();
+			Move move = Notation.parseSan(chess, white, sans.get(i));
+			if (move == null || move.isPromotion() && move.getPromotionPiece() == null)
+				throw new IllegalArgumentException("Illegal move " + chess.getFullmoveNumber()
+						+ (white ? ". " : "... ") + sans.get(i));
+			moves[i] = OpeningBook.encodeMove(move);
+			chess.playMove(move);
+		}
+		GameRecord record = new GameRecord(fen, moves);
+		for (Map.Entry<String, String> tag : game.getTags().entrySet())
+			if (!tag.getKey().equals("FEN") && !tag.getKey().equals("SetUp"))
+				record.setTag(tag.getKey(), tag.getValue());
+		record.setResult(game.getResult());
+		return record;
+	}
+
+	/**
+	 * Converts this game to PGN, replaying it on a new headless board bound to
+	 * the current thread.
+	 *
+	 * @return The game with its Moves in Standard Algebraic Notation.
+	 * @throws IllegalArgumentException If a Move is illegal.
+	 */
+	public PgnGame toPgn() {
+		PgnGame game = PgnGame.fromMoves(startingFen, moves);
+		for (Map.Entry<String, String> tag : tags.entrySet())
+			game.setTag(tag.getKey(), tag.getValue());
+		game.setResult(result);
+		return game;
+	}
+
+	/**
+	 * Encodes this game, replaying it on a new headless board bound to the
+	 * current thread.
+	 *
+	 * @param entropyCoded Whether to entropy code the Moves instead of storing
+	 *                     them as a byte each.
+	 * @return The game record.
+	 * @throws IllegalArgumentException If a Move is illegal or the game is too
+	 *                                  long.
+	 */
+	public byte[] encode(boolean entropyCoded) {
+		if (moves.length > 0xFFFF)
+			throw new IllegalArgumentException("Games over 65535 plies are not supported.");
+		Chess chess = new Chess(startingFen);
+		int checkpoints = moves.length / checkpointInterval + 1;
+		ByteArrayOutputStream header = new ByteArrayOutputStream(64 + 32 * checkpoints);
+		ByteArrayOutputStream segments = new ByteArrayOutputStream(moves.length);
+		try {
+			DataOutputStream out = new DataOutputStream(header);
+			boolean standardStart = chess.generateFEN().equals(Chess.STARTING_FEN);
+			out.writeLong(MAGIC);
+			out.writeByte((entropyCoded ? ENTROPY_CODED : 0) | (standardStart ? STANDARD_START : 0));
+			out.writeByte(checkpointInterval);
+			out.writeShort(tags.size());
+			for (Map.Entry<String, String> tag : tags.entrySet()) {
+				out.writeUTF(tag.getKey());
+				out.writeUTF(tag.getValue());
+			}
+			out.writeUTF(result);
+			out.writeShort(moves.length);
+
+			int[] indexes = new int[checkpointInterval];
+			int[] counts = new int[checkpointInterval];
+			for (int checkpoint = 0; checkpoint < checkpoints; checkpoint++) {
+				if (checkpoint > 0 || !standardStart)
+					writePosition(out, chess.generateFEN());
+				int start = checkpoint * checkpointInterval;
+				int length = Math.min(checkpointInterval, moves.length - start);
+				for (int i = 0; i < length; i++) {
+					boolean white = chess.getTurn();
+					List<Move> legal = chess.getPossibleMoves(white);
+					int[] codes = getCodes(legal);
+					int code = moves[start + i];
+					Move move = find(legal, code);
+					if (move != null && move.isPromotion() && (code >>> 12 & 7) == 0)
+						code |= Piece.QUEEN << 12;
+					indexes[i] = Arrays.binarySearch(codes, code);
+					if (indexes[i] < 0)
+						throw new IllegalArgumentException("Illegal move at ply " + (start + i + 1));
+					counts[i] = codes.length;
+					setPromotion(move, code);
+					chess.playMove(move);
+				}
+				byte[] segment = entropyCoded ? pack(indexes, counts, length) : toBytes(indexes, length);
+				out.writeShort(segment.length);
+				segments.write(segment);
+			}
+			segments.writeTo(header);
+		} catch (IOException e) {
+			// Can only be tags too long for the modified UTF-8
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		return header.toByteArray();
+	}
+
+	/**
+	 * Decodes a game record, replaying it on a new headless board bound to the
+	 * current thread.
+	 *
+	 * @param data The game record.
+	 * @return The game.
+	 * @throws IllegalArgumentException If {@code data} isn't a valid game record.
+	 */
+	public static GameRecord decode(byte[] data) {
+		Header header = new Header(data);
+		Chess chess = new Chess(header.fens[0]);
+		int[] moves = new int[header.plies];
+		for (int checkpoint = 0; checkpoint < header.fens.length; checkpoint++) {
+			int start = checkpoint * header.interval;
+			play(chess, header, checkpoint, Math.min(header.interval, header.plies - start), moves, start);
+		}
+		GameRecord record = new GameRecord(header.fens[0], moves);
+		record.tags.putAll(header.tags);
+		record.result = header.result;
+		record.checkpointInterval = header.interval;
+		return record;
+	}
+
+	/**
+	 * Sets up the position reached after some plies of a game record, on a new
+	 * headless board bound to the current thread. Only the Moves since the last
+	 * checkpoint before {@code ply} are replayed.
+	 *
+	 * @param data The game record.
+	 * @param ply  The number of plies to play, from 0 to the length of the game.
+	 * @return The board in that position.
+	 * @throws IllegalArgumentException If {@code data} isn't a valid game record
+	 *                                  or {@code ply} is out of the game.
+	 */
+	public static Chess seek(byte[] data, int ply) {
+		Header header = new Header(data);
+		if (ply < 0 || ply > header.plies)
+			throw new IllegalArgumentException("Ply " + ply + " is out of the game of " + header.plies + " plies.");
+		int checkpoint = ply / header.interval;
+		Chess chess = new Chess(header.fens[checkpoint]);
+		play(chess, header, checkpoint, ply - checkpoint * header.interval, null, 0);
+		return chess;
+	}
+
+	/**
+	 * Checks if a file starts like a game record.
+	 *
+	 * @param path The file.
+	 * @return True if {@code path} is a game record.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static boolean isGameRecord(Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			byte[] magic = in.readNBytes(8);
+			return magic.length == 8 && new DataInputStream(new ByteArrayInputStream(magic)).readLong() == MAGIC;
+		}
+	}
+
+	/**
+	 * Plays the first Moves of a segment.
+	 *
+	 * @param chess  The board, in the position of the checkpoint.
+	 * @param count  How many Moves of the segment to play.
+	 * @param moves  Where to store the Polyglot encoded Moves, may be null.
+	 * @param offset The index of the first Move in {@code moves}.
+	 */
+	private static void play(Chess chess, Header header, int checkpoint, int count, int[] moves, int offset) {
+		byte[] segment = Arrays.copyOfRange(header.data, header.segments[checkpoint],
+				header.segments[checkpoint + 1]);
+		BigInteger packed = header.entropyCoded ? new BigInteger(1, segment) : null;
+		for (int i = 0; i < count; i++) {
+			boolean white = chess.getTurn();
+			List<Move> legal = chess.getPossibleMoves(white);
+			int[] codes = getCodes(legal);
+			if (codes.length == 0)
+				throw new IllegalArgumentException("Corrupted game record at ply " + (offset + i + 1));
+			int index;
+			if (packed != null) {
+				BigInteger[] division = packed.divideAndRemainder(BigInteger.valueOf(codes.length));
+				packed = division[0];
+				index = division[1].intValue();
+			} else
+				index = i < segment.length ? segment[i] & 0xFF : codes.length;
+			if (index >= codes.length)
+				throw new IllegalArgumentException("Corrupted game record at ply " + (offset + i + 1));
+			Move move = find(legal, codes[index]);
+			setPromotion(move, codes[index]);
+			if (moves != null)
+				moves[offset + i] = codes[index];
+			chess.playMove(move);
+		}
+	}
+
+	/**
+	 * Packs the indexes of a segment into a mixed-radix number, the first index
+	 * being the least significant digit.
+	 *
+	 * @param counts The number of legal Moves each index is out of.
+	 * @return The number, big-endian and without sign bit.
+	 */
+	private static byte[] pack(int[] indexes, int[] counts, int length) {
+		BigInteger packed = BigInteger.ZERO;
+		for (int i = length - 1; i >= 0; i--)
+			packed = packed.multiply(BigInteger.valueOf(counts[i])).add(BigInteger.valueOf(indexes[i]));
+		if (packed.signum() == 0)
+			return new byte[0];
+		byte[] bytes = packed.toByteArray();
+		// Removes the byte only holding the sign bit
+		return bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+	}
+
+	private static byte[] toBytes(int[] indexes, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte) indexes[i];
+		return bytes;
+	}
+
+	/**
+	 * Gets the sorted Polyglot codes of the legal Moves, each promoting Move
+	 * having one code per promotion Piece.
+	 */
+	private static int[] getCodes(List<Move> legal) {
+		int[] codes = new int[legal.size() * 4];
+		int count = 0;
+		for (Move move : legal) {
+			int code = OpeningBook.encodeMove(move) & 0xFFF;
+			if (move.isPromotion())
+				for (int promotion = 1; promotion <= 4; promotion++)
+					codes[count++] = code | promotion << 12;
+			else
+				codes[count++] = code;
+		}
+		if (count > 256)
+			throw new IllegalStateException(count + " legal moves can't be indexed by a byte.");
+		Arrays.sort(codes, 0, count);
+		return Arrays.copyOf(codes, count);
+	}
+
+	private static Move find(List<Move> legal, int code) {
+		for (Move move : legal)
+			if ((OpeningBook.encodeMove(move) & 0xFFF) == (code & 0xFFF))
+				return move;
+		return null;
+	}
+
+	private static void setPromotion(Move move, int code) {
+		// The promotion codes are the Piece types
+		if (move.isPromotion() && move.getPiece() instanceof Pawn pawn)
+			move.setPromotionPiece(Notation.createPromotion(pawn, code >>> 12 & 7));
+	}
+
+	/**
+	 * Writes a position from its FEN, which must be valid.
+	 */
+	private static void writePosition(DataOutputStream out, String fen) throws IOException {
+		String[] fields = fen.split(" ");
+		long occupied = 0;
+		ByteArrayOutputStream pieces = new ByteArrayOutputStream(16);
+		int square = 0;
+		int nibble = -1;
+		for (char c : fields[0].toCharArray())
+			if (c >= '1' && c <= '8')
+				square += c - '0';
+			else if (c != '/') {
+				occupied |= 1L << square++;
+				if (nibble < 0)
+					nibble = PIECES.indexOf(c) << 4;
+				else {
+					pieces.write(nibble | PIECES.indexOf(c));
+					nibble = -1;
+				}
+			}
+		if (nibble >= 0)
+			pieces.write(nibble);
+		out.writeLong(occupied);
+		pieces.writeTo(out);
+		int flags = fields[1].equals("w") ? 1 : 0;
+		for (int i = 0; i < CASTLING.length(); i++)
+			if (fields[2].indexOf(CASTLING.charAt(i)) >= 0)
+				flags |= 2 << i;
+		out.writeByte(flags);
+		out.writeByte(fields[3].equals("-") ? 255 : fields[3].charAt(0) - 'a');
+		out.writeShort(Integer.parseInt(fields[4]));
+		out.writeShort(Integer.parseInt(fields[5]));
+	}
+
+	/**
+	 * Reads a position written by {@link #writePosition(DataOutputStream, String)}.
+	 *
+	 * @return Its FEN.
+	 */
+	private static String readPosition(DataInputStream in) throws IOException {
+		long occupied = in.readLong();
+		StringBuilder fen = new StringBuilder(90);
+		int count = Long.bitCount(occupied);
+		int read = 0;
+		int current = 0;
+		int empty = 0;
+		for (int square = 0; square < 64; square++) {
+			if (square > 0 && square % 8 == 0) {
+				if (empty > 0)
+					fen.append(empty);
+				empty = 0;
+				fen.append('/');
+			}
+			if ((occupied & 1L << square) == 0) {
+				empty++;
+				continue;
+			}
+			if (empty > 0)
+				fen.append(empty);
+			empty = 0;
+			int piece;
+			if (read++ % 2 == 0) {
+				current = in.readUnsignedByte();
+				piece = current >>> 4;
+			} else
+				piece = current & 15;
+			if (piece >= PIECES.length())
+				throw new IOException("Invalid piece code " + piece);
+			fen.append(PIECES.charAt(piece));
+		}
+		if (empty > 0)
+			fen.append(empty);
+		if (read != count)
+			throw new IOException("Invalid position");
+		int flags = in.readUnsignedByte();
+		fen.append((flags & 1) != 0 ? " w " : " b ");
+		int length = fen.length();
+		for (int i = 0; i < CASTLING.length(); i++)
+			if ((flags & 2 << i) != 0)
+				fen.append(CASTLING.charAt(i));
+		if (fen.length() == length)
+			fen.append('-');
+		int enPassant = in.readUnsignedByte();
+		if (enPassant == 255)
+			fen.append(" -");
+		else
+			fen.append(' ').append((char) ('a' + enPassant)).append((flags & 1) != 0 ? '6' : '3');
+		fen.append(' ').append(in.readUnsignedShort()).append(' ').append(in.readUnsignedShort());
+		return fen.toString();
+	}
+
+	/**
+	 * The part of a game record before the segments, read without replaying any
+	 * Move.
+	 */
+	private static final class Header {
+
+		private final byte[] data;
+		private final boolean entropyCoded;
+		private final int interval;
+		private final Map<String, String> tags = new LinkedHashMap<>();
+		private final String result;
+		private final int plies;
+		/**
+		 * The position of each checkpoint.
+		 */
+		private final String[] fens;
+		/**
+		 * The offset of each segment in {@link #data}, plus the end of the last one.
+		 */
+		private final int[] segments;
+
+		private Header(byte[] data) {
+			this.data = data;
+			try {
+				ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+				DataInputStream in = new DataInputStream(bytes);
+				if (in.readLong() != MAGIC)
+					throw new IllegalArgumentException("Not a game record");
+				int flags = in.readUnsignedByte();
+				entropyCoded = (flags & ENTROPY_CODED) != 0;
+				interval = in.readUnsignedByte();
+				if (interval == 0)
+					throw new IllegalArgumentException("Invalid checkpoint interval");
+				for (int count = in.readUnsignedShort(); count > 0; count--)
+					tags.put(in.readUTF(), in.readUTF());
+				result = in.readUTF();
+				plies = in.readUnsignedShort();
+				fens = new String[plies / interval + 1];
+				segments = new int[fens.length + 1];
+				for (int i = 0; i < fens.length; i++) {
+					fens[i] = i == 0 && (flags & STANDARD_START) != 0 ? Chess.STARTING_FEN : readPosition(in);
+					segments[i + 1] = segments[i] + in.readUnsignedShort();
+				}
+				// The segments follow
+				int start = data.length - bytes.available();
+				for (int i = 0; i < segments.length; i++)
+					segments[i] += start;
+				if (segments[fens.length] > data.length)
+					throw new IllegalArgumentException("Truncated game record");
+			} catch (EOFException e) {
+				throw new IllegalArgumentException("Truncated game record", e);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Invalid game record: " + e.getMessage(), e);
+			}
+		}
+
+	}
+
+	/**
+	 * Reads a game record file.
+	 *
+	 * @param path The file.
+	 * @return The game.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static GameRecord read(Path path) throws IOException {
+		return decode(Files.readAllBytes(path));
+	}
+
+	/**
+	 * Writes this game to a file, which is replaced if it already exists.
+	 *
+	 * @param path         The file.
+	 * @param entropyCoded Whether to entropy code the Moves.
+	 * @return The number of bytes written.
+	 * @throws IOException If the file can't be written.
+	 */
+	public int write(Path path, boolean entropyCoded) throws IOException {
+		byte[] data = encode(entropyCoded);
+		Files.write(path, data);
+		return data.length;
+	}
+
+	/**
+	 * Gets the value of a tag.
+	 *
+	 * @param name The name of the tag, for example {@code White}.
+	 * @return The value of the tag or null if it isn't set.
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+	/**
+	 * Sets the value of a tag.
+	 *
+	 * @param name  The name of the tag.
+	 * @param value The value of the tag.
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+	/**
+	 * Getter for the tags value.
+	 *
+	 * @return The tags to get, in their original order.
+	 */
+	public Map<String, String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * Getter for the startingFen value.
+	 *
+	 * @return The startingFen to get.
+	 */
+	public String getStartingFen() {
+		return startingFen;
+	}
+
+	/**
+	 * Getter for the moves value.
+	 *
+	 * @return The Polyglot encoded Moves.
+	 */
+	public int[] getMoves() {
+		return moves.clone();
+	}
+
+	/**
+	 * Getter for the result value.
+	 *
+	 * @return One of {@code 1-0}, {@code 0-1}, {@code 1/2-1/2} or {@code *}.
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * Setter for the result value.
+	 *
+	 * @param result The result to set.
+	 */
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	/**
+	 * Getter for the checkpointInterval value.
+	 *
+	 * @return The number of plies between two position checkpoints.
+	 */
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * Setter for the checkpointInterval value.
+	 *
+	 * @param checkpointInterval The number of plies between two position
+	 *                           checkpoints, from 1 to 255. Smaller intervals
+	 *                           seek faster but take more space.
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		if (checkpointInterval < 1 || checkpointInterval > 255)
+			throw new IllegalArgumentException("The checkpoint interval must be between 1 and 255.");
+		this.checkpointInterval = checkpointInterval;
+	}
+
+}
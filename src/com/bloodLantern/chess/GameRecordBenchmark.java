@@ -0,0 +1,83 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Command-line benchmark of the {@link GameRecord} format on PGN files: the
+ * size in bytes per Move of the games written as PGN and as game records with
+ * and without entropy coding, and the time to seek to a random ply.
+ * <p>
+ * Arguments: {@code interval=<n>} for the number of plies between two
+ * checkpoints (default {@value GameRecord#DEFAULT_CHECKPOINT_INTERVAL}), then
+ * the PGN files. Games with an illegal Move are skipped.
+ *
+ * @author BloodLantern
+ */
+public final class GameRecordBenchmark {
+
+	private GameRecordBenchmark() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		int interval = GameRecord.DEFAULT_CHECKPOINT_INTERVAL;
+		List<Path> inputs = new ArrayList<>();
+		for (String arg : args)
+			if (arg.startsWith("interval="))
+				interval = Integer.valueOf(arg.substring(9));
+			else
+				inputs.add(Path.of(arg));
+
+		long plies = 0;
+		long pgnSize = 0;
+		long rawSize = 0;
+		long codedSize = 0;
+		long encodingTime = 0;
+		List<byte[]> records = new ArrayList<>();
+		List<Integer> lengths = new ArrayList<>();
+		for (Path input : inputs)
+			try (PgnReader reader = new PgnReader(input)) {
+				for (PgnGame game = reader.next(); game != null; game = reader.next()) {
+					GameRecord record;
+					try {
+						record = GameRecord.fromPgn(game);
+					} catch (IllegalArgumentException e) {
+						continue;
+					}
+					record.setCheckpointInterval(interval);
+					StringWriter pgn = new StringWriter();
+					try (PgnWriter writer = new PgnWriter(pgn)) {
+						writer.write(game);
+					}
+					long time = System.nanoTime();
+					byte[] coded = record.encode(true);
+					encodingTime += System.nanoTime() - time;
+					plies += game.getMoves().size();
+					pgnSize += pgn.getBuffer().length();
+					rawSize += record.encode(false).length;
+					codedSize += coded.length;
+					records.add(coded);
+					lengths.add(game.getMoves().size());
+				}
+			}
+		if (plies == 0) {
+			System.out.println("No game to encode");
+			return;
+		}
+
+		Random random = new Random(0);
+		long time = System.nanoTime();
+		for (int i = 0; i < records.size(); i++)
+			GameRecord.seek(records.get(i), random.nextInt(lengths.get(i) + 1));
+		long seekTime = System.nanoTime() - time;
+		System.out.printf(
+				"Games: %d  Plies: %d  Bytes per move: PGN %.2f, raw %.2f, entropy coded %.2f  Encoding: %.1f us per move  Seek: %.0f us%n",
+				records.size(), plies, (double) pgnSize / plies, (double) rawSize / plies, (double) codedSize / plies,
+				encodingTime / 1000.0 / plies, seekTime / 1000.0 / records.size());
+	}
+
+}
@@ -0,0 +1,43 @@
+package com.bloodLantern.chess;
+
+/**
+ * The state of a game for the side to move, as returned by
+ * {@link Chess#getStatus(boolean)}.
+ *
+ * @author BloodLantern
+ */
+public enum GameStatus {
+
+	/**
+	 * The side to move has a legal Move and no draw can be claimed.
+	 */
+	ONGOING,
+	/**
+	 * The side to move is in check and has no legal Move.
+	 */
+	CHECKMATE,
+	/**
+	 * The side to move isn't in check but has no legal Move.
+	 */
+	STALEMATE,
+	/**
+	 * No capture nor Pawn Move has been made in the last fifty Moves.
+	 */
+	FIFTY_MOVES,
+	/**
+	 * The position occurred three times.
+	 */
+	REPETITION,
+	/**
+	 * Neither side has enough material left to checkmate.
+	 */
+	INSUFFICIENT_MATERIAL;
+
+	/**
+	 * @return True if the game is over and nobody won.
+	 */
+	public boolean isDraw() {
+		return this != ONGOING && this != CHECKMATE;
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * King and Pawn versus King win/draw bitbase. It holds one bit per position
+ * with the Pawn on the a to d files, the others being mirrored: 24 Pawn squares
+ * times 64 times 64 King squares times 2 sides to move, so 24 KB. It is
+ * generated when the class is first used, in a few milliseconds, by repeatedly
+ * classifying the positions from the ones whose result is immediate.
+ * <p>
+ * Squares are numbered from {@code a1} (0) to {@code h8} (63) as seen by the
+ * side with the Pawn. {@link #main(String[])} verifies the bitbase against the
+ * exhaustive {@code KPK} {@link Tablebase}.
+ *
+ * @author BloodLantern
+ */
+public final class KpkBitbase {
+
+	/**
+	 * Returned by the probes when the position isn't a KPK one.
+	 */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+
+	private static final int SIZE = 2 * 24 * 64 * 64;
+	private static final byte INVALID = 0;
+	private static final byte PENDING = 1;
+	private static final byte DRAW = 2;
+	private static final byte WIN = 3;
+
+	private static final long[] bits = new long[SIZE / 64];
+
+	static {
+		generate();
+	}
+
+	private KpkBitbase() {
+	}
+
+	/**
+	 * Gets the index of a position.
+	 *
+	 * @param strongToMove Is the side with the Pawn to move ?
+	 * @param strongKing   The King of the side with the Pawn.
+	 * @param weakKing     The lone King.
+	 * @param pawn         The Pawn, on the a to d files and ranks 2 to 7.
+	 * @return The index of the bit of the position.
+	 */
+	private static int getIndex(boolean strongToMove, int strongKing, int weakKing, int pawn) {
+		return strongKing | weakKing << 6 | (strongToMove ? 0 : 1) << 12 | (pawn & 7) << 13 | (6 - (pawn >> 3)) << 15;
+	}
+
+	/**
+	 * Checks if the side with the Pawn wins.
+	 *
+	 * @param strongToMove Is the side with the Pawn to move ?
+	 * @param strongKing   The King of the side with the Pawn.
+	 * @param weakKing     The lone King.
+	 * @param pawn         The Pawn, moving towards the 8th rank.
+	 * @return True if the position is won, false if it is drawn or illegal.
+	 */
+	public static boolean isWin(boolean strongToMove, int strongKing, int weakKing, int pawn) {
+		if ((pawn & 7) > 3) {
+			strongKing ^= 7;
+			weakKing ^= 7;
+			pawn ^= 7;
+		}
+		int index = getIndex(strongToMove, strongKing, weakKing, pawn);
+		return (bits[index >>> 6] & 1L << index) != 0;
+	}
+
+	/**
+	 * Probes the bitbase for the current position of {@code chess}.
+	 *
+	 * @param chess       The board.
+	 * @param whiteToMove The side to move.
+	 * @return The score for the side to move: 0 for a draw, more than
+	 *         {@link AI#KNOWN_WIN} for a win and less than its negation for a
+	 *         loss, or {@link #UNKNOWN} if the position isn't a KPK one.
+	 */
+	public static int probe(Chess chess, boolean whiteToMove) {
+		Evaluation evaluation = chess.getEvaluation();
+		if (evaluation.getPieceCount() != 3 || evaluation.getPawnKey() == 0)
+			return UNKNOWN;
+		int[] squares = getSquares(chess.getTiles());
+		boolean strongToMove = whiteToMove == (squares[3] == 1);
+		if (!isWin(strongToMove, squares[0], squares[1], squares[2]))
+			return 0;
+		int score = AI.KNOWN_WIN + 10 * (squares[2] >> 3);
+		return strongToMove ? score : -score;
+	}
+
+	/**
+	 * Evaluates the current position of {@code chess} without knowing the side to
+	 * move.
+	 *
+	 * @param tiles The board, which must hold a King and Pawn versus King
+	 *              ending.
+	 * @return The score for white if the position has the same result with both
+	 *         sides to move, {@link #UNKNOWN} otherwise.
+	 */
+	static int evaluate(Tile[][] tiles) {
+		int[] squares = getSquares(tiles);
+		boolean win = isWin(true, squares[0], squares[1], squares[2]);
+		if (win != isWin(false, squares[0], squares[1], squares[2]))
+			return UNKNOWN;
+		if (!win)
+			return 0;
+		int score = AI.KNOWN_WIN + 10 * (squares[2] >> 3);
+		return squares[3] == 1 ? score : -score;
+	}
+
+	/**
+	 * Finds the Pieces of a KPK board.
+	 *
+	 * @return The strong King, the weak King and the Pawn squares as seen by the
+	 *         side with the Pawn, then 1 if that side is white and 0 otherwise.
+	 */
+	private static int[] getSquares(Tile[][] tiles) {
+		int[] squares = new int[4];
+		Piece pawn = null;
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless)
+				if (tile.getPiece() != null && tile.getPiece().getType() == Piece.PAWN)
+					pawn = tile.getPiece();
+		boolean white = pawn.isWhite();
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless) {
+				Piece piece = tile.getPiece();
+				if (piece == null)
+					continue;
+				// Seen by the side with the Pawn, moving up
+				int square = 8 * (white ? 7 - tile.getLine() : tile.getLine()) + tile.getRow();
+				if (piece == pawn)
+					squares[2] = square;
+				else
+					squares[piece.isWhite() == white ? 0 : 1] = square;
+			}
+		squares[3] = white ? 1 : 0;
+		return squares;
+	}
+
+	/**
+	 * Classifies every position, starting from the immediate wins and draws and
+	 * repeating until no pending position can be classified anymore.
+	 */
+	private static void generate() {
+		byte[] results = new byte[SIZE];
+		for (int index = 0; index < SIZE; index++)
+			results[index] = classify(index);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int index = 0; index < SIZE; index++)
+				if (results[index] == PENDING) {
+					results[index] = classify(index, results);
+					changed |= results[index] != PENDING;
+				}
+		}
+		for (int index = 0; index < SIZE; index++)
+			if (results[index] == WIN)
+				bits[index >>> 6] |= 1L << index;
+	}
+
+	private static int distance(int a, int b) {
+		return Math.max(Math.abs((a & 7) - (b & 7)), Math.abs((a >> 3) - (b >> 3)));
+	}
+
+	private static boolean isAttackedByPawn(int pawn, int square) {
+		return (square >> 3) == (pawn >> 3) + 1 && Math.abs((square & 7) - (pawn & 7)) == 1;
+	}
+
+	/**
+	 * Gets the initial classification of a position.
+	 */
+	private static byte classify(int index) {
+		int strongKing = index & 63;
+		int weakKing = index >>> 6 & 63;
+		boolean strongToMove = (index >>> 12 & 1) == 0;
+		int pawn = 8 * (6 - (index >>> 15)) + (index >>> 13 & 3);
+
+		if (distance(strongKing, weakKing) <= 1 || strongKing == pawn || weakKing == pawn
+				|| strongToMove && isAttackedByPawn(pawn, weakKing))
+			return INVALID;
+
+		if (strongToMove) {
+			// Promotes without the new Queen being taken
+			int promotion = pawn + 8;
+			if (pawn >> 3 == 6 && strongKing != promotion && weakKing != promotion
+					&& (distance(weakKing, promotion) > 1 || distance(strongKing, promotion) == 1))
+				return WIN;
+			return PENDING;
+		}
+
+		boolean canMove = false;
+		for (int square = 0; square < 64; square++) {
+			if (distance(weakKing, square) != 1 || distance(strongKing, square) <= 1
+					|| isAttackedByPawn(pawn, square))
+				continue;
+			if (square == pawn)
+				// Takes the undefended Pawn
+				return DRAW;
+			canMove = true;
+		}
+		if (!canMove)
+			return isAttackedByPawn(pawn, weakKing) ? WIN : DRAW;
+		return PENDING;
+	}
+
+	/**
+	 * Classifies a pending position from the results of its children.
+	 */
+	private static byte classify(int index, byte[] results) {
+		int strongKing = index & 63;
+		int weakKing = index >>> 6 & 63;
+		boolean strongToMove = (index >>> 12 & 1) == 0;
+		int pawn = 8 * (6 - (index >>> 15)) + (index >>> 13 & 3);
+
+		// The side to move wins with any good child and needs all of them to lose
+		byte good = strongToMove ? WIN : DRAW;
+		byte bad = strongToMove ? DRAW : WIN;
+		boolean pending = false;
+		int mover = strongToMove ? strongKing : weakKing;
+		int other = strongToMove ? weakKing : strongKing;
+		for (int square = 0; square < 64; square++) {
+			if (distance(mover, square) != 1 || distance(other, square) <= 1 || square == pawn
+					|| !strongToMove && isAttackedByPawn(pawn, square))
+				continue;
+			byte child = strongToMove ? results[getIndex(false, square, weakKing, pawn)]
+					: results[getIndex(true, strongKing, square, pawn)];
+			if (child == good)
+				return good;
+			pending |= child == PENDING;
+		}
+		if (strongToMove && pawn >> 3 < 6) {
+			int push = pawn + 8;
+			if (push != strongKing && push != weakKing) {
+				byte child = results[getIndex(false, strongKing, weakKing, push)];
+				if (child == good)
+					return good;
+				pending |= child == PENDING;
+				if (pawn >> 3 == 1 && push + 8 != strongKing && push + 8 != weakKing) {
+					child = results[getIndex(false, strongKing, weakKing, push + 8)];
+					if (child == good)
+						return good;
+					pending |= child == PENDING;
+				}
+			}
+		}
+		return pending ? PENDING : bad;
+	}
+
+	/**
+	 * Verifies the bitbase against the {@code KPK} {@link Tablebase}, generating
+	 * it in a temporary directory.
+	 *
+	 * @param args Unused.
+	 * @throws IOException If the tablebase can't be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		long time = System.nanoTime();
+		generate();
+		System.out.println("Bitbase generated in " + (System.nanoTime() - time) / 1_000_000 + " milliseconds");
+
+		Path directory = Files.createTempDirectory("kpk");
+		TablebaseGenerator.generate("KPK", directory);
+		int[] types = { Piece.KING, Piece.KING, Piece.PAWN };
+		boolean[] whites = { true, false, true };
+		int[] squares = new int[3];
+		int positions = 0;
+		int mismatches = 0;
+		for (int index = 0; index < SIZE; index++) {
+			squares[0] = index & 63;
+			squares[1] = index >>> 6 & 63;
+			squares[2] = 8 * (6 - (index >>> 15)) + (index >>> 13 & 3);
+			boolean whiteToMove = (index >>> 12 & 1) == 0;
+			if (classify(index) == INVALID)
+				continue;
+			positions++;
+			int value = Tablebase.probe(types, whites, squares, 3, whiteToMove);
+			boolean expected = whiteToMove ? value > 0 : value < 0;
+			if (isWin(whiteToMove, squares[0], squares[1], squares[2]) != expected) {
+				if (mismatches++ < 10)
+					System.out.println("Mismatch: strong King " + squares[0] + ", weak King " + squares[1] + ", Pawn "
+							+ squares[2] + (whiteToMove ? ", strong" : ", weak") + " side to move, expected "
+							+ (expected ? "win" : "draw"));
+			}
+		}
+		System.out.println(positions + " positions, " + mismatches + " mismatches");
+		try (var files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+}
@@ -0,0 +1,413 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command-line tool playing engine-versus-engine games between two search
+ * configurations, A and B, to measure whether one is stronger. Each opening is
+ * played twice with the colors swapped, many games are played at once on a pool
+ * of threads and every game has its own {@link TranspositionTable}s. The games
+ * end by the rules of {@link Chess#getStatus(boolean)}, on time or as a draw
+ * after a number of plies.
+ * <p>
+ * The Elo difference of A over B is printed with its 95% confidence interval,
+ * along with the log-likelihood ratio of a sequential probability ratio test
+ * (SPRT) of {@code elo0} against {@code elo1}. The match stops as soon as the
+ * test accepts either hypothesis, or after the given number of games. Every
+ * game is written to a PGN file.
+ * <p>
+ * Arguments: {@code openings=<path>} for a file of FEN or EPD lines (default:
+ * the standard starting position only), {@code games=<n>} for the maximum
+ * number of games (default 1000), {@code threads=<n>} for the number of games
+ * played at once (default: every core), {@code out=<path>} for the PGN file
+ * (default {@code match.pgn}), {@code maxplies=<n>} for the ply after which a
+ * game is drawn (default 400), {@code elo0=}, {@code elo1=}, {@code alpha=}
+ * and {@code beta=} for the SPRT (default 0, 5, 0.05 and 0.05). The controls
+ * are {@code time=<ms>} per Move, {@code nodes=<n>} per Move and
+ * {@code tc=<seconds>+<increment>} for a game clock, as well as
+ * {@code hash=<n>} for the number of transposition table entries (default
+ * 65536) and {@code name=<name>}. The evaluation is set by
+ * {@code params=<path>} for an {@link EvaluationParameters} file,
+ * {@code nnue=<path>} for a {@link NeuralNetwork} file and
+ * {@code activity=false} to leave mobility and king safety out. All of these
+ * apply to both engines unless prefixed by {@code a.} or {@code b.}, for
+ * example {@code a.nodes=20000} or {@code b.params=tuned.txt}. Without any
+ * control, each Move is searched for 100 ms.
+ * <p>
+ * Each engine has its own {@link EvaluationParameters} and evaluation cache,
+ * bound to the search thread of each of its Moves. The hit rates of each
+ * cache and of the pawn tables of its searches are printed at the end of the
+ * match.
+ *
+ * @author BloodLantern
+ */
+public final class MatchRunner {
+
+	/**
+	 * The settings of one of the two engines.
+	 *
+	 * @param time       The time per Move (in ms), -1 if not limited.
+	 * @param nodes      The nodes per Move, -1 if not limited.
+	 * @param base       The starting time of the game clock (in ms), -1 if there
+	 *                   isn't any clock.
+	 * @param increment  The time added to the clock after each Move (in ms).
+	 * @param hash       The number of transposition table entries.
+	 * @param evaluation The evaluation of the engine.
+	 */
+	private record Engine(String name, long time, long nodes, long base, long increment, int hash,
+			EvaluationParameters evaluation) {
+	}
+
+	/**
+	 * A finished game.
+	 *
+	 * @param index  The number of the game, from 1.
+	 * @param aWhite Whether A had the white Pieces.
+	 * @param score  The score of A: 1 for a win, 0.5 for a draw, 0 for a loss.
+	 * @param moves  The Polyglot encoded Moves.
+	 */
+	private record Game(int index, String fen, boolean aWhite, double score, String result, String termination,
+			int[] moves) {
+	}
+
+	private final Engine a;
+	private final Engine b;
+	private final int maxPlies;
+	/**
+	 * The transposition tables of A then B, one pair per thread.
+	 */
+	private final ThreadLocal<TranspositionTable[]> tables;
+	/**
+	 * The pawn table hits and probes of the searches of A then B.
+	 */
+	private final LongAdder[] pawnHits = { new LongAdder(), new LongAdder() };
+	private final LongAdder[] pawnProbes = { new LongAdder(), new LongAdder() };
+
+	private int wins = 0;
+	private int draws = 0;
+	private int losses = 0;
+
+	private MatchRunner(Engine a, Engine b, int maxPlies) {
+		this.a = a;
+		this.b = b;
+		this.maxPlies = maxPlies;
+		tables = ThreadLocal.withInitial(
+				() -> new TranspositionTable[] { new TranspositionTable(a.hash), new TranspositionTable(b.hash) });
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path openingsPath = null;
+		Path out = Path.of("match.pgn");
+		int games = 1000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxPlies = 400;
+		double elo0 = 0;
+		double elo1 = 5;
+		double alpha = 0.05;
+		double beta = 0.05;
+		List<String> aOptions = new ArrayList<>();
+		List<String> bOptions = new ArrayList<>();
+		for (String arg : args)
+			if (arg.startsWith("openings="))
+				openingsPath = Path.of(arg.substring(9));
+			else if (arg.startsWith("out="))
+				out = Path.of(arg.substring(4));
+			else if (arg.startsWith("games="))
+				games = Integer.valueOf(arg.substring(6));
+			else if (arg.startsWith("threads="))
+				threads = Integer.valueOf(arg.substring(8));
+			else if (arg.startsWith("maxplies="))
+				maxPlies = Integer.valueOf(arg.substring(9));
+			else if (arg.startsWith("elo0="))
+				elo0 = Double.valueOf(arg.substring(5));
+			else if (arg.startsWith("elo1="))
+				elo1 = Double.valueOf(arg.substring(5));
+			else if (arg.startsWith("alpha="))
+				alpha = Double.valueOf(arg.substring(6));
+			else if (arg.startsWith("beta="))
+				beta = Double.valueOf(arg.substring(5));
+			else if (arg.startsWith("a."))
+				aOptions.add(arg.substring(2));
+			else if (arg.startsWith("b."))
+				bOptions.add(arg.substring(2));
+			else {
+				aOptions.add(0, arg);
+				bOptions.add(0, arg);
+			}
+		Engine a = parseEngine("A", aOptions);
+		Engine b = parseEngine("B", bOptions);
+		List<String> openings = openingsPath == null ? List.of(Chess.STARTING_FEN) : readOpenings(openingsPath);
+		if (openings.isEmpty())
+			throw new IllegalArgumentException("No opening position in " + openingsPath);
+
+		long time = System.currentTimeMillis();
+		MatchRunner runner = new MatchRunner(a, b, maxPlies);
+		double lower = Math.log(beta / (1 - alpha));
+		double upper = Math.log((1 - beta) / alpha);
+		ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+			// Games still running when the test ends must not keep the program alive
+			Thread thread = new Thread(task, "Match");
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Game> completion = new ExecutorCompletionService<>(pool);
+		for (int i = 0; i < games; i++) {
+			int index = i + 1;
+			String opening = openings.get(i / 2 % openings.size());
+			boolean aWhite = i % 2 == 0;
+			completion.submit(() -> runner.play(index, opening, aWhite));
+		}
+		String date = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd"));
+		String conclusion = "Maximum number of games reached";
+		try (PgnWriter writer = new PgnWriter(out)) {
+			for (int played = 0; played < games; played++) {
+				Game game;
+				try {
+					game = completion.take().get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+				runner.add(game);
+				writer.write(runner.toPgn(game, date));
+				double llr = runner.getLogLikelihoodRatio(elo0, elo1);
+				System.out.println(runner.getSummary() + String.format("  LLR: %.2f (%.2f, %.2f)", llr, lower, upper));
+				if (llr >= upper) {
+					conclusion = "H1 accepted: A is stronger by at least " + elo1 + " Elo";
+					break;
+				}
+				if (llr <= lower) {
+					conclusion = "H0 accepted: A isn't stronger by more than " + elo0 + " Elo";
+					break;
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		System.out.println(conclusion + "  Time: " + (System.currentTimeMillis() - time) + " milliseconds");
+		Engine[] engines = { a, b };
+		for (int i = 0; i < engines.length; i++)
+			System.out.println(engines[i].name + " evaluation cache: "
+					+ engines[i].evaluation.getCache().getStatistics() + "  Pawn table: "
+					+ EvaluationCache.getStatistics(runner.pawnHits[i].sum(), runner.pawnProbes[i].sum()));
+	}
+
+	/**
+	 * Reads the settings of an engine, the later options overriding the earlier
+	 * ones.
+	 */
+	private static Engine parseEngine(String name, List<String> options) throws IOException {
+		EvaluationParameters evaluation = new EvaluationParameters();
+		long time = -1;
+		long nodes = -1;
+		long base = -1;
+		long increment = 0;
+		int hash = 1 << 16;
+		for (String option : options)
+			if (option.startsWith("name="))
+				name = option.substring(5);
+			else if (option.startsWith("time="))
+				time = Long.valueOf(option.substring(5));
+			else if (option.startsWith("nodes="))
+				nodes = Long.valueOf(option.substring(6));
+			else if (option.startsWith("tc=")) {
+				String[] parts = option.substring(3).split("\\+");
+				base = (long) (Double.valueOf(parts[0]) * 1000);
+				increment = parts.length > 1 ? (long) (Double.valueOf(parts[1]) * 1000) : 0;
+			} else if (option.startsWith("hash="))
+				hash = Integer.valueOf(option.substring(5));
+			else if (option.startsWith("params="))
+				evaluation.load(Path.of(option.substring(7)));
+			else if (option.startsWith("nnue="))
+				evaluation.setNetwork(NeuralNetwork.load(Path.of(option.substring(5))));
+			else if (option.startsWith("activity="))
+				evaluation.setActivity(Boolean.parseBoolean(option.substring(9)));
+			else
+				throw new IllegalArgumentException("Unknown option: " + option);
+		if (time < 0 && nodes < 0 && base < 0)
+			time = 100;
+		return new Engine(name, time, nodes, base, increment, hash, evaluation);
+	}
+
+	/**
+	 * Reads the positions of a file of FEN or EPD lines, ignoring the EPD
+	 * operations.
+	 */
+	private static List<String> readOpenings(Path path) throws IOException {
+		List<String> openings = new ArrayList<>();
+		Fen fen = new Fen();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1)) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+				if (!line.isBlank() && !line.startsWith("#"))
+					openings.add(line.substring(0, fen.validate(line, 0, line.length())).trim());
+		}
+		return openings;
+	}
+
+	/**
+	 * Plays a game on the current thread.
+	 *
+	 * @param aWhite Whether A has the white Pieces.
+	 */
+	private Game play(int index, String opening, boolean aWhite) {
+		TranspositionTable[] engineTables = tables.get();
+		for (TranspositionTable table : engineTables)
+			table.clear();
+		Chess chess = new Chess(opening);
+		String fen = chess.generateFEN();
+		long[] clocks = { aWhite ? a.base : b.base, aWhite ? b.base : a.base };
+		List<Integer> moves = new ArrayList<>();
+		String result = "1/2-1/2";
+		String termination;
+		while (true) {
+			boolean white = chess.getTurn();
+			GameStatus status = chess.getStatus(white);
+			if (status != GameStatus.ONGOING) {
+				if (status == GameStatus.CHECKMATE)
+					result = white ? "0-1" : "1-0";
+				termination = status.name().toLowerCase().replace('_', ' ');
+				break;
+			}
+			if (moves.size() >= maxPlies) {
+				termination = "adjudication";
+				break;
+			}
+			boolean aToMove = white == aWhite;
+			Engine engine = aToMove ? a : b;
+			int side = white ? 0 : 1;
+			long budget = engine.time;
+			if (engine.base >= 0) {
+				long allocated = clocks[side] / 30 + engine.increment * 3 / 4;
+				budget = budget < 0 ? allocated : Math.min(budget, allocated);
+			}
+			long start = System.currentTimeMillis();
+			Search search = new Search(chess.generateFEN(), chess.getPositionHistory(), 0, white,
+					engineTables[aToMove ? 0 : 1], budget < 0 ? Long.MAX_VALUE : start + budget);
+			if (engine.nodes >= 0)
+				search.setNodeLimit(engine.nodes);
+			search.setParameters(engine.evaluation);
+			search.run();
+			// The search bound its own board to this thread
+			chess.bind();
+			pawnHits[aToMove ? 0 : 1].add(search.getPawnTable().getHits());
+			pawnProbes[aToMove ? 0 : 1].add(search.getPawnTable().getProbes());
+			if (engine.base >= 0) {
+				clocks[side] -= System.currentTimeMillis() - start;
+				if (clocks[side] < 0) {
+					result = white ? "0-1" : "1-0";
+					termination = "time forfeit";
+					break;
+				}
+				clocks[side] += engine.increment;
+			}
+			Move move = OpeningBook.decodeMove(chess, white, search.getBestMove());
+			if (move == null) {
+				result = white ? "0-1" : "1-0";
+				termination = "illegal move";
+				break;
+			}
+			moves.add(OpeningBook.encodeMove(move));
+			chess.playMove(move);
+		}
+		double whiteScore = result.equals("1-0") ? 1 : result.equals("0-1") ? 0 : 0.5;
+		return new Game(index, fen, aWhite, aWhite ? whiteScore : 1 - whiteScore, result, termination,
+				moves.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	private void add(Game game) {
+		if (game.score == 1)
+			wins++;
+		else if (game.score == 0)
+			losses++;
+		else
+			draws++;
+	}
+
+	private PgnGame toPgn(Game game, String date) {
+		PgnGame pgn = PgnGame.fromMoves(game.fen, game.moves);
+		pgn.setTag("Event", "Match");
+		pgn.setTag("Date", date);
+		pgn.setTag("Round", String.valueOf(game.index));
+		pgn.setTag("White", game.aWhite ? a.name : b.name);
+		pgn.setTag("Black", game.aWhite ? b.name : a.name);
+		pgn.setTag("Termination", game.termination);
+		pgn.setResult(game.result);
+		return pgn;
+	}
+
+	/**
+	 * Gets the expected score of a player for an Elo difference.
+	 */
+	private static double getScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Gets the Elo difference matching an expected score.
+	 */
+	private static double getElo(double score) {
+		return 400 * Math.log10(score / (1 - score));
+	}
+
+	/**
+	 * @return The variance of the score of a single game.
+	 */
+	private double getVariance(double score) {
+		int games = wins + draws + losses;
+		return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) + losses * score * score)
+				/ games;
+	}
+
+	/**
+	 * Computes the log-likelihood ratio of {@code elo1} against {@code elo0} for
+	 * the results so far, with the normal approximation of the generalized SPRT.
+	 *
+	 * @return The ratio, 0 until the results vary.
+	 */
+	private double getLogLikelihoodRatio(double elo0, double elo1) {
+		int games = wins + draws + losses;
+		double score = (wins + draws / 2.0) / games;
+		double variance = getVariance(score);
+		if (variance == 0)
+			return 0;
+		double score0 = getScore(elo0);
+		double score1 = getScore(elo1);
+		return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+	}
+
+	/**
+	 * @return The results so far and the Elo difference with its 95% confidence
+	 *         interval.
+	 */
+	private String getSummary() {
+		int games = wins + draws + losses;
+		double score = (wins + draws / 2.0) / games;
+		double margin = 1.96 * Math.sqrt(getVariance(score) / games);
+		double low = getElo(clamp(score - margin));
+		double high = getElo(clamp(score + margin));
+		return String.format("Games: %d  +%d =%d -%d  Elo: %.1f +/- %.1f", games, wins, draws, losses,
+				getElo(clamp(score)), (high - low) / 2);
+	}
+
+	/**
+	 * Keeps a score away from 0 and 1 for its Elo difference to stay finite while
+	 * a side won every game.
+	 */
+	private static double clamp(double score) {
+		return Math.min(Math.max(score, 1e-3), 1 - 1e-3);
+	}
+
+}
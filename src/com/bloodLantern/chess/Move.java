@@ -4,6 +4,7 @@ import com.bloodLantern.chess.pieces.IfNotMoved;
 import com.bloodLantern.chess.pieces.King;
 import com.bloodLantern.chess.pieces.Pawn;
 import com.bloodLantern.chess.pieces.Piece;
+import com.bloodLantern.chess.pieces.Rook;
 
 /**
  * A Move object is used to represent a movement of a Piece to a Tile. It may be
@@ -23,6 +24,13 @@ public class Move {
 	private Piece enPassantPiece;
 	private Piece promotionPiece;
 	private int score;
+	/**
+	 * The state replaced by {@link #makeFullMove()}, put back by
+	 * {@link #unmakeFullMove()}.
+	 */
+	private Tile previousEnPassant;
+	private boolean previouslyMoved;
+	private Rook castlingRook;
 
 	/**
 	 * 
@@ -47,13 +55,17 @@ public class Move {
 	/**
 	 * Executing this method will cause the movement to be executed, that means
 	 * {@link #piece}'s {@link Piece#getTile() tile} will be set from
-	 * {@link #moveFrom} to {@link #moveTo}. This method also calls
+	 * {@link #moveFrom} to {@link #moveTo}. If a {@link #promotionPiece} is set,
+	 * it replaces the Pawn on {@link #moveTo}. This method also calls
 	 * {@link Chess#computeTileProtection()}.
 	 */
 	public void makeMove(boolean setXAndY) {
 		moveTo.setPiece(piece, setXAndY);
 		if (isEnPassant())
 			enPassantTile.setPiece(null, false);
+		if (promotionPiece != null && isPromotion())
+			// unmakeMove() puts the Pawn back, which removes the promoted Piece
+			moveTo.setPiece(promotionPiece, setXAndY);
 		Chess.getInstance().computeTileProtection();
 	}
 
@@ -72,6 +84,57 @@ public class Move {
 		Chess.getInstance().computeTileProtection();
 	}
 
+	/**
+	 * Executes this Move as {@link #makeMove(boolean)} does, and also updates
+	 * the state the next Moves depend on: the Rook of a castling is moved, the
+	 * {@code moved} flag of {@link #piece} is set and the en passant Tile is set
+	 * to the skipped Tile of a Pawn double step and cleared otherwise. Unlike
+	 * {@link #finalizeMove()}, this can be undone by {@link #unmakeFullMove()},
+	 * which is what the search needs.
+	 */
+	public void makeFullMove() {
+		Chess chess = Chess.getInstance();
+		Tile[][] tiles = chess.getTiles();
+		previousEnPassant = chess.getEnPassant();
+		castlingRook = null;
+		if (isCastle()) {
+			// Moved before makeMove() so that the Tile protection is only computed once
+			Tile corner = tiles[moveTo.getRow() > moveFrom.getRow() ? 7 : 0][moveFrom.getLine()];
+			if (corner.getPiece() instanceof Rook rook && !rook.isMoved()) {
+				castlingRook = rook;
+				tiles[(moveFrom.getRow() + moveTo.getRow()) / 2][moveFrom.getLine()].setPiece(rook, false);
+				rook.setMoved(true);
+			}
+		}
+		if (piece instanceof IfNotMoved inm) {
+			previouslyMoved = inm.isMoved();
+			inm.setMoved(true);
+		}
+		if (piece instanceof Pawn && Math.abs(moveTo.getLine() - moveFrom.getLine()) == 2)
+			chess.setEnPassant(tiles[moveTo.getRow()][(moveFrom.getLine() + moveTo.getLine()) / 2]);
+		else
+			chess.setEnPassant(null);
+		makeMove(false);
+	}
+
+	/**
+	 * The opposite operation of {@link #makeFullMove()}: the Pieces, the Rook of
+	 * a castling, the {@code moved} flags and the en passant Tile are all put
+	 * back.
+	 */
+	public void unmakeFullMove() {
+		Chess chess = Chess.getInstance();
+		if (castlingRook != null) {
+			chess.getTiles()[moveTo.getRow() > moveFrom.getRow() ? 7 : 0][moveFrom.getLine()].setPiece(castlingRook,
+					false);
+			castlingRook.setMoved(false);
+		}
+		if (piece instanceof IfNotMoved inm)
+			inm.setMoved(previouslyMoved);
+		chess.setEnPassant(previousEnPassant);
+		unmakeMove(false);
+	}
+
 	/**
 	 * Finalizes this Move. That means this method will first call
 	 * {@link #makeMove(boolean)} if {@link #madeMove()} returns false and then sets
@@ -83,6 +146,16 @@ public class Move {
 		if (!madeMove())
 			makeMove(true);
 		Chess chess = Chess.getInstance();
+		// Castling Moves chosen by an AI or a book only move the King, so move the
+		// Rook too if it is still in its corner
+		if (isCastle()) {
+			Tile corner = chess.getTiles()[moveTo.getRow() > moveFrom.getRow() ? 7 : 0][moveTo.getLine()];
+			if (corner.getPiece() instanceof Rook rook && !rook.isMoved()) {
+				chess.getTiles()[(moveFrom.getRow() + moveTo.getRow()) / 2][moveTo.getLine()].setPiece(rook, true);
+				rook.setMoved(true);
+				chess.computeTileProtection();
+			}
+		}
 		// Refreshes the fifty-move rule
 		if (moveToPiece == null)
 			chess.incrementHalfmoveClock();
@@ -111,7 +184,9 @@ public class Move {
 		if (piece instanceof Pawn pawn)
 			if (moveTo.getLine() == 0 || moveTo.getLine() == 7)
 				// Transform Pawn
-				if (chess.ai != null)
+				if (promotionPiece != null)
+					pawn.promote(promotionPiece);
+				else if (chess.ai != null)
 					if (chess.ai.isWhite() == chess.getTurn())
 						pawn.transform(chess.ai);
 					else
@@ -182,35 +257,36 @@ public class Move {
 	}
 
 	public boolean isCheckmate() {
-		boolean madeMove = false;
-		if (madeMove())
-			madeMove = true;
-		else
-			makeMove(false);
-		if (Chess.getInstance().checkWin(false) && !Chess.getInstance().isDraw()) {
-			if (!madeMove)
-				unmakeMove(false);
-			return true;
-		}
-		if (!madeMove)
-			unmakeMove(false);
-		return false;
+		return getStatus() == GameStatus.CHECKMATE;
 	}
 
+	/**
+	 * Checks if this Move stalemates the opponent or leaves too little material
+	 * to checkmate. The fifty-move rule and repetitions depend on the game
+	 * history, so they are left to {@link Chess#checkWin(boolean)}.
+	 */
 	public boolean isDraw() {
-		boolean madeMove = false;
-		if (madeMove())
-			madeMove = true;
-		else
+		GameStatus status = getStatus();
+		return status == GameStatus.STALEMATE || status == GameStatus.INSUFFICIENT_MATERIAL;
+	}
+
+	/**
+	 * Gets the status of the game for the opponent once this Move is made.
+	 */
+	private GameStatus getStatus() {
+		Chess chess = Chess.getInstance();
+		boolean opponent = !piece.isWhite();
+		boolean madeMove = madeMove();
+		if (!madeMove)
 			makeMove(false);
-		if (Chess.getInstance().checkWin(false) && Chess.getInstance().isDraw()) {
-			if (!madeMove)
-				unmakeMove(false);
-			return true;
-		}
+		GameStatus status;
+		if (!chess.hasLegalMove(opponent))
+			status = King.getEnemyKing(piece).isInDanger() ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+		else
+			status = chess.isInsufficientMaterial() ? GameStatus.INSUFFICIENT_MATERIAL : GameStatus.ONGOING;
 		if (!madeMove)
 			unmakeMove(false);
-		return false;
+		return status;
 	}
 	
 	public boolean isEnPassant() {
@@ -0,0 +1,92 @@
+package com.bloodLantern.chess;
+
+/**
+ * The integer array loops of the {@link NeuralNetwork}. The scalar version is
+ * always available and relies on HotSpot to vectorize its loops. When the
+ * {@code jdk.incubator.vector} module is present (the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}), {@link VectorKernels} is used
+ * instead. It is only loaded through reflection so that this class still works
+ * without that module.
+ *
+ * @author BloodLantern
+ */
+interface NetworkKernels {
+
+	/**
+	 * The kernels used by every network.
+	 */
+	NetworkKernels INSTANCE = load();
+
+	/**
+	 * Computes the dot product of {@code input} with a slice of {@code weights}.
+	 *
+	 * @param input   The first {@code length} values are used.
+	 * @param weights The weights, read from {@code offset}.
+	 * @param offset  The index of the first weight.
+	 * @param length  The number of values to multiply.
+	 * @return The sum of the products, wrapping on overflow.
+	 */
+	int dot(int[] input, int[] weights, int offset, int length);
+
+	/**
+	 * Adds or subtracts a slice of {@code weights} to {@code values}.
+	 *
+	 * @param values  The first {@code length} values are updated.
+	 * @param weights The weights, read from {@code offset}.
+	 * @param offset  The index of the first weight.
+	 * @param length  The number of values to update.
+	 * @param add     True to add the weights, false to subtract them.
+	 */
+	void update(int[] values, int[] weights, int offset, int length, boolean add);
+
+	/**
+	 * Getter for the name value, printed by the benchmarks.
+	 *
+	 * @return The name of these kernels.
+	 */
+	String getName();
+
+	private static NetworkKernels load() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+			try {
+				return (NetworkKernels) Class.forName("com.bloodLantern.chess.VectorKernels").getDeclaredConstructor()
+						.newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				System.err.println("Can't use the Vector API, using scalar loops: " + e);
+			}
+		return new Scalar();
+	}
+
+	/**
+	 * Plain loops, kept simple so that HotSpot vectorizes them.
+	 *
+	 * @author BloodLantern
+	 */
+	final class Scalar implements NetworkKernels {
+
+		@Override
+		public int dot(int[] input, int[] weights, int offset, int length) {
+			int sum = 0;
+			for (int i = 0; i < length; i++)
+				sum += input[i] * weights[offset + i];
+			return sum;
+		}
+
+		@Override
+		public void update(int[] values, int[] weights, int offset, int length, boolean add) {
+			if (add)
+				for (int i = 0; i < length; i++)
+					values[i] += weights[offset + i];
+			else
+				for (int i = 0; i < length; i++)
+					values[i] -= weights[offset + i];
+		}
+
+		@Override
+		public String getName() {
+			return "scalar";
+		}
+
+	}
+
+}
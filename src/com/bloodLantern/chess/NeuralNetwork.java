@@ -0,0 +1,256 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Efficiently updatable neural network evaluation. The first layer maps the 768
+ * Piece/square features of each side's point of view to an {@link Accumulator}
+ * that is updated incrementally whenever a Tile changes its Piece, so only the
+ * small dense layers are computed for each evaluation.
+ * <p>
+ * The network file is a big-endian binary file made of:
+ * <ul>
+ * <li>The magic {@code int} {@value #MAGIC}</li>
+ * <li>The {@code int} accumulator size {@code H} and the {@code int} hidden
+ * layer size {@code L}</li>
+ * <li>The {@code int} output divisor used to convert the output to
+ * centipawns</li>
+ * <li>{@code 768 * H} feature weights then {@code H} biases, as
+ * {@code short}s</li>
+ * <li>{@code L * 2H} hidden weights then {@code L} biases, as
+ * {@code short}s. The hidden weights must fit in a {@code byte} so that the
+ * hidden layer sums can't overflow</li>
+ * <li>{@code L} output weights then 1 bias, as {@code int}s</li>
+ * </ul>
+ *
+ * @author BloodLantern
+ */
+public final class NeuralNetwork {
+
+	/**
+	 * Magic number at the start of every network file.
+	 */
+	public static final int MAGIC = 0x424C4E4E;
+	/**
+	 * Number of input features of each point of view.
+	 */
+	static final int FEATURES = 768;
+	/**
+	 * Activations of the accumulator are clipped to {@code [0, ACTIVATION_MAX]}.
+	 */
+	private static final int ACTIVATION_MAX = 255;
+	/**
+	 * Right shift applied after the hidden layer.
+	 */
+	private static final int HIDDEN_SHIFT = 6;
+	/**
+	 * Activations of the hidden layer are clipped to {@code [0, HIDDEN_MAX]}.
+	 */
+	private static final int HIDDEN_MAX = 127;
+
+	private final int accumulatorSize;
+	private final int hiddenSize;
+	private final int outputDivisor;
+	/**
+	 * Feature weights, {@code accumulatorSize} contiguous values per feature.
+	 */
+	private final int[] featureWeights;
+	private final int[] featureBiases;
+	/**
+	 * Hidden weights, {@code 2 * accumulatorSize} contiguous values per neuron.
+	 */
+	private final int[] hiddenWeights;
+	private final int[] hiddenBiases;
+	private final int[] outputWeights;
+	private final int outputBias;
+
+	private NeuralNetwork(int accumulatorSize, int hiddenSize, int outputDivisor) {
+		if (accumulatorSize <= 0 || hiddenSize <= 0 || outputDivisor <= 0)
+			throw new IllegalArgumentException("Invalid network dimensions: " + accumulatorSize + "x" + hiddenSize
+					+ ", divisor " + outputDivisor + ".");
+		this.accumulatorSize = accumulatorSize;
+		this.hiddenSize = hiddenSize;
+		this.outputDivisor = outputDivisor;
+		featureWeights = new int[FEATURES * accumulatorSize];
+		featureBiases = new int[accumulatorSize];
+		hiddenWeights = new int[hiddenSize * 2 * accumulatorSize];
+		hiddenBiases = new int[hiddenSize];
+		outputWeights = new int[hiddenSize];
+		outputBias = 0;
+	}
+
+	private NeuralNetwork(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a network file.");
+		accumulatorSize = in.readInt();
+		hiddenSize = in.readInt();
+		outputDivisor = in.readInt();
+		if (accumulatorSize <= 0 || accumulatorSize > 4096 || hiddenSize <= 0 || hiddenSize > 1024
+				|| outputDivisor <= 0)
+			throw new IOException("Invalid network dimensions: " + accumulatorSize + "x" + hiddenSize + ", divisor "
+					+ outputDivisor + ".");
+		featureWeights = readShorts(in, FEATURES * accumulatorSize);
+		featureBiases = readShorts(in, accumulatorSize);
+		hiddenWeights = readShorts(in, hiddenSize * 2 * accumulatorSize);
+		for (int weight : hiddenWeights)
+			if (weight < Byte.MIN_VALUE || weight > Byte.MAX_VALUE)
+				throw new IOException("Hidden weight out of range: " + weight + ".");
+		hiddenBiases = readShorts(in, hiddenSize);
+		outputWeights = new int[hiddenSize];
+		for (int i = 0; i < hiddenSize; i++)
+			outputWeights[i] = in.readInt();
+		outputBias = in.readInt();
+	}
+
+	private static int[] readShorts(DataInputStream in, int count) throws IOException {
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++)
+			result[i] = in.readShort();
+		return result;
+	}
+
+	/**
+	 * Loads a network from a local file.
+	 *
+	 * @param path The network file, in the format described by this class.
+	 * @return The loaded network.
+	 * @throws IOException If the file can't be read or isn't a valid network.
+	 */
+	public static NeuralNetwork load(Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			return new NeuralNetwork(in);
+		}
+	}
+
+	/**
+	 * Creates a network with small random weights. Its evaluations are
+	 * meaningless but it costs exactly as much as a trained one, which makes it
+	 * useful for benchmarks.
+	 *
+	 * @param accumulatorSize The accumulator size.
+	 * @param hiddenSize      The hidden layer size.
+	 * @param seed            The random seed.
+	 * @return The created network.
+	 */
+	public static NeuralNetwork random(int accumulatorSize, int hiddenSize, long seed) {
+		NeuralNetwork network = new NeuralNetwork(accumulatorSize, hiddenSize, 64);
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int i = 0; i < network.featureWeights.length; i++)
+			network.featureWeights[i] = random.nextInt(-32, 33);
+		for (int i = 0; i < network.hiddenWeights.length; i++)
+			network.hiddenWeights[i] = random.nextInt(-64, 65);
+		for (int i = 0; i < hiddenSize; i++)
+			network.outputWeights[i] = random.nextInt(-256, 257);
+		return network;
+	}
+
+	/**
+	 * Gets the feature index of {@code piece} standing on {@code tile} from the
+	 * point of view of {@code white}.
+	 */
+	private static int getFeature(boolean white, Piece piece, Tile tile) {
+		int side = piece.isWhite() == white ? 0 : 1;
+		// Each point of view sees its own back rank as the first one
+		int square = white ? 8 * (7 - tile.getLine()) + tile.getRow() : 8 * tile.getLine() + tile.getRow();
+		return ((side * 6 + piece.getType()) << 6) + square;
+	}
+
+	/**
+	 * Creates an empty accumulator for this network.
+	 *
+	 * @return The new accumulator, holding the feature biases only.
+	 */
+	public Accumulator newAccumulator() {
+		return new Accumulator();
+	}
+
+	/**
+	 * Computes the dense layers of this network.
+	 *
+	 * @param accumulator The up to date accumulator of the board.
+	 * @param white       The point of view to evaluate from.
+	 * @return The evaluation in centipawns, positive if {@code white} is winning.
+	 */
+	public int evaluate(Accumulator accumulator, boolean white) {
+		int[] us = white ? accumulator.white : accumulator.black;
+		int[] them = white ? accumulator.black : accumulator.white;
+		int[] input = accumulator.input;
+		// Clipped ReLU of both points of view, ours first
+		for (int i = 0; i < accumulatorSize; i++)
+			input[i] = Math.min(Math.max(us[i], 0), ACTIVATION_MAX);
+		for (int i = 0; i < accumulatorSize; i++)
+			input[accumulatorSize + i] = Math.min(Math.max(them[i], 0), ACTIVATION_MAX);
+		int inputSize = 2 * accumulatorSize;
+		NetworkKernels kernels = NetworkKernels.INSTANCE;
+		long output = outputBias;
+		for (int neuron = 0; neuron < hiddenSize; neuron++) {
+			int sum = kernels.dot(input, hiddenWeights, neuron * inputSize, inputSize);
+			sum = (sum >> HIDDEN_SHIFT) + hiddenBiases[neuron];
+			output += (long) Math.min(Math.max(sum, 0), HIDDEN_MAX) * outputWeights[neuron];
+		}
+		return (int) (output / outputDivisor);
+	}
+
+	/**
+	 * Both points of view of the first layer of a board, updated each time a
+	 * Piece is added or removed.
+	 *
+	 * @author BloodLantern
+	 */
+	public final class Accumulator {
+
+		private final int[] white;
+		private final int[] black;
+		/**
+		 * Scratch buffer for the activations, kept to avoid allocating for each
+		 * evaluation.
+		 */
+		private final int[] input;
+
+		private Accumulator() {
+			white = Arrays.copyOf(featureBiases, accumulatorSize);
+			black = Arrays.copyOf(featureBiases, accumulatorSize);
+			input = new int[2 * accumulatorSize];
+		}
+
+		/**
+		 * Adds the features of {@code piece} standing on {@code tile}.
+		 */
+		void add(Piece piece, Tile tile) {
+			update(white, getFeature(true, piece, tile), true);
+			update(black, getFeature(false, piece, tile), true);
+		}
+
+		/**
+		 * Removes the features of {@code piece} standing on {@code tile}.
+		 */
+		void remove(Piece piece, Tile tile) {
+			update(white, getFeature(true, piece, tile), false);
+			update(black, getFeature(false, piece, tile), false);
+		}
+
+		private void update(int[] values, int feature, boolean add) {
+			NetworkKernels.INSTANCE.update(values, featureWeights, feature * accumulatorSize, accumulatorSize, add);
+		}
+
+		/**
+		 * Checks if this accumulator holds the same values as {@code other}.
+		 *
+		 * @param other The accumulator to compare with.
+		 * @return True if both points of view are equal.
+		 */
+		boolean matches(Accumulator other) {
+			return Arrays.equals(white, other.white) && Arrays.equals(black, other.black);
+		}
+
+	}
+
+}
@@ -0,0 +1,464 @@
+package com.bloodLantern.chess;
+
+import com.bloodLantern.chess.pieces.Bishop;
+import com.bloodLantern.chess.pieces.King;
+import com.bloodLantern.chess.pieces.Knight;
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+import com.bloodLantern.chess.pieces.Queen;
+import com.bloodLantern.chess.pieces.Rook;
+
+/**
+ * Conversions between Moves and their text notations: Standard Algebraic
+ * Notation as used by PGN and the long algebraic notation of the UCI protocol.
+ * <p>
+ * Both directions read the attack data of the Tiles (see
+ * {@link Chess#computeTileProtection()}) instead of generating every legal Move:
+ * the Pieces that can reach a Tile are the ones protecting it, and whether a
+ * Move leaves a King attacked is told by looking at the board as it would be
+ * after the Move, without making it. Only the {@code #} suffix still makes the
+ * Move, and only for Moves that check.
+ *
+ * @author BloodLantern
+ */
+public final class Notation {
+
+	private static final int[][] KNIGHT_OFFSETS = { { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 },
+			{ -2, 1 }, { -1, 2 } };
+	private static final int[][] KING_OFFSETS = { { 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, -1 }, { -1, -1 },
+			{ -1, 0 }, { -1, 1 } };
+	/**
+	 * The Tiles holding no Piece in {@link After}.
+	 */
+	private static final int EMPTY = -1;
+
+	private Notation() {
+	}
+
+	/**
+	 * Finds the legal Move written {@code san} in Standard Algebraic Notation.
+	 *
+	 * @param chess The board, its tile protection being up to date.
+	 * @param white The side to move.
+	 * @param san   The Move, for example {@code Nbd7}, {@code exd5},
+	 *              {@code e8=Q+} or {@code O-O}.
+	 * @return The matching legal Move or null if there isn't exactly one.
+	 */
+	public static Move parseSan(Chess chess, boolean white, String san) {
+		int end = san.length();
+		while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0)
+			end--;
+		san = san.substring(0, end);
+		if (san.isEmpty())
+			return null;
+
+		// Castling
+		if (san.equals("O-O") || san.equals("0-0") || san.equals("O-O-O") || san.equals("0-0-0"))
+			return findCastle(chess, white, san.length() == 3 ? 6 : 2);
+
+		int type = Piece.PAWN;
+		int start = 0;
+		int index = "PNBRQK".indexOf(san.charAt(0));
+		if (index > 0) {
+			type = index;
+			start = 1;
+		}
+		// Promotion
+		int promotion = -1;
+		if (end >= 2 && "NBRQ".indexOf(san.charAt(end - 1)) >= 0) {
+			promotion = "PNBRQ".indexOf(san.charAt(end - 1));
+			end--;
+			if (san.charAt(end - 1) == '=')
+				end--;
+		}
+		// Destination
+		if (end - start < 2)
+			return null;
+		int toRow = getRow(san.charAt(end - 2));
+		int toLine = getLine(san.charAt(end - 1));
+		if (toRow < 0 || toLine < 0)
+			return null;
+		// Disambiguation
+		int fromRow = -1;
+		int fromLine = -1;
+		for (int i = start; i < end - 2; i++) {
+			char c = san.charAt(i);
+			if (c == 'x' || c == ':' || c == '-')
+				continue;
+			if (getRow(c) >= 0)
+				fromRow = getRow(c);
+			else if (getLine(c) >= 0)
+				fromLine = getLine(c);
+			else
+				return null;
+		}
+
+		Tile[][] tiles = chess.getTiles();
+		Tile to = tiles[toRow][toLine];
+		Move result = null;
+		if (type == Piece.PAWN) {
+			// A Pawn comes from the line behind the destination, or two lines behind
+			int back = white ? 1 : -1;
+			int line = toLine + back;
+			if (line < 0 || line > 7)
+				return null;
+			Piece pawn;
+			if (fromRow >= 0 && fromRow != toRow)
+				pawn = tiles[fromRow][line].getPiece();
+			else {
+				pawn = tiles[toRow][line].getPiece();
+				if (pawn == null && line + back >= 0 && line + back <= 7)
+					pawn = tiles[toRow][line + back].getPiece();
+			}
+			if (pawn instanceof Pawn && pawn.isWhite() == white
+					&& (fromLine < 0 || pawn.getTile().getLine() == fromLine))
+				result = findMove(chess, pawn, to);
+		} else
+			for (Piece piece : to.getProtecting()) {
+				Tile from = piece.getTile();
+				if (piece.getType() != type || piece.isWhite() != white)
+					continue;
+				if (fromRow >= 0 && from.getRow() != fromRow || fromLine >= 0 && from.getLine() != fromLine)
+					continue;
+				Move move = findMove(chess, piece, to);
+				if (move == null)
+					continue;
+				if (result != null)
+					// Ambiguous
+					return null;
+				result = move;
+			}
+		if (result != null && promotion >= 0) {
+			if (!(result.getPiece() instanceof Pawn pawn) || !result.isPromotion())
+				return null;
+			result.setPromotionPiece(createPromotion(pawn, promotion));
+		}
+		return result;
+	}
+
+	/**
+	 * Writes a legal Move in Standard Algebraic Notation, with the {@code +} or
+	 * {@code #} suffix if it checks or mates.
+	 *
+	 * @param chess The board, on which {@code move} isn't made yet and whose tile
+	 *              protection is up to date.
+	 * @param move  The Move. A promoting Move without promotion Piece is written
+	 *              as a promotion into a Queen.
+	 * @return The Move, for example {@code Nbd7}, {@code exd5} or
+	 *         {@code e8=Q+}.
+	 */
+	public static String toSan(Chess chess, Move move) {
+		StringBuilder san = new StringBuilder(8);
+		Piece piece = move.getPiece();
+		Tile from = move.getMoveFrom();
+		Tile to = move.getMoveTo();
+		boolean white = piece.isWhite();
+		if (move.isCastle())
+			san.append(to.getRow() > from.getRow() ? "O-O" : "O-O-O");
+		else {
+			boolean capture = move.isCapture() || move.isEnPassant();
+			if (piece instanceof Pawn) {
+				if (capture)
+					san.append((char) ('a' + from.getRow()));
+			} else {
+				san.append(Character.toUpperCase(piece.getFENValue()));
+				// Other Pieces of the same type that can legally reach the same Tile
+				boolean ambiguous = false;
+				boolean sameRow = false;
+				boolean sameLine = false;
+				Tile king = getKing(chess, white).getTile();
+				for (Piece other : to.getProtecting()) {
+					if (other == piece || other.getType() != piece.getType() || other.isWhite() != white)
+						continue;
+					Tile otherFrom = other.getTile();
+					if (new After(chess, other, to, other.getType()).isAttacked(king, !white))
+						continue;
+					ambiguous = true;
+					sameRow |= otherFrom.getRow() == from.getRow();
+					sameLine |= otherFrom.getLine() == from.getLine();
+				}
+				if (ambiguous && (!sameRow || sameLine))
+					san.append((char) ('a' + from.getRow()));
+				if (ambiguous && sameRow)
+					san.append((char) ('8' - from.getLine()));
+			}
+			if (capture)
+				san.append('x');
+			san.append((char) ('a' + to.getRow())).append((char) ('8' - to.getLine()));
+			if (move.isPromotion())
+				san.append('=').append(move.getPromotionPiece() == null ? 'Q'
+						: Character.toUpperCase(move.getPromotionPiece().getFENValue()));
+		}
+		if (givesCheck(chess, move))
+			san.append(move.isCheckmate() ? '#' : '+');
+		return san.toString();
+	}
+
+	/**
+	 * Finds the legal Move written {@code uci} in the long algebraic notation of
+	 * the UCI protocol.
+	 *
+	 * @param chess The board, its tile protection being up to date.
+	 * @param white The side to move.
+	 * @param uci   The Move, for example {@code e2e4} or {@code e7e8q}. Castling
+	 *              is written as the King Move, for example {@code e1g1}.
+	 * @return The matching legal Move or null if there isn't any. A promoting
+	 *         Move must have its promotion Piece.
+	 */
+	public static Move parseUci(Chess chess, boolean white, String uci) {
+		if (uci.length() != 4 && uci.length() != 5)
+			return null;
+		int fromRow = getRow(uci.charAt(0));
+		int fromLine = getLine(uci.charAt(1));
+		int toRow = getRow(uci.charAt(2));
+		int toLine = getLine(uci.charAt(3));
+		int promotion = uci.length() == 5 ? "pnbrq".indexOf(uci.charAt(4)) : -1;
+		if (fromRow < 0 || fromLine < 0 || toRow < 0 || toLine < 0 || uci.length() == 5 && promotion <= 0)
+			return null;
+		Tile[][] tiles = chess.getTiles();
+		Piece piece = tiles[fromRow][fromLine].getPiece();
+		if (piece == null || piece.isWhite() != white)
+			return null;
+		Move move;
+		if (piece instanceof King && fromRow == 4 && Math.abs(toRow - fromRow) == 2 && toLine == fromLine)
+			move = findCastle(chess, white, toRow);
+		else
+			move = findMove(chess, piece, tiles[toRow][toLine]);
+		if (move == null || move.isPromotion() != promotion > 0)
+			return null;
+		if (promotion > 0)
+			move.setPromotionPiece(createPromotion((Pawn) piece, promotion));
+		return move;
+	}
+
+	/**
+	 * Writes a Move in the long algebraic notation of the UCI protocol.
+	 *
+	 * @param move The Move. A promoting Move without promotion Piece is written
+	 *             as a promotion into a Queen.
+	 * @return The Move, for example {@code e2e4} or {@code e7e8q}. Castling is
+	 *         written as the King Move, for example {@code e1g1}.
+	 */
+	public static String toUci(Move move) {
+		Tile from = move.getMoveFrom();
+		Tile to = move.getMoveTo();
+		StringBuilder uci = new StringBuilder(5).append((char) ('a' + from.getRow()))
+				.append((char) ('8' - from.getLine())).append((char) ('a' + to.getRow()))
+				.append((char) ('8' - to.getLine()));
+		if (move.isPromotion())
+			uci.append(move.getPromotionPiece() == null ? 'q'
+					: Character.toLowerCase(move.getPromotionPiece().getFENValue()));
+		return uci.toString();
+	}
+
+	/**
+	 * Checks if a Move checks the enemy King, directly or by discovery, without
+	 * making it.
+	 *
+	 * @param chess The board, on which {@code move} isn't made yet.
+	 * @param move  The Move. A promoting Move without promotion Piece is checked
+	 *              as a promotion into a Queen.
+	 * @return True if the enemy King is attacked once {@code move} is made.
+	 */
+	public static boolean givesCheck(Chess chess, Move move) {
+		Piece piece = move.getPiece();
+		int type = piece.getType();
+		if (move.isPromotion())
+			type = move.getPromotionPiece() == null ? Piece.QUEEN : move.getPromotionPiece().getType();
+		return new After(chess, piece, move.getMoveTo(), type).isAttacked(getKing(chess, !piece.isWhite()).getTile(),
+				piece.isWhite());
+	}
+
+	/**
+	 * Finds the legal Move of a Piece to a Tile. Whether the Piece can go there
+	 * is read from the tile protection, except for Pawns advancing, and whether
+	 * its King is safe afterwards from {@link After}. Castling isn't handled.
+	 *
+	 * @return The Move or null if it isn't legal.
+	 */
+	private static Move findMove(Chess chess, Piece piece, Tile to) {
+		boolean white = piece.isWhite();
+		Tile from = piece.getTile();
+		Piece target = to.getPiece();
+		if (target != null && (!target.isEnemy(white) || target instanceof King))
+			return null;
+		if (piece instanceof Pawn pawn) {
+			int forward = white ? -1 : 1;
+			int rows = to.getRow() - from.getRow();
+			int lines = to.getLine() - from.getLine();
+			if (rows == 0) {
+				if (target != null)
+					return null;
+				if (lines != forward && (lines != 2 * forward || !pawn.isOnStartingLine()
+						|| chess.getTiles()[from.getRow()][from.getLine() + forward].getPiece() != null))
+					return null;
+			} else if (Math.abs(rows) != 1 || lines != forward || target == null && to != chess.getEnPassant())
+				return null;
+		} else if (!to.getProtecting().contains(piece))
+			return null;
+		King king = getKing(chess, white);
+		if (new After(chess, piece, to, piece.getType()).isAttacked(piece == king ? to : king.getTile(), !white))
+			return null;
+		return new Move(piece, to);
+	}
+
+	/**
+	 * Finds the legal castling Move towards a row. Castling is rare enough to be
+	 * left to the King's own Move generation.
+	 *
+	 * @param row The row the King ends on: 6 on the King side, 2 on the Queen
+	 *            side.
+	 * @return The Move or null if it isn't legal.
+	 */
+	private static Move findCastle(Chess chess, boolean white, int row) {
+		King king = getKing(chess, white);
+		if (king.getTile().getRow() != 4)
+			return null;
+		for (Move move : chess.getPossibleMoves(king))
+			if (move.getMoveTo().getRow() == row)
+				return move;
+		return null;
+	}
+
+	private static King getKing(Chess chess, boolean white) {
+		return white ? chess.getWhiteKing() : chess.getBlackKing();
+	}
+
+	/**
+	 * The board as it would be once a Move is made, read without making it. The
+	 * starting Tile is empty, the destination holds the moving or promoted
+	 * Piece, a Pawn taken en passant is gone and a castling Rook is on its new
+	 * Tile. The Pieces are read as their type, plus 8 for black ones.
+	 */
+	private static final class After {
+
+		private final Tile[][] tiles;
+		private final Tile from;
+		private final Tile to;
+		private final Tile emptied;
+		private final Tile rookFrom;
+		private final Tile rookTo;
+		private final int placed;
+		private final int rook;
+
+		/**
+		 * @param piece The moving Piece, still on its Tile.
+		 * @param to    Where it goes.
+		 * @param type  The type of the Piece on {@code to} afterwards.
+		 */
+		After(Chess chess, Piece piece, Tile to, int type) {
+			tiles = chess.getTiles();
+			from = piece.getTile();
+			this.to = to;
+			placed = code(type, piece.isWhite());
+			int rows = to.getRow() - from.getRow();
+			if (piece instanceof Pawn && rows != 0 && to.getPiece() == null && to == chess.getEnPassant())
+				emptied = tiles[to.getRow()][from.getLine()];
+			else
+				emptied = null;
+			if (piece instanceof King && Math.abs(rows) == 2) {
+				rookFrom = tiles[rows > 0 ? 7 : 0][from.getLine()];
+				rookTo = tiles[from.getRow() + rows / 2][from.getLine()];
+				rook = code(Piece.ROOK, piece.isWhite());
+			} else {
+				rookFrom = rookTo = null;
+				rook = EMPTY;
+			}
+		}
+
+		private static int code(int type, boolean white) {
+			return white ? type : type + 8;
+		}
+
+		private int get(int row, int line) {
+			Tile tile = tiles[row][line];
+			if (tile == to)
+				return placed;
+			if (tile == rookTo)
+				return rook;
+			if (tile == from || tile == emptied || tile == rookFrom)
+				return EMPTY;
+			Piece piece = tile.getPiece();
+			return piece == null ? EMPTY : code(piece.getType(), piece.isWhite());
+		}
+
+		/**
+		 * @param tile  The attacked Tile.
+		 * @param white The attacking side.
+		 * @return True if a Piece of {@code white} attacks {@code tile}.
+		 */
+		boolean isAttacked(Tile tile, boolean white) {
+			int row = tile.getRow();
+			int line = tile.getLine();
+			// Remember that white Pawns attack towards the lower lines
+			int pawnLine = white ? line + 1 : line - 1;
+			if (pawnLine >= 0 && pawnLine <= 7)
+				for (int x = -1; x < 3; x += 2)
+					if (row + x >= 0 && row + x <= 7 && get(row + x, pawnLine) == code(Piece.PAWN, white))
+						return true;
+			if (isAttackedByStep(row, line, KNIGHT_OFFSETS, code(Piece.KNIGHT, white))
+					|| isAttackedByStep(row, line, KING_OFFSETS, code(Piece.KING, white)))
+				return true;
+			int rook = code(Piece.ROOK, white);
+			int bishop = code(Piece.BISHOP, white);
+			int queen = code(Piece.QUEEN, white);
+			for (int[] direction : KING_OFFSETS) {
+				boolean diagonal = direction[0] != 0 && direction[1] != 0;
+				int x = row + direction[0];
+				int y = line + direction[1];
+				for (; x >= 0 && x <= 7 && y >= 0 && y <= 7; x += direction[0], y += direction[1]) {
+					int piece = get(x, y);
+					if (piece == EMPTY)
+						continue;
+					if (piece == queen || piece == (diagonal ? bishop : rook))
+						return true;
+					break;
+				}
+			}
+			return false;
+		}
+
+		private boolean isAttackedByStep(int row, int line, int[][] offsets, int attacker) {
+			for (int[] offset : offsets) {
+				int x = row + offset[0];
+				int y = line + offset[1];
+				if (x >= 0 && x <= 7 && y >= 0 && y <= 7 && get(x, y) == attacker)
+					return true;
+			}
+			return false;
+		}
+
+	}
+
+	/**
+	 * Creates the Piece that {@code pawn} promotes into.
+	 *
+	 * @param pawn The promoting Pawn.
+	 * @param type One of {@link Piece#KNIGHT}, {@link Piece#BISHOP},
+	 *             {@link Piece#ROOK} or {@link Piece#QUEEN}.
+	 * @return The new Piece, not on the board yet.
+	 */
+	static Piece createPromotion(Pawn pawn, int type) {
+		return switch (type) {
+		case Piece.KNIGHT -> new Knight(pawn);
+		case Piece.BISHOP -> new Bishop(pawn);
+		case Piece.ROOK -> new Rook(pawn);
+		default -> new Queen(pawn);
+		};
+	}
+
+	/**
+	 * @return The row of a file letter, or -1 if {@code c} isn't one.
+	 */
+	static int getRow(char c) {
+		return c >= 'a' && c <= 'h' ? c - 'a' : -1;
+	}
+
+	/**
+	 * @return The line of a rank digit, or -1 if {@code c} isn't one.
+	 */
+	static int getLine(char c) {
+		return c >= '1' && c <= '8' ? '8' - c : -1;
+	}
+
+}
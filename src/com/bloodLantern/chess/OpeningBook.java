@@ -0,0 +1,177 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.bloodLantern.chess.pieces.King;
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Reader of Polyglot {@code .bin} opening books. The file is memory-mapped so
+ * opening even a huge book doesn't read it, and the entries of a position are
+ * found with a binary search on their sorted keys.
+ * <p>
+ * Each entry is 16 big-endian bytes: the position key ({@code long}), the Move
+ * ({@code short}), its weight ({@code short}) and a learning value
+ * ({@code int}) that is ignored.
+ *
+ * @author BloodLantern
+ */
+public final class OpeningBook {
+
+	/**
+	 * Size of an entry in bytes.
+	 */
+	static final int ENTRY_SIZE = 16;
+
+	/**
+	 * Polyglot promotion codes, indexed by {@link Piece#getType()}.
+	 */
+	private static final int[] PROMOTION_CODES = { 0, 1, 2, 3, 4, 0 };
+
+	private final MappedByteBuffer buffer;
+	private final int entries;
+
+	/**
+	 * A Move found in the book for a position.
+	 *
+	 * @param move   The Polyglot encoded Move.
+	 * @param weight How often this Move should be chosen relatively to the
+	 *               others.
+	 */
+	public record Entry(int move, int weight) {
+	}
+
+	/**
+	 * Opens an opening book.
+	 *
+	 * @param path The Polyglot book file.
+	 * @throws IOException If the file can't be mapped or isn't a valid book.
+	 */
+	public OpeningBook(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size % ENTRY_SIZE != 0)
+				throw new IOException("The book size must be a multiple of " + ENTRY_SIZE + " bytes.");
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Books over 2 GB are not supported.");
+			// The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		entries = buffer.capacity() / ENTRY_SIZE;
+		if (!Zobrist.isStandard())
+			System.err.println("Not the standard Polyglot keys: only books built with the same keys can be read");
+	}
+
+	/**
+	 * Gets every Move stored for a position.
+	 *
+	 * @param key The Polyglot hash of the position.
+	 * @return The entries of that position, empty if it isn't in the book.
+	 */
+	public List<Entry> getEntries(long key) {
+		// Finds the first entry with this key
+		int low = 0;
+		int high = entries;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(getKey(middle), key) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		List<Entry> result = new ArrayList<>();
+		for (int i = low; i < entries && getKey(i) == key; i++) {
+			int offset = i * ENTRY_SIZE;
+			result.add(new Entry(buffer.getShort(offset + 8) & 0xFFFF, buffer.getShort(offset + 10) & 0xFFFF));
+		}
+		return result;
+	}
+
+	private long getKey(int index) {
+		return buffer.getLong(index * ENTRY_SIZE);
+	}
+
+	/**
+	 * Chooses a book Move for the current position of {@code chess}, with a
+	 * probability proportional to its weight.
+	 *
+	 * @param chess  The board.
+	 * @param white  The side to move.
+	 * @param random The random generator to use.
+	 * @return A legal Move of the book or null if the position isn't in the book.
+	 */
+	public Move chooseMove(Chess chess, boolean white, Random random) {
+		List<Entry> entries = getEntries(chess.getPositionHash(white));
+		int total = 0;
+		for (Entry entry : entries)
+			total += entry.weight();
+		if (total == 0)
+			return null;
+		int choice = random.nextInt(total);
+		for (Entry entry : entries) {
+			choice -= entry.weight();
+			if (choice < 0)
+				return decodeMove(chess, white, entry.move());
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the legal Move matching a Polyglot encoded Move. The promotion Piece
+	 * of a promoting Move is set from the encoding.
+	 *
+	 * @param chess The board.
+	 * @param white The side to move.
+	 * @param move  The Polyglot encoded Move.
+	 * @return The legal Move or null if there isn't any matching one.
+	 */
+	public static Move decodeMove(Chess chess, boolean white, int move) {
+		for (Move legal : chess.getPossibleMoves(white))
+			if (encodeMove(legal) == (move & 0xFFF)) {
+				// The promotion codes are the Piece types
+				int promotion = move >>> 12 & 7;
+				if (promotion != 0 && legal.isPromotion() && legal.getPiece() instanceof Pawn pawn)
+					legal.setPromotionPiece(Notation.createPromotion(pawn, promotion));
+				else if (promotion != 0)
+					continue;
+				return legal;
+			}
+		return null;
+	}
+
+	/**
+	 * Encodes a Move the Polyglot way: the destination file and rank on bits 0-5,
+	 * the starting ones on bits 6-11 and the promotion on bits 12-14. Castling is
+	 * encoded as the King taking its own Rook.
+	 *
+	 * @param move The Move to encode.
+	 * @return The Polyglot encoded Move.
+	 */
+	public static int encodeMove(Move move) {
+		Tile from = move.getMoveFrom();
+		Tile to = move.getMoveTo();
+		int toRow = to.getRow();
+		if (move.getPiece() instanceof King && Math.abs(toRow - from.getRow()) == 2)
+			toRow = toRow > from.getRow() ? 7 : 0;
+		int result = toRow | (7 - to.getLine()) << 3 | from.getRow() << 6 | (7 - from.getLine()) << 9;
+		if (move.getPromotionPiece() != null)
+			result |= PROMOTION_CODES[move.getPromotionPiece().getType()] << 12;
+		return result;
+	}
+
+	/**
+	 * @return The number of entries of this book.
+	 */
+	public int size() {
+		return entries;
+	}
+
+}
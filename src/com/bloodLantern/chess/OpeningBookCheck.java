@@ -0,0 +1,154 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Command-line check of the {@link OpeningBook} reader against a small book
+ * generated by the {@link BookBuilder} from a few known games. It checks the
+ * entries and weights found for a position, the Move chosen from the book and
+ * the decoding of a promotion. When the standard Polyglot keys are loaded, the
+ * position hashes are also checked against the test vectors of the Polyglot
+ * book format specification. Throws an {@link IllegalStateException} on the
+ * first mismatch.
+ * <p>
+ * Arguments: {@code zobrist=<path>} for the keys to load (default: the ones
+ * chosen by {@link Zobrist}). The PGN and the book are written to a temporary
+ * directory which is deleted afterwards.
+ *
+ * @author BloodLantern
+ */
+public final class OpeningBookCheck {
+
+	/**
+	 * The games the book is built from. Weights are twice the wins plus the draws
+	 * of the side that played the Move, so 1. e4 is worth 2 + 1 + 2 while 1. d4
+	 * and every black reply to 1. e4 but 1... c5 are worth nothing and left out.
+	 */
+	private static final String GAMES = """
+			[Result "1-0"]
+
+			1. e4 e5 2. Nf3 Nc6 1-0
+
+			[Result "1/2-1/2"]
+
+			1. e4 c5 1/2-1/2
+
+			[Result "0-1"]
+
+			1. d4 d5 0-1
+
+			[Result "1-0"]
+
+			1. e4 d5 2. exd5 c6 3. dxc6 Nf6 4. cxb7 Bd7 5. bxa8=Q 1-0
+			""";
+
+	/**
+	 * Test vectors of the Polyglot book format specification: the Moves played
+	 * from the starting position and the hash of the position they lead to.
+	 */
+	private static final String[][] VECTORS = { { "", "463b96181691fc9c" }, { "e4", "823c9b50fd114196" },
+			{ "e4 d5", "0756b94461c50fb0" }, { "e4 d5 e5", "662fafb965db29d4" },
+			{ "e4 d5 e5 f5", "22a48b5a8e47ff78" }, { "e4 d5 e5 f5 Ke2", "652a607ca3f242c1" },
+			{ "e4 d5 e5 f5 Ke2 Kf7", "00fdd303c946bdd9" }, { "a4 b5 h4 b4 c4", "3c8123ea7b067637" },
+			{ "a4 b5 h4 b4 c4 bxc3 Ra3", "5c3f9b829b279560" } };
+
+	private OpeningBookCheck() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		for (String arg : args)
+			if (arg.startsWith("zobrist="))
+				Zobrist.load(Path.of(arg.substring(8)));
+			else
+				throw new IllegalArgumentException("Unknown argument: " + arg);
+
+		expect("starting position hash", new Chess(Chess.STARTING_FEN).getPositionHash(true),
+				Zobrist.getStartingHash());
+		if (Zobrist.isStandard())
+			checkVectors();
+		else
+			System.out.println("Not the standard Polyglot keys, skipping the specification test vectors");
+
+		Path directory = Files.createTempDirectory("book");
+		Path pgn = directory.resolve("games.pgn");
+		Path book = directory.resolve("book.bin");
+		try {
+			Files.writeString(pgn, GAMES);
+			BookBuilder.main(new String[] { "out=" + book, "threads=2", pgn.toString() });
+			check(new OpeningBook(book));
+		} finally {
+			Files.deleteIfExists(pgn);
+			Files.deleteIfExists(book);
+			Files.deleteIfExists(directory);
+		}
+		System.out.println("Opening book check passed");
+	}
+
+	private static void check(OpeningBook book) {
+		Chess chess = new Chess(Chess.STARTING_FEN);
+		expect(book.getEntries(chess.getPositionHash(true)), "e2e4", 5);
+		Move chosen = book.chooseMove(chess, true, new Random(0));
+		expect("chosen move", chosen == null ? null : Notation.toUci(chosen), "e2e4");
+
+		chess.playMove(Notation.parseSan(chess, true, "e4"));
+		expect(book.getEntries(chess.getPositionHash(false)), "c7c5", 1);
+
+		for (String san : List.of("d5", "exd5", "c6", "dxc6", "Nf6", "cxb7", "Bd7"))
+			chess.playMove(Notation.parseSan(chess, chess.getTurn(), san));
+		List<OpeningBook.Entry> entries = book.getEntries(chess.getPositionHash(true));
+		expect(entries, "b7a8q", 2);
+		Move promotion = OpeningBook.decodeMove(chess, true, entries.get(0).move());
+		if (promotion == null || !promotion.isPromotion() || promotion.getPromotionPiece() == null
+				|| promotion.getPromotionPiece().getType() != Piece.QUEEN)
+			throw new IllegalStateException("The promotion b7a8q decoded to " + promotion);
+		expect("promotion code", OpeningBook.encodeMove(promotion), entries.get(0).move());
+
+		expect("unknown position", book.getEntries(0x1234_5678_9ABC_DEF0L).size(), 0);
+	}
+
+	private static void checkVectors() {
+		for (String[] vector : VECTORS) {
+			Chess chess = new Chess(Chess.STARTING_FEN);
+			if (!vector[0].isEmpty())
+				for (String san : vector[0].split(" "))
+					chess.playMove(Notation.parseSan(chess, chess.getTurn(), san));
+			expect("hash after \"" + vector[0] + "\"", Long.toHexString(chess.getPositionHash(chess.getTurn())),
+					Long.toHexString(Long.parseUnsignedLong(vector[1], 16)));
+		}
+	}
+
+	/**
+	 * Checks that a position has a single entry.
+	 *
+	 * @param uci    The Move of the entry, in coordinate notation.
+	 * @param weight The weight of the entry.
+	 */
+	private static void expect(List<OpeningBook.Entry> entries, String uci, int weight) {
+		expect("number of entries for " + uci, entries.size(), 1);
+		expect("move", toUci(entries.get(0).move()), uci);
+		expect("weight of " + uci, entries.get(0).weight(), weight);
+	}
+
+	private static void expect(String what, Object actual, Object expected) {
+		if (!expected.equals(actual))
+			throw new IllegalStateException("Wrong " + what + ": " + actual + " instead of " + expected);
+	}
+
+	/**
+	 * Writes a Polyglot encoded Move in coordinate notation, without reading any
+	 * board.
+	 */
+	private static String toUci(int move) {
+		String uci = "" + (char) ('a' + (move >>> 6 & 7)) + (char) ('1' + (move >>> 9 & 7))
+				+ (char) ('a' + (move & 7)) + (char) ('1' + (move >>> 3 & 7));
+		int promotion = move >>> 12 & 7;
+		return promotion == 0 ? uci : uci + " nbrq".charAt(promotion);
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.bloodLantern.chess;
+
+import com.bloodLantern.chess.pieces.Pawn;
+
+/**
+ * Small cache of pawn structure scores keyed by the pawn-only hash of the
+ * board. Pawns rarely move compared to the other Pieces so almost every probe
+ * is a hit, which makes the pawn structure evaluation nearly free.
+ *
+ * @author BloodLantern
+ */
+public final class PawnHashTable {
+
+	// Built-in pawn structure weights as {middlegame, endgame}, copied by
+	// EvaluationParameters
+	static final int[] DOUBLED = { -10, -20 };
+	static final int[] ISOLATED = { -10, -15 };
+	static final int[] BACKWARD = { -8, -10 };
+	/**
+	 * Passed Pawn bonuses indexed by the relative rank of the Pawn (0 being its
+	 * own back rank).
+	 */
+	static final int[] PASSED_MG = { 0, 5, 10, 20, 35, 60, 100, 0 };
+	static final int[] PASSED_EG = { 0, 10, 20, 40, 70, 120, 200, 0 };
+
+	private final EvaluationParameters parameters;
+	private final long[] keys;
+	private final int[] middlegame;
+	private final int[] endgame;
+	private final int mask;
+
+	private long probes = 0;
+	private long hits = 0;
+
+	/**
+	 * Constructs a PawnHashTable.
+	 *
+	 * @param size       The number of entries. Must be a power of two.
+	 * @param parameters The weights to score the pawn structures with.
+	 * @throws IllegalArgumentException If {@code size} isn't a power of two.
+	 */
+	public PawnHashTable(int size, EvaluationParameters parameters) {
+		if (size <= 0 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("The pawn hash table size must be a power of two.");
+		this.parameters = parameters;
+		keys = new long[size];
+		middlegame = new int[size];
+		endgame = new int[size];
+		mask = size - 1;
+		// Key 0 would match an empty entry
+		keys[0] = 1;
+	}
+
+	/**
+	 * Gets the index of the entry holding the pawn structure of {@code tiles},
+	 * computing and storing it first if it isn't cached yet.
+	 *
+	 * @param pawnKey The pawn-only hash of {@code tiles}.
+	 * @param tiles   The board.
+	 * @return The index to read {@link #getMiddlegame(int)} and
+	 *         {@link #getEndgame(int)} with.
+	 */
+	int probe(long pawnKey, Tile[][] tiles) {
+		int index = (int) pawnKey & mask;
+		probes++;
+		if (keys[index] == pawnKey) {
+			hits++;
+			return index;
+		}
+		int mg = 0;
+		int eg = 0;
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless)
+				if (tile.getPiece() instanceof Pawn pawn) {
+					int sign = pawn.isWhite() ? 1 : -1;
+					if (pawn.isDoubled()) {
+						mg += sign * parameters.doubled[0];
+						eg += sign * parameters.doubled[1];
+					}
+					if (pawn.isIsolated()) {
+						mg += sign * parameters.isolated[0];
+						eg += sign * parameters.isolated[1];
+					} else if (pawn.isBackward()) {
+						mg += sign * parameters.backward[0];
+						eg += sign * parameters.backward[1];
+					}
+					if (pawn.isPassed()) {
+						int rank = pawn.isWhite() ? 7 - tile.getLine() : tile.getLine();
+						mg += sign * parameters.passedMg[rank];
+						eg += sign * parameters.passedEg[rank];
+					}
+				}
+		keys[index] = pawnKey;
+		middlegame[index] = mg;
+		endgame[index] = eg;
+		return index;
+	}
+
+	/**
+	 * @return The white minus black middlegame pawn structure score of the entry.
+	 */
+	int getMiddlegame(int index) {
+		return middlegame[index];
+	}
+
+	/**
+	 * @return The white minus black endgame pawn structure score of the entry.
+	 */
+	int getEndgame(int index) {
+		return endgame[index];
+	}
+
+	/**
+	 * Gets the proportion of probes that found their entry already cached.
+	 *
+	 * @return A value between 0 and 1.
+	 */
+	public double getHitRate() {
+		return probes == 0 ? 0 : (double) hits / probes;
+	}
+
+	/**
+	 * Getter for the probes value.
+	 *
+	 * @return The probes to get.
+	 */
+	public long getProbes() {
+		return probes;
+	}
+
+	/**
+	 * Getter for the hits value.
+	 *
+	 * @return The number of successful probes since this table was created.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Describes how well this table worked, like
+	 * {@link EvaluationCache#getStatistics()}.
+	 *
+	 * @return The hit rate and the number of probes.
+	 */
+	public String getStatistics() {
+		return EvaluationCache.getStatistics(hits, probes);
+	}
+
+}
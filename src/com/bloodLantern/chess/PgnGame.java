@@ -0,0 +1,168 @@
+package com.bloodLantern.chess;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * A game read from or written to a PGN file: its tags, its Moves in Standard
+ * Algebraic Notation and its result.
+ *
+ * @author BloodLantern
+ */
+public final class PgnGame {
+
+	private final Map<String, String> tags = new LinkedHashMap<>();
+	private final List<String> moves = new ArrayList<>();
+	private String result = "*";
+	/**
+	 * The line of the PGN file the game starts at, 0 if unknown.
+	 */
+	private int lineNumber = 0;
+
+	/**
+	 * Records a game from its Moves, which are replayed on a new headless board
+	 * bound to the current thread to write them in Standard Algebraic Notation.
+	 * The {@code SetUp} and {@code FEN} tags are set if the game doesn't start
+	 * from the standard starting position.
+	 *
+	 * @param fen   The FEN of the position the game starts from.
+	 * @param moves The Moves in the Polyglot encoding. Promoting Moves without
+	 *              promotion are promotions into a Queen.
+	 * @return The game, without result.
+	 * @throws IllegalArgumentException If {@code fen} is malformed or a Move is
+	 *                                  illegal.
+	 */
+	public static PgnGame fromMoves(String fen, int[] moves) {
+		PgnGame game = new PgnGame();
+		Chess chess = new Chess(fen);
+		String normalized = chess.generateFEN();
+		if (!normalized.equals(Chess.STARTING_FEN)) {
+			game.setTag("SetUp", "1");
+			game.setTag("FEN", normalized);
+		}
+		for (int code : moves) {
+			boolean white = chess.getTurn();
+			Move move = OpeningBook.decodeMove(chess, white, code);
+			if (move == null)
+				throw new IllegalArgumentException("Illegal move at ply " + (game.moves.size() + 1));
+			if (move.isPromotion() && move.getPromotionPiece() == null && move.getPiece() instanceof Pawn pawn)
+				move.setPromotionPiece(Notation.createPromotion(pawn, Piece.QUEEN));
+			game.moves.add(Notation.toSan(chess, move));
+			chess.playMove(move);
+		}
+		return game;
+	}
+
+	/**
+	 * Replays the Moves on a new headless board bound to the current thread,
+	 * checking each of them against the legal Moves.
+	 *
+	 * @return The board in the final position.
+	 * @throws IllegalArgumentException If the {@code FEN} tag is malformed or a
+	 *                                  Move is illegal, ambiguous or promotes
+	 *                                  without telling into what.
+	 */
+	public Chess replay() {
+		Chess chess = new Chess(getStartingFen());
+		for (String san : moves) {
+			boolean white = chess.getTurn();
+			Move move = Notation.parseSan(chess, white, san);
+			if (move == null || move.isPromotion() && move.getPromotionPiece() == null)
+				throw new IllegalArgumentException("Illegal move " + chess.getFullmoveNumber() + (white ? ". " : "... ")
+						+ san + (lineNumber > 0 ? " in the game at line " + lineNumber : ""));
+			chess.playMove(move);
+		}
+		return chess;
+	}
+
+	/**
+	 * Gets the value of a tag.
+	 *
+	 * @param name The name of the tag, for example {@code White}.
+	 * @return The value of the tag or null if it isn't set.
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+	/**
+	 * Sets the value of a tag.
+	 *
+	 * @param name  The name of the tag.
+	 * @param value The value of the tag.
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+	/**
+	 * Gets the FEN of the position the game starts from.
+	 *
+	 * @return The {@code FEN} tag if set, the standard starting position
+	 *         otherwise.
+	 */
+	public String getStartingFen() {
+		String fen = tags.get("FEN");
+		return fen == null ? Chess.STARTING_FEN : fen;
+	}
+
+	/**
+	 * Getter for the tags value.
+	 *
+	 * @return The tags to get, in reading order.
+	 */
+	public Map<String, String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * Getter for the moves value.
+	 *
+	 * @return The Moves in Standard Algebraic Notation.
+	 */
+	public List<String> getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Getter for the result value.
+	 *
+	 * @return One of {@code 1-0}, {@code 0-1}, {@code 1/2-1/2} or {@code *}.
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * Setter for the result value.
+	 *
+	 * @param result The result to set.
+	 */
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	/**
+	 * Getter for the lineNumber value.
+	 *
+	 * @return The line of the PGN file the game starts at, 0 if unknown.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Setter for the lineNumber value.
+	 *
+	 * @param lineNumber The lineNumber to set.
+	 */
+	void setLineNumber(int lineNumber) {
+		this.lineNumber = lineNumber;
+	}
+
+}
@@ -0,0 +1,200 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming PGN reader. Games are read one at a time with {@link #next()} so a
+ * file of any size can be processed without loading it. Comments, variations,
+ * numeric annotation glyphs and move numbers are skipped.
+ * <p>
+ * The Moves aren't checked while reading, which keeps the reader fast when only
+ * the tags are needed. {@link PgnGame#replay()} checks them against the legal
+ * Moves.
+ *
+ * @author BloodLantern
+ */
+public class PgnReader implements Closeable {
+
+	private final BufferedReader reader;
+
+	/**
+	 * Depth of the {@code ( )} variations at the current reading position.
+	 */
+	private int variationDepth = 0;
+	/**
+	 * Are we inside a {@code { }} comment ?
+	 */
+	private boolean inComment = false;
+	/**
+	 * A tag line read while looking for the end of the previous game.
+	 */
+	private String pendingTag = null;
+	/**
+	 * The number of the last line read.
+	 */
+	private int lineNumber = 0;
+
+	/**
+	 * Constructs a PgnReader.
+	 *
+	 * @param reader Where to read the PGN text from.
+	 */
+	public PgnReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader, 1 << 16);
+	}
+
+	/**
+	 * Constructs a PgnReader reading a file in the ISO 8859-1 encoding of the PGN
+	 * standard.
+	 *
+	 * @param path The file to read.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public PgnReader(Path path) throws IOException {
+		this(new InputStreamReader(Files.newInputStream(path), StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Reads the next game.
+	 *
+	 * @return The next game or null if there isn't any left.
+	 * @throws IOException If the underlying reader fails.
+	 */
+	public PgnGame next() throws IOException {
+		PgnGame game = new PgnGame();
+		boolean empty = true;
+		boolean inMoves = false;
+		String line = pendingTag;
+		pendingTag = null;
+		if (line == null)
+			line = readLine();
+		game.setLineNumber(lineNumber);
+		for (; line != null; line = readLine()) {
+			if (!inComment && line.startsWith("%"))
+				// Escaped line
+				continue;
+			if (!inComment && variationDepth == 0 && line.startsWith("[")) {
+				if (inMoves) {
+					// A new game starts without the previous one having a result
+					pendingTag = line;
+					return game;
+				}
+				readTag(game, line);
+				empty = false;
+				continue;
+			}
+			if (readMoves(game, line))
+				return game;
+			if (empty && line.isBlank())
+				// Blank lines between games
+				game.setLineNumber(lineNumber + 1);
+			if (!game.getMoves().isEmpty()) {
+				inMoves = true;
+				empty = false;
+			}
+		}
+		return empty ? null : game;
+	}
+
+	private String readLine() throws IOException {
+		String line = reader.readLine();
+		if (line != null)
+			lineNumber++;
+		return line;
+	}
+
+	private static void readTag(PgnGame game, String line) {
+		int space = line.indexOf(' ');
+		int firstQuote = line.indexOf('"');
+		int lastQuote = line.lastIndexOf('"');
+		if (space < 0 || firstQuote < 0 || lastQuote <= firstQuote)
+			return;
+		StringBuilder value = new StringBuilder(lastQuote - firstQuote);
+		for (int i = firstQuote + 1; i < lastQuote; i++) {
+			char c = line.charAt(i);
+			// Escaped quote or backslash
+			if (c == '\\' && i + 1 < lastQuote)
+				c = line.charAt(++i);
+			value.append(c);
+		}
+		game.setTag(line.substring(1, space), value.toString());
+	}
+
+	/**
+	 * Reads the Moves of a movetext line into {@code game}.
+	 *
+	 * @return True if the result of the game was read.
+	 */
+	private boolean readMoves(PgnGame game, String line) {
+		int start = -1;
+		for (int i = 0; i <= line.length(); i++) {
+			char c = i < line.length() ? line.charAt(i) : ' ';
+			if (inComment) {
+				if (c == '}')
+					inComment = false;
+				continue;
+			}
+			boolean delimiter = Character.isWhitespace(c) || c == '{' || c == '}' || c == '(' || c == ')'
+					|| c == ';';
+			if (!delimiter) {
+				if (start < 0)
+					start = i;
+				continue;
+			}
+			if (start >= 0) {
+				if (variationDepth == 0 && readToken(game, line.substring(start, i)))
+					return true;
+				start = -1;
+			}
+			if (c == '{')
+				inComment = true;
+			else if (c == '(')
+				variationDepth++;
+			else if (c == ')' && variationDepth > 0)
+				variationDepth--;
+			else if (c == ';')
+				// Comment until the end of the line
+				break;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a single movetext token into {@code game}.
+	 *
+	 * @return True if the token is the result of the game.
+	 */
+	private static boolean readToken(PgnGame game, String token) {
+		if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+			game.setResult(token);
+			return true;
+		}
+		if (token.startsWith("$"))
+			return false;
+		// Skips the move number, for example "12." or "12..."
+		int i = 0;
+		while (i < token.length() && Character.isDigit(token.charAt(i)))
+			i++;
+		if (i < token.length() && token.charAt(i) == '.') {
+			while (i < token.length() && token.charAt(i) == '.')
+				i++;
+			token = token.substring(i);
+		}
+		if (!token.isEmpty())
+			game.getMoves().add(token);
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
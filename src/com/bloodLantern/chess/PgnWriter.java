@@ -0,0 +1,136 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Streaming PGN writer, the counterpart of {@link PgnReader}. Each game is
+ * written as soon as {@link #write(PgnGame)} is called, in the export format of
+ * the PGN standard: the Seven Tag Roster first, then the other tags, then the
+ * movetext wrapped at 80 characters.
+ *
+ * @author BloodLantern
+ */
+public class PgnWriter implements Closeable, Flushable {
+
+	/**
+	 * The tags every game has, in their standard order. Missing ones are written
+	 * as {@code ?}.
+	 */
+	private static final String[] SEVEN_TAG_ROSTER = { "Event", "Site", "Date", "Round", "White", "Black", "Result" };
+	private static final int LINE_LENGTH = 80;
+
+	private final Writer writer;
+	private final StringBuilder line = new StringBuilder(LINE_LENGTH + 16);
+
+	/**
+	 * Constructs a PgnWriter.
+	 *
+	 * @param writer Where to write the PGN text.
+	 */
+	public PgnWriter(Writer writer) {
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+	}
+
+	/**
+	 * Constructs a PgnWriter writing a file in the ISO 8859-1 encoding of the PGN
+	 * standard. The file is replaced if it already exists.
+	 *
+	 * @param path The file to write.
+	 * @throws IOException If the file can't be created.
+	 */
+	public PgnWriter(Path path) throws IOException {
+		this(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Writes a game.
+	 *
+	 * @param game The game to write.
+	 * @throws IOException If the underlying writer fails.
+	 */
+	public void write(PgnGame game) throws IOException {
+		for (String name : SEVEN_TAG_ROSTER)
+			writeTag(name, name.equals("Result") ? game.getResult() : game.getTags().getOrDefault(name, "?"));
+		for (Map.Entry<String, String> tag : game.getTags().entrySet())
+			if (!isInSevenTagRoster(tag.getKey()))
+				writeTag(tag.getKey(), tag.getValue());
+		writer.write('\n');
+
+		// The move numbers start from the ones of the FEN
+		String[] fields = game.getStartingFen().trim().split("[ _]+");
+		boolean white = fields.length < 2 || !fields[1].equals("b");
+		int number = 1;
+		if (fields.length >= 6)
+			try {
+				number = Math.max(1, Integer.parseInt(fields[5]));
+			} catch (NumberFormatException e) {
+				// Keep 1, the FEN is checked when replaying the game
+			}
+		line.setLength(0);
+		boolean first = true;
+		for (String san : game.getMoves()) {
+			if (white)
+				writeToken(number + ".");
+			else if (first)
+				writeToken(number + "...");
+			writeToken(san);
+			if (!white)
+				number++;
+			white = !white;
+			first = false;
+		}
+		writeToken(game.getResult());
+		writer.write(line.toString());
+		writer.write("\n\n");
+	}
+
+	private void writeTag(String name, String value) throws IOException {
+		writer.write('[');
+		writer.write(name);
+		writer.write(" \"");
+		writer.write(value.replace("\\", "\\\\").replace("\"", "\\\""));
+		writer.write("\"]\n");
+	}
+
+	/**
+	 * Appends a movetext token to the current line, writing the line first if the
+	 * token doesn't fit.
+	 */
+	private void writeToken(String token) throws IOException {
+		if (line.length() > 0 && line.length() + 1 + token.length() > LINE_LENGTH) {
+			writer.write(line.toString());
+			writer.write('\n');
+			line.setLength(0);
+		}
+		if (line.length() > 0)
+			line.append(' ');
+		line.append(token);
+	}
+
+	private static boolean isInSevenTagRoster(String name) {
+		for (String tag : SEVEN_TAG_ROSTER)
+			if (tag.equals(name))
+				return true;
+		return false;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+}
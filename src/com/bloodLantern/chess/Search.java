@@ -0,0 +1,454 @@
+package com.bloodLantern.chess;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+import com.bloodLantern.chess.pieces.Queen;
+
+/**
+ * Iterative deepening alpha-beta search of a single position. It runs on its
+ * own headless board, set up from a FEN, so that it can run on a background
+ * thread while the board on the screen keeps changing. The search stops at its
+ * deadline, after a number of nodes or when {@link #stop()} is called, and
+ * keeps the best Move of the last completed depth. {@link #cancel()} also
+ * stops it but discards that Move.
+ * <p>
+ * The game history is replayed on the search board so that repetitions are
+ * scored as draws, a single one being enough inside the search tree.
+ * <p>
+ * A pondering search first plays the reply it expects from the opponent and has
+ * no deadline until {@link #setDeadline(long)} is called on a ponderhit. Its
+ * results stay in the shared {@link TranspositionTable} either way.
+ *
+ * @author BloodLantern
+ */
+final class Search implements Runnable {
+
+	private static final int MAX_DEPTH = 64;
+	private static final int INFINITY = Integer.MAX_VALUE - 1;
+	/**
+	 * Scores beyond this are mates, whose distance depends on the ply.
+	 */
+	private static final int MATE_BOUND = AI.MATE_SCORE - 1000;
+
+	private final String fen;
+	private final long[] history;
+	private final int expectedMove;
+	private final boolean white;
+	private final TranspositionTable table;
+
+	private volatile long deadline;
+	private long nodeLimit = Long.MAX_VALUE;
+	private EvaluationParameters parameters = EvaluationParameters.getCurrent();
+	private Consumer<Search> listener = null;
+	private volatile boolean stopped = false;
+	private volatile boolean cancelled = false;
+	private volatile int bestMove = 0;
+	private volatile int ponderMove = 0;
+	private volatile int score = 0;
+	private volatile int completedDepth = 0;
+	private volatile long key = 0;
+	private final CountDownLatch ready = new CountDownLatch(1);
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+	private Chess chess;
+	private int rootMove;
+	private long nodes = 0;
+
+	/**
+	 * Constructs a Search.
+	 *
+	 * @param fen          The position to search from.
+	 * @param history      The hashes of the positions since the last
+	 *                     irreversible Move, {@code fen} last, as returned by
+	 *                     {@link Chess#getPositionHistory()}.
+	 * @param expectedMove The opponent Move to play before searching, in the
+	 *                     Polyglot encoding, 0 if {@code fen} is already the
+	 *                     position to search.
+	 * @param white        The side to search for.
+	 * @param table        The table to read and store the results.
+	 * @param deadline     When to stop searching, as returned by
+	 *                     {@link System#currentTimeMillis()}.
+	 */
+	Search(String fen, long[] history, int expectedMove, boolean white, TranspositionTable table, long deadline) {
+		this.fen = fen;
+		this.history = history;
+		this.expectedMove = expectedMove;
+		this.white = white;
+		this.table = table;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public void run() {
+		try {
+			if (stopped)
+				return;
+			parameters.bind();
+			chess = new Chess(fen);
+			chess.setPositionHistory(history);
+			if (expectedMove != 0) {
+				Move move = OpeningBook.decodeMove(chess, !white, expectedMove);
+				if (move == null)
+					return;
+				if (move.isPromotion() && move.getPiece() instanceof Pawn pawn)
+					move.setPromotionPiece(Notation.createPromotion(pawn, Piece.QUEEN));
+				chess.playMove(move);
+			}
+			key = chess.getPositionHash(white);
+			ready.countDown();
+			iterate();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			ready.countDown();
+			done.countDown();
+			if (cancelled)
+				result.cancel(false);
+			else
+				result.complete(bestMove);
+		}
+	}
+
+	/**
+	 * Searches one more ply at a time until stopped.
+	 */
+	private void iterate() {
+		List<Move> moves = getMoves(white);
+		if (moves.isEmpty())
+			return;
+		bestMove = OpeningBook.encodeMove(moves.get(0));
+		for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+			int result = search(depth, 0, -INFINITY, INFINITY, white);
+			if (stopped)
+				break;
+			bestMove = rootMove;
+			score = result;
+			completedDepth = depth;
+			ponderMove = findReply(rootMove);
+			if (listener != null)
+				listener.accept(this);
+			if (Math.abs(result) > MATE_BOUND)
+				break;
+		}
+	}
+
+	/**
+	 * Reads the expected reply to {@code move} from the table.
+	 *
+	 * @return The reply in the Polyglot encoding, 0 if unknown.
+	 */
+	private int findReply(int move) {
+		Move played = OpeningBook.decodeMove(chess, white, move);
+		if (played == null)
+			return 0;
+		played.makeFullMove();
+		long data = table.probe(chess.getPositionHash(!white));
+		played.unmakeFullMove();
+		return data == 0 ? 0 : TranspositionTable.getMove(data);
+	}
+
+	/**
+	 * Negamax alpha-beta search.
+	 *
+	 * @return The score for {@code turn}, the side to move.
+	 */
+	private int search(int depth, int ply, int alpha, int beta, boolean turn) {
+		if (checkStop())
+			return 0;
+		if (ply > 0) {
+			// A single repetition is enough: if it was good to repeat once, it will be
+			// good again
+			if (chess.countRepetitions() > 0)
+				return 0;
+			int tablebase = Tablebase.probe(chess, turn);
+			if (tablebase != Tablebase.UNKNOWN)
+				return Tablebase.toScore(tablebase) - Integer.signum(tablebase) * ply;
+			int kpk = KpkBitbase.probe(chess, turn);
+			if (kpk != KpkBitbase.UNKNOWN)
+				return kpk;
+		}
+		if (depth <= 0)
+			return searchAllCaptures(alpha, beta, turn);
+
+		long key = chess.getPositionHash(turn);
+		long data = table.probe(key);
+		int hashMove = 0;
+		if (data != 0) {
+			hashMove = TranspositionTable.getMove(data);
+			if (ply > 0 && TranspositionTable.getDepth(data) >= depth) {
+				int stored = fromTable(TranspositionTable.getScore(data), ply);
+				int bound = TranspositionTable.getBound(data);
+				if (bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER && stored >= beta
+						|| bound == TranspositionTable.UPPER && stored <= alpha)
+					return stored;
+			}
+		}
+
+		List<Move> moves = getMoves(turn);
+		if (moves.isEmpty())
+			return isInCheck(turn) ? -AI.MATE_SCORE + ply : 0;
+		AI.orderMoves(moves, hashMove);
+
+		int originalAlpha = alpha;
+		int best = -INFINITY;
+		int bestCode = 0;
+		for (Move move : moves) {
+			move.makeFullMove();
+			int previous = chess.pushPosition(chess.getPositionHash(!turn),
+					move.isCapture() || move.getPiece() instanceof Pawn);
+			int evaluation = -search(depth - 1, ply + 1, -beta, -alpha, !turn);
+			chess.popPosition(previous);
+			move.unmakeFullMove();
+			if (stopped)
+				return 0;
+			if (evaluation > best) {
+				best = evaluation;
+				bestCode = OpeningBook.encodeMove(move);
+			}
+			alpha = Math.max(alpha, evaluation);
+			if (alpha >= beta)
+				// Move was too good, opponent will avoid this position
+				break;
+		}
+		if (ply == 0)
+			rootMove = bestCode;
+		int bound = best >= beta ? TranspositionTable.LOWER
+				: best > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+		table.store(key, bestCode, depth, bound, toTable(best, ply));
+		return best;
+	}
+
+	private int searchAllCaptures(int alpha, int beta, boolean turn) {
+		if (checkStop())
+			return 0;
+		// Captures aren't typically forced, so see what the eval is before making a
+		// capture. Otherwise if only bad captures are available, the position will be
+		// evaluated as bad, even if good non-capture moves exist.
+		int evaluation = AI.evaluate(turn);
+		if (evaluation >= beta)
+			return evaluation;
+		alpha = Math.max(alpha, evaluation);
+		int best = evaluation;
+
+		List<Move> captureMoves = getMoves(turn);
+		captureMoves.removeIf(move -> !move.isCapture() && !move.isPromotion());
+		AI.orderMoves(captureMoves, 0);
+
+		for (Move captureMove : captureMoves) {
+			captureMove.makeFullMove();
+			evaluation = -searchAllCaptures(-beta, -alpha, !turn);
+			captureMove.unmakeFullMove();
+			if (stopped)
+				return 0;
+			best = Math.max(best, evaluation);
+			alpha = Math.max(alpha, evaluation);
+			if (alpha >= beta)
+				break;
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the legal Moves of a side. Pawns only promote into Queens.
+	 */
+	private List<Move> getMoves(boolean turn) {
+		List<Move> moves = chess.getPossibleMoves(turn);
+		for (Move move : moves)
+			if (move.isPromotion() && move.getPiece() instanceof Pawn pawn)
+				move.setPromotionPiece(new Queen(pawn));
+		return moves;
+	}
+
+	/**
+	 * Checks the node limit, and the deadline every few nodes.
+	 *
+	 * @return True if the search must stop.
+	 */
+	private boolean checkStop() {
+		if (++nodes >= nodeLimit || (nodes & 255) == 0 && System.currentTimeMillis() >= deadline)
+			stopped = true;
+		return stopped;
+	}
+
+	private boolean isInCheck(boolean turn) {
+		return (turn ? chess.getWhiteKing() : chess.getBlackKing()).isInDanger();
+	}
+
+	/**
+	 * Mate scores are stored relative to the stored position instead of the
+	 * root.
+	 */
+	private static int toTable(int score, int ply) {
+		if (score > MATE_BOUND)
+			return score + ply;
+		if (score < -MATE_BOUND)
+			return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score > MATE_BOUND)
+			return score - ply;
+		if (score < -MATE_BOUND)
+			return score + ply;
+		return score;
+	}
+
+	/**
+	 * Stops the search as soon as possible. The best Move of the last completed
+	 * depth is kept.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Stops the search as soon as possible and cancels its result.
+	 */
+	void cancel() {
+		cancelled = true;
+		stopped = true;
+	}
+
+	/**
+	 * Setter for the deadline value. Used on a ponderhit to give the pondering
+	 * search a normal thinking time from now on.
+	 *
+	 * @param deadline The deadline to set, as returned by
+	 *                 {@link System#currentTimeMillis()}.
+	 */
+	void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Setter for the nodeLimit value. Must be called before the search starts.
+	 *
+	 * @param nodeLimit The number of nodes after which the search stops.
+	 */
+	void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * Setter for the parameters value. Must be called before the search starts.
+	 *
+	 * @param parameters The evaluation parameters bound to the search thread.
+	 *                   Those of the thread constructing the search by default.
+	 */
+	void setParameters(EvaluationParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Setter for the listener value. Must be called before the search starts.
+	 *
+	 * @param listener Called on the search thread after each completed depth, the
+	 *                 getters then returning the results of that depth. May be
+	 *                 null.
+	 */
+	void setListener(Consumer<Search> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Waits until the expected Move, if any, has been played.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted.
+	 */
+	void awaitReady() throws InterruptedException {
+		ready.await();
+	}
+
+	/**
+	 * Waits until the search stops.
+	 *
+	 * @throws InterruptedException If the current thread is interrupted.
+	 */
+	void await() throws InterruptedException {
+		done.await();
+	}
+
+	/**
+	 * Getter for the result value.
+	 *
+	 * @return The best Move in the Polyglot encoding, completed when the search
+	 *         stops, on its thread. Cancelled by {@link #cancel()}.
+	 */
+	CompletableFuture<Integer> getResult() {
+		return result;
+	}
+
+	/**
+	 * Getter for the key value.
+	 *
+	 * @return The hash of the searched position, 0 if the expected Move couldn't
+	 *         be played. Only valid after {@link #awaitReady()}.
+	 */
+	long getKey() {
+		return key;
+	}
+
+	/**
+	 * Getter for the bestMove value.
+	 *
+	 * @return The best Move in the Polyglot encoding, 0 if there isn't any legal
+	 *         Move.
+	 */
+	int getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * Getter for the ponderMove value.
+	 *
+	 * @return The expected reply to the best Move in the Polyglot encoding, 0 if
+	 *         unknown.
+	 */
+	int getPonderMove() {
+		return ponderMove;
+	}
+
+	/**
+	 * Getter for the score value.
+	 *
+	 * @return The score of the best Move for the searching side.
+	 */
+	int getScore() {
+		return score;
+	}
+
+	/**
+	 * Getter for the completedDepth value.
+	 *
+	 * @return The depth of the last completed iteration.
+	 */
+	int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/**
+	 * Getter for the nodes value.
+	 *
+	 * @return The number of visited nodes. Only exact once the search stopped.
+	 */
+	long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Getter for the pawnTable value of the searched board.
+	 *
+	 * @return The pawn table used by the search, null before it ran.
+	 */
+	PawnHashTable getPawnTable() {
+		return chess == null ? null : chess.getEvaluation().getPawnTable();
+	}
+
+}
@@ -0,0 +1,418 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Endgame tablebase of a material signature such as {@code KRKP}, the white
+ * Pieces being written first. It holds one byte for every placement of the
+ * Pieces and side to move: 0 for a draw, {@code n > 0} if the side to move mates
+ * in {@code n} plies and {@code -(n + 1)} if it gets mated in {@code n} plies.
+ * <p>
+ * Placements that are mirrors of each other are only stored once: the board is
+ * mirrored so that the white King stands in the {@code a1-d1-d4} triangle (10
+ * squares), or on the a to d files (32 squares) when there are Pawns as they
+ * can't be mirrored vertically. Each other Piece is then indexed among the
+ * squares not taken by the previous ones. A 4 Pieces table thus takes 5 MB, or
+ * 15 MB with Pawns, instead of 32 MB.
+ * <p>
+ * Tables are generated by {@link TablebaseGenerator} and stored as raw
+ * {@code <signature>.tb} files, which are memory-mapped by {@link #load(Path)}.
+ * A table without any win, such as {@code KBK}, is stored as an empty file.
+ * Only the signatures with the strongest side as white are stored, positions
+ * where black is stronger being probed with the colors swapped.
+ *
+ * @author BloodLantern
+ */
+public final class Tablebase {
+
+	/**
+	 * Returned by the probes when no table covers the position.
+	 */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+	/**
+	 * Maximum number of Pieces, Kings included, of a table.
+	 */
+	public static final int MAX_PIECES = 4;
+	/**
+	 * Value of the indexes that don't represent a legal position.
+	 */
+	static final byte ILLEGAL = Byte.MIN_VALUE;
+	/**
+	 * Piece letters by strength, used to order the Pieces of a signature.
+	 */
+	private static final String STRENGTH = "QRBNP";
+	/**
+	 * Index of each white King square in the tables without Pawns, -1 outside
+	 * of the {@code a1-d1-d4} triangle.
+	 */
+	private static final int[] KING_INDEXES = new int[64];
+	/**
+	 * Index of each white King square in the tables with Pawns, -1 outside of the
+	 * a to d files.
+	 */
+	private static final int[] PAWN_KING_INDEXES = new int[64];
+
+	static {
+		int index = 0;
+		int pawnIndex = 0;
+		for (int square = 0; square < 64; square++) {
+			int file = square & 7;
+			int rank = square >> 3;
+			KING_INDEXES[square] = file < 4 && rank <= file ? index++ : -1;
+			PAWN_KING_INDEXES[square] = file < 4 ? pawnIndex++ : -1;
+		}
+	}
+
+	/**
+	 * Every generated or loaded table, by signature.
+	 */
+	private static final Map<String, Tablebase> tables = new ConcurrentHashMap<>();
+
+	private final String signature;
+	/**
+	 * Type of each slot: the white King, the black King, the other white Pieces
+	 * then the other black ones.
+	 */
+	final int[] types;
+	/**
+	 * Color of each slot.
+	 */
+	final boolean[] whites;
+	/**
+	 * Whether the table has Pawns, which forbids the vertical mirrors.
+	 */
+	private final boolean pawns;
+	/**
+	 * The stored values, empty if they are all draws.
+	 */
+	private final ByteBuffer values;
+
+	/**
+	 * Constructs a Tablebase.
+	 *
+	 * @param signature The material signature, for example {@code KRKP}.
+	 * @param values    The values of every stored index, or nothing if they are
+	 *                  all draws.
+	 * @throws IllegalArgumentException If the signature is invalid or doesn't
+	 *                                  match the size of {@code values}.
+	 */
+	Tablebase(String signature, ByteBuffer values) {
+		int blackKing = signature.indexOf('K', 1);
+		if (!signature.startsWith("K") || blackKing < 0 || signature.length() > MAX_PIECES)
+			throw new IllegalArgumentException("Invalid tablebase signature: " + signature);
+		this.signature = signature;
+		int count = signature.length();
+		types = new int[count];
+		whites = new boolean[count];
+		types[0] = types[1] = Piece.KING;
+		whites[0] = true;
+		int slot = 2;
+		for (int i = 1; i < count; i++)
+			if (i != blackKing) {
+				int type = "PNBRQ".indexOf(signature.charAt(i));
+				if (type < 0)
+					throw new IllegalArgumentException("Invalid tablebase signature: " + signature);
+				types[slot] = type;
+				whites[slot++] = i < blackKing;
+			}
+		pawns = signature.indexOf('P') >= 0;
+		if (values.capacity() != 0 && values.capacity() != getSize(count, pawns))
+			throw new IllegalArgumentException("The " + signature + " table must hold " + getSize(count, pawns)
+					+ " values, not " + values.capacity() + ".");
+		this.values = values;
+	}
+
+	/**
+	 * Gets the number of indexes of a table before removing its mirrors, as used
+	 * by the {@link TablebaseGenerator}.
+	 *
+	 * @param count The number of Pieces, Kings included.
+	 * @return 64 squares for each Piece times 2 sides to move.
+	 */
+	static int getRawSize(int count) {
+		return 2 << 6 * count;
+	}
+
+	/**
+	 * Gets the number of stored indexes of a table.
+	 *
+	 * @param count The number of Pieces, Kings included.
+	 * @param pawns Whether the table has Pawns.
+	 * @return The white King squares times the squares left for each other
+	 *         Piece times 2 sides to move.
+	 */
+	static int getSize(int count, boolean pawns) {
+		int size = 2 * (pawns ? 32 : 10);
+		for (int slot = 1; slot < count; slot++)
+			size *= 64 - slot;
+		return size;
+	}
+
+	/**
+	 * Gets the index of a position before removing its mirrors.
+	 *
+	 * @param squares     The square of each slot, {@code a1} being 0 and
+	 *                    {@code h8} 63.
+	 * @param count       The number of slots.
+	 * @param whiteToMove The side to move.
+	 * @return The index of the position in the arrays of the
+	 *         {@link TablebaseGenerator}.
+	 */
+	static int getRawIndex(int[] squares, int count, boolean whiteToMove) {
+		int index = 0;
+		for (int i = 0; i < count; i++)
+			index = index << 6 | squares[i];
+		return index << 1 | (whiteToMove ? 0 : 1);
+	}
+
+	/**
+	 * Gets the stored index of a position whose white King already stands on
+	 * one of the stored squares.
+	 *
+	 * @param squares     The square of each slot, all different.
+	 * @param count       The number of slots.
+	 * @param pawns       Whether the table has Pawns.
+	 * @param whiteToMove The side to move.
+	 * @return The index of the position in the stored values, or -1 if the white
+	 *         King must be mirrored first.
+	 */
+	static int getIndex(int[] squares, int count, boolean pawns, boolean whiteToMove) {
+		int index = (pawns ? PAWN_KING_INDEXES : KING_INDEXES)[squares[0]];
+		if (index < 0)
+			return -1;
+		for (int slot = 1; slot < count; slot++) {
+			// Rank of the square among the ones the previous slots left free
+			int square = squares[slot];
+			int rank = square;
+			for (int previous = 0; previous < slot; previous++)
+				if (squares[previous] < square)
+					rank--;
+			index = index * (64 - slot) + rank;
+		}
+		return index << 1 | (whiteToMove ? 0 : 1);
+	}
+
+	/**
+	 * Mirrors a position so that its white King stands on one of the stored
+	 * squares.
+	 *
+	 * @param squares The square of each slot, mirrored in place.
+	 * @param count   The number of slots.
+	 * @param pawns   Whether the table has Pawns.
+	 */
+	static void mirror(int[] squares, int count, boolean pawns) {
+		int king = squares[0];
+		// Horizontal mirror, then vertical and diagonal ones without Pawns
+		int mask = (king & 7) > 3 ? 7 : 0;
+		if (!pawns && king >> 3 > 3)
+			mask |= 56;
+		for (int slot = 0; slot < count; slot++)
+			squares[slot] ^= mask;
+		king = squares[0];
+		if (!pawns && king >> 3 > (king & 7))
+			for (int slot = 0; slot < count; slot++)
+				squares[slot] = (squares[slot] & 7) << 3 | squares[slot] >> 3;
+	}
+
+	/**
+	 * Gets the value of a position.
+	 *
+	 * @param squares     The square of each slot, mirrored in place if needed.
+	 * @param whiteToMove The side to move.
+	 * @return The value for the side to move.
+	 */
+	int get(int[] squares, boolean whiteToMove) {
+		if (values.capacity() == 0)
+			return 0;
+		mirror(squares, types.length, pawns);
+		return values.get(getIndex(squares, types.length, pawns, whiteToMove));
+	}
+
+	/**
+	 * Getter for the pawns value.
+	 *
+	 * @return True if the table has Pawns.
+	 */
+	boolean hasPawns() {
+		return pawns;
+	}
+
+	/**
+	 * Registers a table so that it can be probed.
+	 */
+	static void register(Tablebase table) {
+		tables.put(table.signature, table);
+	}
+
+	/**
+	 * Checks if a table is available.
+	 *
+	 * @param signature The canonical signature of the table.
+	 * @return True if it has been loaded or generated.
+	 */
+	static boolean contains(String signature) {
+		return tables.containsKey(signature);
+	}
+
+	/**
+	 * Memory-maps every {@code .tb} file of {@code directory}.
+	 *
+	 * @param directory The directory holding the tables.
+	 * @return The number of loaded tables.
+	 * @throws IOException If a table can't be mapped.
+	 */
+	public static int load(Path directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.tb")) {
+			for (Path file : files)
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					String name = file.getFileName().toString();
+					try {
+						register(new Tablebase(name.substring(0, name.length() - 3),
+								channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+						count++;
+					} catch (IllegalArgumentException e) {
+						throw new IOException(file + " isn't a valid tablebase.", e);
+					}
+				}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the canonical signature of a material. The strongest side comes
+	 * first and the Pieces of each side are ordered by strength.
+	 *
+	 * @param types  The type of each Piece.
+	 * @param whites The color of each Piece.
+	 * @param count  The number of Pieces, Kings included.
+	 * @return The signature, negated (with a leading '-') if black is the
+	 *         strongest side and the colors must be swapped.
+	 */
+	static String getSignature(int[] types, boolean[] whites, int count) {
+		StringBuilder white = new StringBuilder();
+		StringBuilder black = new StringBuilder();
+		for (int strength = 0; strength < STRENGTH.length(); strength++) {
+			char letter = STRENGTH.charAt(strength);
+			int type = "PNBRQ".indexOf(letter);
+			for (int i = 0; i < count; i++)
+				if (types[i] == type)
+					(whites[i] ? white : black).append(letter);
+		}
+		if (compare(white, black) < 0)
+			return "-K" + black + "K" + white;
+		return "K" + white + "K" + black;
+	}
+
+	/**
+	 * Compares the Pieces of two sides, more Pieces being stronger then stronger
+	 * Pieces first.
+	 */
+	private static int compare(CharSequence a, CharSequence b) {
+		if (a.length() != b.length())
+			return a.length() - b.length();
+		for (int i = 0; i < a.length(); i++)
+			if (a.charAt(i) != b.charAt(i))
+				return STRENGTH.indexOf(b.charAt(i)) - STRENGTH.indexOf(a.charAt(i));
+		return 0;
+	}
+
+	/**
+	 * Probes the tables for a position given as Piece lists.
+	 *
+	 * @param types       The type of each Piece.
+	 * @param whites      The color of each Piece.
+	 * @param squares     The square of each Piece, {@code a1} being 0.
+	 * @param count       The number of Pieces, Kings included.
+	 * @param whiteToMove The side to move.
+	 * @return The value of the position for the side to move, or
+	 *         {@link #UNKNOWN} if no table covers it.
+	 */
+	static int probe(int[] types, boolean[] whites, int[] squares, int count, boolean whiteToMove) {
+		if (count > MAX_PIECES)
+			return UNKNOWN;
+		if (count == 2)
+			// Lone Kings
+			return 0;
+		String signature = getSignature(types, whites, count);
+		boolean flip = signature.startsWith("-");
+		if (flip)
+			signature = signature.substring(1);
+		Tablebase table = tables.get(signature);
+		if (table == null)
+			return UNKNOWN;
+		int[] slotSquares = new int[count];
+		int used = 0;
+		for (int slot = 0; slot < count; slot++) {
+			int piece = 0;
+			while (piece < count && ((used & 1 << piece) != 0 || types[piece] != table.types[slot]
+					|| (whites[piece] != flip) != table.whites[slot]))
+				piece++;
+			if (piece == count)
+				return UNKNOWN;
+			used |= 1 << piece;
+			slotSquares[slot] = flip ? squares[piece] ^ 56 : squares[piece];
+		}
+		return table.get(slotSquares, whiteToMove != flip);
+	}
+
+	/**
+	 * Probes the tables for the current position of {@code chess}.
+	 *
+	 * @param chess       The board.
+	 * @param whiteToMove The side to move.
+	 * @return The value of the position for the side to move, or
+	 *         {@link #UNKNOWN} if no table covers it.
+	 */
+	public static int probe(Chess chess, boolean whiteToMove) {
+		if (tables.isEmpty() || chess.getEvaluation().getPieceCount() > MAX_PIECES)
+			return UNKNOWN;
+		int[] types = new int[MAX_PIECES];
+		boolean[] whites = new boolean[MAX_PIECES];
+		int[] squares = new int[MAX_PIECES];
+		int count = 0;
+		for (Tile[] tiles : chess.getTiles())
+			for (Tile tile : tiles)
+				if (tile.getPiece() != null) {
+					types[count] = tile.getPiece().getType();
+					whites[count] = tile.getPiece().isWhite();
+					squares[count++] = 8 * (7 - tile.getLine()) + tile.getRow();
+				}
+		return probe(types, whites, squares, count, whiteToMove);
+	}
+
+	/**
+	 * Converts a table value to a search score.
+	 *
+	 * @param value A value returned by the probes, not {@link #UNKNOWN}.
+	 * @return A score for the side to move, mates closer to the root being
+	 *         better.
+	 */
+	public static int toScore(int value) {
+		if (value > 0)
+			return AI.MATE_SCORE - value;
+		if (value < 0)
+			return -AI.MATE_SCORE - value - 1;
+		return 0;
+	}
+
+	/**
+	 * Getter for the signature value.
+	 *
+	 * @return The signature to get.
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+}
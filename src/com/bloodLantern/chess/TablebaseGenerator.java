@@ -0,0 +1,581 @@
+package com.bloodLantern.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Command-line tool generating {@link Tablebase}s by retrograde analysis. The
+ * board singleton is far too slow for the millions of positions of a table, so
+ * the generator works on its own compact representation: the square of each
+ * Piece, {@code a1} being 0 and {@code h8} 63.
+ * <p>
+ * Every position is first evaluated forward once, which finds the mates and
+ * looks up the captures and promotions in the already generated smaller tables.
+ * Then each level of distance to mate is resolved from the previous one by
+ * unmaking Moves: the predecessors of a loss in {@code n} are wins in
+ * {@code n + 1}, and a predecessor of a win in {@code n} is a loss in
+ * {@code n + 1} once all its Moves lead to wins. Every pass is split across
+ * the cores. Castling and en passant are ignored. The generator works on every
+ * placement of the Pieces, mirrors included, and only writes the ones the
+ * {@link Tablebase} stores.
+ * <p>
+ * Arguments: {@code dir=<path>} for the output directory (default
+ * {@code tablebases}), then the signatures to generate, for example
+ * {@code KQK KRKP}. The smaller tables they depend on are generated first.
+ *
+ * @author BloodLantern
+ */
+public final class TablebaseGenerator {
+
+	private static final int[] KING_STEPS = { -9, -8, -7, -1, 1, 7, 8, 9 };
+	private static final int[] KNIGHT_STEPS = { -17, -15, -10, -6, 6, 10, 15, 17 };
+	private static final int[] BISHOP_STEPS = { -9, -7, 7, 9 };
+	private static final int[] ROOK_STEPS = { -8, -1, 1, 8 };
+	private static final int[] QUEEN_STEPS = KING_STEPS;
+	private static final int[] PROMOTIONS = { Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT };
+	/**
+	 * Maximum number of Moves of a side, with at most three Pieces.
+	 */
+	private static final int MAX_MOVES = 128;
+	/**
+	 * Number of indexes processed by each parallel task.
+	 */
+	private static final int CHUNK = 1 << 14;
+	/**
+	 * Greatest distance to mate a byte can hold.
+	 */
+	private static final int MAX_DISTANCE = 126;
+
+	private final String signature;
+	private final int[] types;
+	private final boolean[] whites;
+	private final int count;
+	private final byte[] values;
+	/**
+	 * Level at which a still unresolved position gets resolved because of its
+	 * captures and promotions, 0 if none.
+	 */
+	private final byte[] pending;
+	/**
+	 * For the positions that also have quiet Moves, the shortest loss their
+	 * captures and promotions allow: 0 if they have none and -1 if one of them
+	 * doesn't lose.
+	 */
+	private final byte[] captures;
+	private final AtomicInteger lastPending = new AtomicInteger();
+
+	private TablebaseGenerator(Tablebase empty) {
+		signature = empty.getSignature();
+		types = empty.types;
+		whites = empty.whites;
+		count = types.length;
+		values = new byte[Tablebase.getRawSize(count)];
+		pending = new byte[values.length];
+		captures = new byte[values.length];
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = Path.of("tablebases");
+		for (String arg : args)
+			if (arg.startsWith("dir="))
+				directory = Path.of(arg.substring(4));
+		Files.createDirectories(directory);
+		Tablebase.load(directory);
+		for (String arg : args)
+			if (!arg.startsWith("dir="))
+				generate(arg, directory);
+	}
+
+	/**
+	 * Generates the table of {@code signature} and the smaller tables it depends
+	 * on, unless they are already available, and writes them to
+	 * {@code directory}.
+	 *
+	 * @param signature The material signature, for example {@code KRKP}.
+	 * @param directory Where to write the {@code .tb} files.
+	 * @throws IOException If a table can't be written.
+	 */
+	public static void generate(String signature, Path directory) throws IOException {
+		if (Tablebase.contains(signature))
+			return;
+		Tablebase empty = new Tablebase(signature, ByteBuffer.allocate(0));
+		String canonical = Tablebase.getSignature(empty.types, empty.whites, empty.types.length);
+		if (!canonical.equals(signature))
+			throw new IllegalArgumentException(signature + " must be written " + canonical.replace("-", "") + ".");
+
+		// Captures and promotions lead to other tables
+		int count = empty.types.length;
+		for (int slot = 2; slot < count; slot++) {
+			int[] types = empty.types.clone();
+			boolean[] whites = empty.whites.clone();
+			types[slot] = types[count - 1];
+			whites[slot] = whites[count - 1];
+			if (count > 3)
+				generate(Tablebase.getSignature(types, whites, count - 1).replace("-", ""), directory);
+			if (empty.types[slot] == Piece.PAWN)
+				for (int promotion : PROMOTIONS) {
+					types = empty.types.clone();
+					types[slot] = promotion;
+					generate(Tablebase.getSignature(types, empty.whites, count).replace("-", ""), directory);
+				}
+		}
+
+		long time = System.currentTimeMillis();
+		TablebaseGenerator generator = new TablebaseGenerator(empty);
+		int levels = generator.generate();
+		byte[] stored = generator.store(empty.hasPawns());
+		Files.write(directory.resolve(signature + ".tb"), stored);
+		Tablebase.register(new Tablebase(signature, ByteBuffer.wrap(stored)));
+		System.out.println(signature + ": " + levels + " plies, " + stored.length + " bytes, "
+				+ (System.currentTimeMillis() - time) + " milliseconds");
+	}
+
+	/**
+	 * Fills {@link #values}.
+	 *
+	 * @return The longest distance to mate, in plies.
+	 */
+	private int generate() {
+		forEachChunk(this::initialize);
+		int longest = 0;
+		for (int level = 1;; level++) {
+			if (level > MAX_DISTANCE)
+				throw new IllegalStateException(signature + " has mates longer than " + MAX_DISTANCE + " plies.");
+			int current = level;
+			AtomicBoolean changed = new AtomicBoolean();
+			forEachChunk((start, squares, board) -> {
+				if (resolve(current, start, squares, board))
+					changed.set(true);
+			});
+			if (changed.get())
+				longest = level;
+			else if (level >= lastPending.get())
+				break;
+		}
+		for (int i = 0; i < values.length; i++)
+			if (values[i] == Tablebase.ILLEGAL)
+				values[i] = 0;
+		return longest;
+	}
+
+	/**
+	 * Copies the values of the positions whose white King stands on a stored
+	 * square to their stored index, the other positions being mirrors of these.
+	 *
+	 * @param pawns Whether the table has Pawns.
+	 * @return The stored values, empty if they are all draws.
+	 */
+	private byte[] store(boolean pawns) {
+		byte[] stored = new byte[Tablebase.getSize(count, pawns)];
+		boolean decisive = false;
+		int[] squares = new int[count];
+		for (int index = 0; index < values.length; index++) {
+			int rest = index >>> 1;
+			long taken = 0;
+			for (int slot = count - 1; slot >= 0; slot--) {
+				squares[slot] = rest & 63;
+				rest >>>= 6;
+				taken |= 1L << squares[slot];
+			}
+			if (Long.bitCount(taken) != count)
+				// Pieces on the same square
+				continue;
+			int storedIndex = Tablebase.getIndex(squares, count, pawns, (index & 1) == 0);
+			if (storedIndex >= 0) {
+				stored[storedIndex] = values[index];
+				decisive |= values[index] != 0;
+			}
+		}
+		return decisive ? stored : new byte[0];
+	}
+
+	@FunctionalInterface
+	private interface ChunkTask {
+		void run(int start, int[] squares, int[] board);
+	}
+
+	/**
+	 * Runs {@code task} on every chunk of indexes in parallel, each with its own
+	 * scratch arrays.
+	 */
+	private void forEachChunk(ChunkTask task) {
+		IntStream.range(0, (values.length + CHUNK - 1) / CHUNK).parallel()
+				.forEach(chunk -> task.run(chunk * CHUNK, new int[count], new int[64]));
+	}
+
+	private static byte win(int distance) {
+		return (byte) distance;
+	}
+
+	private static byte loss(int distance) {
+		return (byte) -(distance + 1);
+	}
+
+	/**
+	 * Decodes {@code index} into {@code squares} and {@code board}.
+	 *
+	 * @return False if the index doesn't represent a legal position.
+	 */
+	private boolean decode(int index, int[] squares, int[] board) {
+		Arrays.fill(board, -1);
+		int rest = index >>> 1;
+		for (int slot = count - 1; slot >= 0; slot--) {
+			int square = rest & 63;
+			rest >>>= 6;
+			if (board[square] >= 0)
+				return false;
+			if (types[slot] == Piece.PAWN && (square < 8 || square >= 56))
+				return false;
+			squares[slot] = square;
+			board[square] = slot;
+		}
+		// The side that just moved can't be in check
+		return !isAttacked(squares[(index & 1) == 0 ? 1 : 0], (index & 1) == 0, squares, board, -1);
+	}
+
+	/**
+	 * Evaluates every position of a chunk forward: marks the illegal positions
+	 * and the mates, and records the levels given by captures and promotions.
+	 */
+	private void initialize(int start, int[] squares, int[] board) {
+		int[] moves = new int[MAX_MOVES];
+		int[] subTypes = new int[count];
+		boolean[] subWhites = new boolean[count];
+		int[] subSquares = new int[count];
+		for (int index = start; index < Math.min(start + CHUNK, values.length); index++) {
+			if (!decode(index, squares, board)) {
+				values[index] = Tablebase.ILLEGAL;
+				continue;
+			}
+			boolean white = (index & 1) == 0;
+			int moveCount = generateMoves(white, squares, board, moves);
+			boolean legal = false;
+			boolean quiet = false;
+			boolean cross = false;
+			int shortestWin = Integer.MAX_VALUE;
+			int longestLoss = -1;
+			boolean lost = true;
+			for (int i = 0; i < moveCount; i++) {
+				int move = moves[i];
+				int slot = move >>> 12;
+				int to = move & 63;
+				int captured = board[to];
+				int promotion = move >>> 6 & 63;
+				if (!isLegal(white, slot, to, squares, board))
+					continue;
+				legal = true;
+				if (captured < 0 && promotion == 0) {
+					quiet = true;
+					continue;
+				}
+				cross = true;
+				// Looks the child up in a smaller table
+				int subCount = 0;
+				for (int other = 0; other < count; other++)
+					if (other != captured) {
+						subTypes[subCount] = other == slot && promotion != 0 ? promotion : types[other];
+						subWhites[subCount] = whites[other];
+						subSquares[subCount++] = other == slot ? to : squares[other];
+					}
+				int value = Tablebase.probe(subTypes, subWhites, subSquares, subCount, !white);
+				if (value == Tablebase.UNKNOWN)
+					throw new IllegalStateException("Missing table for a child of " + signature + ".");
+				if (value < 0)
+					shortestWin = Math.min(shortestWin, -value);
+				else if (value == 0)
+					lost = false;
+				else
+					longestLoss = Math.max(longestLoss, value + 1);
+			}
+			if (!legal) {
+				if (isAttacked(squares[white ? 0 : 1], !white, squares, board, -1))
+					values[index] = loss(0);
+				// Stalemates stay draws
+				continue;
+			}
+			if (shortestWin != Integer.MAX_VALUE)
+				setPending(index, shortestWin);
+			else if (!quiet && lost)
+				setPending(index, longestLoss);
+			if (quiet && cross)
+				captures[index] = shortestWin != Integer.MAX_VALUE || !lost ? -1 : (byte) longestLoss;
+		}
+	}
+
+	private void setPending(int index, int level) {
+		if (level > MAX_DISTANCE)
+			throw new IllegalStateException(signature + " has mates longer than " + MAX_DISTANCE + " plies.");
+		pending[index] = (byte) level;
+		lastPending.accumulateAndGet(level, Math::max);
+	}
+
+	/**
+	 * Resolves the positions of {@code level} in a chunk: the predecessors of the
+	 * positions of the previous level and the pending ones.
+	 *
+	 * @return True if a position was resolved.
+	 */
+	private boolean resolve(int level, int start, int[] squares, int[] board) {
+		boolean odd = (level & 1) == 1;
+		byte frontier = odd ? loss(level - 1) : win(level - 1);
+		byte value = odd ? win(level) : loss(level);
+		boolean changed = false;
+		int[] moves = null;
+		for (int index = start; index < Math.min(start + CHUNK, values.length); index++) {
+			if (values[index] == 0 && pending[index] == level) {
+				values[index] = value;
+				changed = true;
+				continue;
+			}
+			if (values[index] != frontier)
+				continue;
+			if (moves == null)
+				moves = new int[MAX_MOVES];
+			decode(index, squares, board);
+			// The side that just moved
+			boolean white = (index & 1) == 1;
+			for (int slot = 0; slot < count; slot++) {
+				if (whites[slot] != white)
+					continue;
+				int from = squares[slot];
+				int unmoveCount = generateUnmoves(slot, squares, board, moves);
+				for (int i = 0; i < unmoveCount; i++) {
+					squares[slot] = moves[i];
+					int predecessor = Tablebase.getRawIndex(squares, count, white);
+					if (values[predecessor] == 0) {
+						if (odd) {
+							values[predecessor] = value;
+							changed = true;
+						} else {
+							board[from] = -1;
+							board[moves[i]] = slot;
+							if (isLost(level, predecessor, squares, board)) {
+								values[predecessor] = value;
+								changed = true;
+							}
+							board[moves[i]] = -1;
+							board[from] = slot;
+						}
+					}
+				}
+				squares[slot] = from;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Checks if every Move of a position leads to a win for the opponent. If
+	 * one of the wins is longer than {@code level - 1} plies, the position is
+	 * left pending.
+	 *
+	 * @return True if the position is lost in {@code level} plies.
+	 */
+	private boolean isLost(int level, int index, int[] squares, int[] board) {
+		boolean white = (index & 1) == 0;
+		int[] moves = new int[MAX_MOVES];
+		int moveCount = generateMoves(white, squares, board, moves);
+		int longest = 0;
+		for (int i = 0; i < moveCount; i++) {
+			int move = moves[i];
+			int slot = move >>> 12;
+			int to = move & 63;
+			if (!isLegal(white, slot, to, squares, board))
+				continue;
+			if (board[to] >= 0 || (move >>> 6 & 63) != 0)
+				// Taken into account by captures
+				continue;
+			int from = squares[slot];
+			squares[slot] = to;
+			int child = values[Tablebase.getRawIndex(squares, count, !white)];
+			squares[slot] = from;
+			if (child <= 0)
+				return false;
+			longest = Math.max(longest, child);
+		}
+		int captureLevel = captures[index];
+		if (captureLevel < 0)
+			return false;
+		int required = Math.max(longest + 1, captureLevel);
+		if (required > level) {
+			// A capture or a promotion resists longer
+			setPending(index, required);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Generates the pseudo-legal Moves of a side. Each Move is encoded as
+	 * {@code slot << 12 | promotion << 6 | to}, {@code promotion} being 0 when
+	 * there is none.
+	 *
+	 * @return The number of Moves.
+	 */
+	private int generateMoves(boolean white, int[] squares, int[] board, int[] moves) {
+		int moveCount = 0;
+		for (int slot = 0; slot < count; slot++) {
+			if (whites[slot] != white)
+				continue;
+			int from = squares[slot];
+			if (types[slot] == Piece.PAWN) {
+				int step = white ? 8 : -8;
+				int to = from + step;
+				boolean promotes = to >= 56 || to < 8;
+				if (board[to] < 0) {
+					moveCount = addPawnMove(moves, moveCount, slot, to, promotes);
+					int start = white ? 1 : 6;
+					if (from >> 3 == start && board[to + step] < 0)
+						moves[moveCount++] = slot << 12 | to + step;
+				}
+				for (int side = -1; side <= 1; side += 2) {
+					if ((from & 7) + side < 0 || (from & 7) + side > 7)
+						continue;
+					int target = to + side;
+					if (board[target] >= 0 && whites[board[target]] != white)
+						moveCount = addPawnMove(moves, moveCount, slot, target, promotes);
+				}
+				continue;
+			}
+			boolean slides = types[slot] != Piece.KING && types[slot] != Piece.KNIGHT;
+			for (int step : getSteps(types[slot])) {
+				for (int to = from + step; isStep(to - step, to); to += step) {
+					if (board[to] >= 0) {
+						if (whites[board[to]] != white)
+							moves[moveCount++] = slot << 12 | to;
+						break;
+					}
+					moves[moveCount++] = slot << 12 | to;
+					if (!slides)
+						break;
+				}
+			}
+		}
+		return moveCount;
+	}
+
+	private static int addPawnMove(int[] moves, int moveCount, int slot, int to, boolean promotes) {
+		if (!promotes)
+			moves[moveCount++] = slot << 12 | to;
+		else
+			for (int promotion : PROMOTIONS)
+				moves[moveCount++] = slot << 12 | promotion << 6 | to;
+		return moveCount;
+	}
+
+	/**
+	 * Generates the squares from which the Piece of {@code slot} could have
+	 * made a quiet Move to its current square.
+	 *
+	 * @return The number of squares.
+	 */
+	private int generateUnmoves(int slot, int[] squares, int[] board, int[] froms) {
+		int fromCount = 0;
+		int to = squares[slot];
+		if (types[slot] == Piece.PAWN) {
+			int step = whites[slot] ? -8 : 8;
+			int from = to + step;
+			if (from >= 8 && from < 56 && board[from] < 0) {
+				froms[fromCount++] = from;
+				int rank = whites[slot] ? 3 : 4;
+				if (to >> 3 == rank && board[from + step] < 0)
+					froms[fromCount++] = from + step;
+			}
+			return fromCount;
+		}
+		boolean slides = types[slot] != Piece.KING && types[slot] != Piece.KNIGHT;
+		for (int step : getSteps(types[slot]))
+			for (int from = to + step; isStep(from - step, from) && board[from] < 0; from += step) {
+				froms[fromCount++] = from;
+				if (!slides)
+					break;
+			}
+		return fromCount;
+	}
+
+	/**
+	 * Checks that the Move of {@code slot} to {@code to} doesn't leave its own
+	 * King in check.
+	 */
+	private boolean isLegal(boolean white, int slot, int to, int[] squares, int[] board) {
+		int from = squares[slot];
+		int captured = board[to];
+		board[from] = -1;
+		board[to] = slot;
+		squares[slot] = to;
+		boolean legal = !isAttacked(squares[white ? 0 : 1], !white, squares, board, captured);
+		squares[slot] = from;
+		board[to] = captured;
+		board[from] = slot;
+		return legal;
+	}
+
+	/**
+	 * Checks if {@code square} is attacked by a side.
+	 *
+	 * @param ignored A slot that has been captured, or -1.
+	 */
+	private boolean isAttacked(int square, boolean byWhite, int[] squares, int[] board, int ignored) {
+		for (int slot = 0; slot < count; slot++) {
+			if (slot == ignored || whites[slot] != byWhite)
+				continue;
+			int from = squares[slot];
+			int dx = (square & 7) - (from & 7);
+			int dy = (square >> 3) - (from >> 3);
+			switch (types[slot]) {
+			case Piece.PAWN:
+				if (Math.abs(dx) == 1 && dy == (byWhite ? 1 : -1))
+					return true;
+				break;
+			case Piece.KNIGHT:
+				if (Math.abs(dx * dy) == 2)
+					return true;
+				break;
+			case Piece.KING:
+				if (Math.max(Math.abs(dx), Math.abs(dy)) == 1)
+					return true;
+				break;
+			default:
+				boolean straight = dx == 0 || dy == 0;
+				boolean diagonal = Math.abs(dx) == Math.abs(dy);
+				if (square == from || !(straight && types[slot] != Piece.BISHOP
+						|| diagonal && types[slot] != Piece.ROOK))
+					break;
+				int step = Integer.signum(dy) * 8 + Integer.signum(dx);
+				int between = from + step;
+				while (between != square && (board[between] < 0 || board[between] == ignored))
+					between += step;
+				if (between == square)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private static int[] getSteps(int type) {
+		return switch (type) {
+		case Piece.KNIGHT -> KNIGHT_STEPS;
+		case Piece.BISHOP -> BISHOP_STEPS;
+		case Piece.ROOK -> ROOK_STEPS;
+		case Piece.QUEEN -> QUEEN_STEPS;
+		default -> KING_STEPS;
+		};
+	}
+
+	/**
+	 * Checks that a single step from {@code from} to {@code to} stays on the
+	 * board instead of wrapping around an edge.
+	 */
+	private static boolean isStep(int from, int to) {
+		return to >= 0 && to < 64 && Math.abs((to & 7) - (from & 7)) <= 2;
+	}
+
+}
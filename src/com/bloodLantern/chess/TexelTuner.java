@@ -0,0 +1,653 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.bloodLantern.chess.pieces.King;
+import com.bloodLantern.chess.pieces.Pawn;
+import com.bloodLantern.chess.pieces.Piece;
+import com.bloodLantern.chess.pieces.Queen;
+
+/**
+ * Command-line tool tuning the {@link EvaluationParameters} on positions
+ * labeled with the result of their game, by minimizing the mean squared
+ * difference between the results and the evaluations mapped to expected
+ * scores by a sigmoid (Texel's tuning method).
+ * <p>
+ * Each position is first resolved to the end of its quiescence search line on
+ * a pool of threads, every thread having its own boards, so that only quiet
+ * positions are evaluated. The classical evaluation of such a position is a
+ * function of a few feature counts (how many Pieces of each type, on which
+ * squares, how many protected Tiles...) which are extracted once. The
+ * parameters are then optimized by gradient descent (Adam) on all the
+ * positions at once, the gradient being summed over slices of the positions on
+ * every core. The sigmoid scale is fitted to the starting parameters first.
+ * <p>
+ * Arguments: {@code out=<path>} for the parameters file to write (default
+ * {@code params.txt}), {@code params=<path>} for the parameters to start from
+ * (default: the built-in ones), {@code iterations=<n>} for the number of
+ * gradient steps (default 1000), {@code rate=<cp>} for the step size (default
+ * 1), {@code threads=<n>} for the number of threads (default: every core),
+ * then the files of labeled positions. Each line is a FEN or EPD position
+ * followed by its result as {@code 1-0}, {@code 1/2-1/2} or {@code 0-1}
+ * (after a semicolon or quoted in a {@code c9} operation for example) or as
+ * {@code [1.0]}, {@code [0.5]} or {@code [0.0]}. Lines without any result,
+ * invalid positions, positions where the game is over and King and Pawn versus
+ * King positions, which the evaluation reads from the {@link KpkBitbase}, are
+ * skipped.
+ *
+ * @author BloodLantern
+ */
+public final class TexelTuner {
+
+	/**
+	 * Number of positions resolved by a single task.
+	 */
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Offset of the first value of each table in the parameter vector, in
+	 * {@link EvaluationParameters#getTables()} order.
+	 */
+	private static final int[] OFFSETS = new int[EvaluationParameters.getDefault().getTables().size()];
+	/**
+	 * How each parameter is used: {@link EvaluationParameters#MIDDLEGAME},
+	 * {@link EvaluationParameters#ENDGAME} or {@link EvaluationParameters#BOTH}.
+	 * The King attack units are only used through {@link #getKingDanger}.
+	 */
+	private static final int[] KINDS = new int[EvaluationParameters.getDefault().size()];
+
+	static {
+		int offset = 0;
+		for (int i = 0; i < OFFSETS.length; i++) {
+			EvaluationParameters.Table table = EvaluationParameters.getDefault().getTables().get(i);
+			OFFSETS[i] = offset;
+			for (int j = 0; j < table.values().length; j++)
+				KINDS[offset + j] = switch (table.kind()) {
+				case EvaluationParameters.PAIR -> j == 0 ? EvaluationParameters.MIDDLEGAME : EvaluationParameters.ENDGAME;
+				default -> table.kind();
+				};
+			offset += table.values().length;
+		}
+	}
+
+	private static final int PIECE_VALUES = getOffset("pieceValues");
+	/**
+	 * Offsets of the middlegame piece-square tables indexed by
+	 * {@link Piece#getType()}.
+	 */
+	private static final int[] MG_TABLES = { getOffset("pawnMg"), getOffset("knight"), getOffset("bishop"),
+			getOffset("rook"), getOffset("queen"), getOffset("kingMg") };
+	/**
+	 * Offsets of the endgame piece-square tables indexed by
+	 * {@link Piece#getType()}.
+	 */
+	private static final int[] EG_TABLES = { getOffset("pawnEg"), getOffset("knight"), getOffset("bishop"),
+			getOffset("rook"), getOffset("queen"), getOffset("kingEg") };
+	private static final int MOBILITY_MG = getOffset("mobilityMg");
+	private static final int MOBILITY_EG = getOffset("mobilityEg");
+	private static final int KING_ATTACK_UNITS = getOffset("kingAttackUnits");
+	private static final int DOUBLED = getOffset("doubled");
+	private static final int ISOLATED = getOffset("isolated");
+	private static final int BACKWARD = getOffset("backward");
+	private static final int PASSED_MG = getOffset("passedMg");
+	private static final int PASSED_EG = getOffset("passedEg");
+
+	/**
+	 * Number of King attack counts of a position: for each King, the attacks on
+	 * its zone by each enemy Piece type.
+	 */
+	private static final int ATTACKS = 12;
+
+	/**
+	 * Positions reduced to the features of the classical evaluation. The
+	 * evaluation of a position is the sum of its feature counts times their
+	 * parameters, tapered by its phase, minus the King danger.
+	 */
+	private static final class Features {
+		private int size = 0;
+		/**
+		 * Index of the first feature of each position, and of the next position.
+		 */
+		private int[] starts = new int[BATCH_SIZE + 1];
+		private byte[] phases = new byte[BATCH_SIZE];
+		/**
+		 * The results from the white point of view, in half points.
+		 */
+		private byte[] results = new byte[BATCH_SIZE];
+		/**
+		 * {@link #ATTACKS} counts per position, the white King ones first.
+		 */
+		private byte[] attacks = new byte[BATCH_SIZE * ATTACKS];
+		private int entries = 0;
+		/**
+		 * The parameter of each feature.
+		 */
+		private short[] indices = new short[BATCH_SIZE * 32];
+		/**
+		 * The white minus black count of each feature.
+		 */
+		private short[] counts = new short[BATCH_SIZE * 32];
+
+		private void addPosition(int phase, int result, byte[] positionAttacks) {
+			if (size + 1 == phases.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+				phases = Arrays.copyOf(phases, phases.length * 2);
+				results = Arrays.copyOf(results, results.length * 2);
+				attacks = Arrays.copyOf(attacks, attacks.length * 2);
+			}
+			phases[size] = (byte) phase;
+			results[size] = (byte) result;
+			System.arraycopy(positionAttacks, 0, attacks, size * ATTACKS, ATTACKS);
+			starts[++size] = entries;
+		}
+
+		private void addFeature(int index, int count) {
+			if (entries == indices.length) {
+				indices = Arrays.copyOf(indices, indices.length * 2);
+				counts = Arrays.copyOf(counts, counts.length * 2);
+			}
+			indices[entries] = (short) index;
+			counts[entries++] = (short) count;
+		}
+
+		private void addAll(Features other) {
+			for (int i = 0; i < other.size; i++) {
+				for (int entry = other.starts[i]; entry < other.starts[i + 1]; entry++)
+					addFeature(other.indices[entry], other.counts[entry]);
+				addPosition(other.phases[i], other.results[i],
+						Arrays.copyOfRange(other.attacks, i * ATTACKS, (i + 1) * ATTACKS));
+			}
+		}
+	}
+
+	private final ExecutorService pool;
+	private final int threads;
+	private final Features positions = new Features();
+	private long skipped = 0;
+	/**
+	 * The sigmoid scale.
+	 */
+	private double k = 1;
+
+	private TexelTuner(int threads) {
+		this.threads = threads;
+		pool = Executors.newFixedThreadPool(threads);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path out = Path.of("params.txt");
+		int iterations = 1000;
+		double rate = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<Path> inputs = new ArrayList<>();
+		for (String arg : args)
+			if (arg.startsWith("out="))
+				out = Path.of(arg.substring(4));
+			else if (arg.startsWith("params="))
+				EvaluationParameters.getDefault().load(Path.of(arg.substring(7)));
+			else if (arg.startsWith("iterations="))
+				iterations = Integer.valueOf(arg.substring(11));
+			else if (arg.startsWith("rate="))
+				rate = Double.valueOf(arg.substring(5));
+			else if (arg.startsWith("threads="))
+				threads = Integer.valueOf(arg.substring(8));
+			else
+				inputs.add(Path.of(arg));
+
+		long time = System.currentTimeMillis();
+		TexelTuner tuner = new TexelTuner(threads);
+		try {
+			for (Path input : inputs)
+				tuner.read(input);
+			if (tuner.positions.size == 0) {
+				System.out.println("No position to tune on");
+				return;
+			}
+			System.out.println("Positions: " + tuner.positions.size + "  Skipped: " + tuner.skipped + "  Time: "
+					+ (System.currentTimeMillis() - time) + " milliseconds");
+			double[] parameters = getParameters();
+			tuner.fitScale(parameters);
+			double error = tuner.getError(parameters);
+			System.out.printf("K: %.4f  Error: %.6f%n", tuner.k, error);
+			tuner.optimize(parameters, iterations, rate);
+			setParameters(parameters);
+			EvaluationParameters.getDefault().save(out);
+			System.out.printf("Error: %.6f -> %.6f  Time: %d milliseconds%n", error, tuner.getError(parameters),
+					System.currentTimeMillis() - time);
+		} finally {
+			tuner.pool.shutdownNow();
+		}
+	}
+
+	private static int getOffset(String name) {
+		for (int i = 0; i < OFFSETS.length; i++)
+			if (EvaluationParameters.getDefault().getTables().get(i).name().equals(name))
+				return OFFSETS[i];
+		throw new IllegalArgumentException("Unknown evaluation parameter: " + name);
+	}
+
+	/**
+	 * @return The values of every table, in {@link EvaluationParameters#getTables()}
+	 *         order.
+	 */
+	private static double[] getParameters() {
+		double[] parameters = new double[KINDS.length];
+		int offset = 0;
+		for (EvaluationParameters.Table table : EvaluationParameters.getDefault().getTables())
+			for (int value : table.values())
+				parameters[offset++] = value;
+		return parameters;
+	}
+
+	/**
+	 * Rounds the parameters into the tables.
+	 */
+	private static void setParameters(double[] parameters) {
+		int offset = 0;
+		for (EvaluationParameters.Table table : EvaluationParameters.getDefault().getTables())
+			for (int i = 0; i < table.values().length; i++)
+				table.values()[i] = (int) Math.round(parameters[offset++]);
+	}
+
+	/**
+	 * Reads a file of labeled positions and resolves them on every thread, in
+	 * reading order.
+	 */
+	private void read(Path input) throws IOException, InterruptedException {
+		// The batches read but not added yet, bounded to keep the memory low
+		Deque<Future<Features>> pending = new ArrayDeque<>();
+		try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.ISO_8859_1)) {
+			List<String> batch = new ArrayList<>(BATCH_SIZE);
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.isBlank())
+					continue;
+				batch.add(line);
+				if (batch.size() == BATCH_SIZE) {
+					List<String> lines = batch;
+					pending.add(pool.submit(() -> resolve(lines)));
+					batch = new ArrayList<>(BATCH_SIZE);
+					if (pending.size() >= threads * 4)
+						add(pending.poll());
+				}
+			}
+			if (!batch.isEmpty()) {
+				List<String> lines = batch;
+				pending.add(pool.submit(() -> resolve(lines)));
+			}
+		}
+		while (!pending.isEmpty())
+			add(pending.poll());
+	}
+
+	private void add(Future<Features> future) throws InterruptedException {
+		Features batch;
+		try {
+			batch = future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		positions.addAll(batch);
+	}
+
+	/**
+	 * Resolves labeled positions on a board bound to the current thread and
+	 * extracts their features.
+	 *
+	 * @return The features of the valid positions.
+	 */
+	private Features resolve(List<String> lines) {
+		Features features = new Features();
+		Fen fen = new Fen();
+		int[] counts = new int[KINDS.length];
+		byte[] attacks = new byte[ATTACKS];
+		int invalid = 0;
+		for (String line : lines) {
+			int result = parseResult(line);
+			Chess chess;
+			try {
+				if (result == -1)
+					throw new IllegalArgumentException("No result");
+				int end = line.indexOf(';');
+				chess = new Chess(line.substring(0, fen.validate(line, 0, end == -1 ? line.length() : end)).trim());
+			} catch (IllegalArgumentException e) {
+				invalid++;
+				continue;
+			}
+			boolean white = chess.getTurn();
+			Evaluation evaluation = chess.getEvaluation();
+			if (chess.getStatus(white) != GameStatus.ONGOING
+					|| evaluation.getPieceCount() == 3 && evaluation.getPawnKey() != 0) {
+				invalid++;
+				continue;
+			}
+			List<Move> captures = new ArrayList<>();
+			quiesce(chess, -Integer.MAX_VALUE, Integer.MAX_VALUE, white, captures);
+			for (Move move : captures)
+				move.makeMove(false);
+			extract(chess, counts, attacks);
+			for (int i = 0; i < counts.length; i++)
+				if (counts[i] != 0) {
+					features.addFeature(i, counts[i]);
+					counts[i] = 0;
+				}
+			features.addPosition(Math.min(evaluation.getPhase(), Evaluation.MAX_PHASE), result, attacks);
+			for (int i = captures.size() - 1; i >= 0; i--)
+				captures.get(i).unmakeMove(false);
+		}
+		synchronized (this) {
+			skipped += invalid;
+		}
+		return features;
+	}
+
+	/**
+	 * Finds the result of a labeled position line.
+	 *
+	 * @return The result from the white point of view in half points, -1 if
+	 *         there isn't any.
+	 */
+	private static int parseResult(String line) {
+		if (line.contains("1/2-1/2") || line.contains("[0.5]"))
+			return 1;
+		if (line.contains("1-0") || line.contains("[1.0]"))
+			return 2;
+		if (line.contains("0-1") || line.contains("[0.0]"))
+			return 0;
+		return -1;
+	}
+
+	/**
+	 * Quiescence search as done by {@link Search}, recording its principal
+	 * variation.
+	 *
+	 * @param line The list to fill with the best line of captures.
+	 * @return The score of {@code turn}.
+	 */
+	private static int quiesce(Chess chess, int alpha, int beta, boolean turn, List<Move> line) {
+		int evaluation = AI.evaluate(turn);
+		if (evaluation >= beta)
+			return evaluation;
+		alpha = Math.max(alpha, evaluation);
+		int best = evaluation;
+
+		List<Move> captureMoves = chess.getPossibleMoves(turn);
+		captureMoves.removeIf(move -> !move.isCapture() && !move.isPromotion());
+		for (Move move : captureMoves)
+			if (move.isPromotion() && move.getPiece() instanceof Pawn pawn)
+				move.setPromotionPiece(new Queen(pawn));
+		AI.orderMoves(captureMoves, 0);
+
+		List<Move> childLine = new ArrayList<>();
+		for (Move captureMove : captureMoves) {
+			captureMove.makeMove(false);
+			childLine.clear();
+			evaluation = -quiesce(chess, -beta, -alpha, !turn, childLine);
+			captureMove.unmakeMove(false);
+			best = Math.max(best, evaluation);
+			if (evaluation > alpha) {
+				alpha = evaluation;
+				line.clear();
+				line.add(captureMove);
+				line.addAll(childLine);
+			}
+			if (alpha >= beta)
+				break;
+		}
+		return best;
+	}
+
+	/**
+	 * Counts the features of the classical evaluation of the board, as
+	 * {@link Evaluation}, {@link PawnHashTable} and
+	 * {@link Evaluation#evaluateClassical(boolean)} use them.
+	 *
+	 * @param counts  The white minus black count of each parameter, to add to.
+	 * @param attacks The King attack counts, to fill.
+	 */
+	private static void extract(Chess chess, int[] counts, byte[] attacks) {
+		boolean activity = chess.getEvaluation().getParameters().isActivity();
+		Tile[][] tiles = chess.getTiles();
+		for (Tile[] tiless : tiles)
+			for (Tile tile : tiless) {
+				Piece piece = tile.getPiece();
+				if (piece != null) {
+					int type = piece.getType();
+					int sign = piece.isWhite() ? 1 : -1;
+					int square = Evaluation.getSquare(piece.isWhite(), tile);
+					counts[PIECE_VALUES + type] += sign;
+					counts[MG_TABLES[type] + square] += sign;
+					if (EG_TABLES[type] != MG_TABLES[type])
+						counts[EG_TABLES[type] + square] += sign;
+					if (piece instanceof Pawn pawn) {
+						if (pawn.isDoubled()) {
+							counts[DOUBLED] += sign;
+							counts[DOUBLED + 1] += sign;
+						}
+						if (pawn.isIsolated()) {
+							counts[ISOLATED] += sign;
+							counts[ISOLATED + 1] += sign;
+						} else if (pawn.isBackward()) {
+							counts[BACKWARD] += sign;
+							counts[BACKWARD + 1] += sign;
+						}
+						if (pawn.isPassed()) {
+							int rank = pawn.isWhite() ? 7 - tile.getLine() : tile.getLine();
+							counts[PASSED_MG + rank] += sign;
+							counts[PASSED_EG + rank] += sign;
+						}
+					}
+				}
+				if (activity)
+					for (Piece protecting : tile.getProtecting())
+						if (piece == null || piece.isEnemy(protecting.isWhite())) {
+							int sign = protecting.isWhite() ? 1 : -1;
+							counts[MOBILITY_MG + protecting.getType()] += sign;
+							counts[MOBILITY_EG + protecting.getType()] += sign;
+						}
+			}
+		Arrays.fill(attacks, (byte) 0);
+		if (activity) {
+			countKingAttacks(tiles, chess.getWhiteKing(), attacks, 0);
+			countKingAttacks(tiles, chess.getBlackKing(), attacks, ATTACKS / 2);
+		}
+	}
+
+	/**
+	 * Counts the enemy Pieces protecting the Tile of {@code king} and the
+	 * adjacent ones by type.
+	 */
+	private static void countKingAttacks(Tile[][] tiles, King king, byte[] attacks, int offset) {
+		if (king == null || king.getTile() == null)
+			return;
+		Tile tile = king.getTile();
+		for (int row = Math.max(tile.getRow() - 1, 0); row <= Math.min(tile.getRow() + 1, 7); row++)
+			for (int line = Math.max(tile.getLine() - 1, 0); line <= Math.min(tile.getLine() + 1, 7); line++)
+				for (Piece piece : tiles[row][line].getProtecting())
+					if (piece.isEnemy(king.isWhite()))
+						attacks[offset + piece.getType()]++;
+	}
+
+	/**
+	 * Gets the attack units of a King, from which its danger is computed.
+	 */
+	private double getKingAttackUnits(double[] parameters, int position, int offset) {
+		double units = 0;
+		for (int type = 0; type < ATTACKS / 2; type++)
+			units += parameters[KING_ATTACK_UNITS + type] * positions.attacks[position * ATTACKS + offset + type];
+		return units;
+	}
+
+	/**
+	 * Gets the middlegame penalty of a King, as
+	 * {@link Evaluation#evaluateClassical(boolean)} does.
+	 */
+	private static double getKingDanger(double units) {
+		return Math.min(units * units / 4, Evaluation.MAX_KING_DANGER);
+	}
+
+	/**
+	 * Gets the weight of each kind of parameter in a position.
+	 *
+	 * @return The weights indexed by {@link EvaluationParameters#MIDDLEGAME},
+	 *         {@link EvaluationParameters#ENDGAME} and
+	 *         {@link EvaluationParameters#BOTH}.
+	 */
+	private double[] getWeights(int position) {
+		double middlegame = (double) positions.phases[position] / Evaluation.MAX_PHASE;
+		return new double[] { middlegame, 1 - middlegame, 1 };
+	}
+
+	/**
+	 * Gets the evaluation of a position from the white point of view.
+	 */
+	private double evaluate(double[] parameters, int position) {
+		double[] weights = getWeights(position);
+		double score = 0;
+		for (int entry = positions.starts[position]; entry < positions.starts[position + 1]; entry++) {
+			int index = positions.indices[entry];
+			score += positions.counts[entry] * parameters[index] * weights[KINDS[index]];
+		}
+		return score - weights[EvaluationParameters.MIDDLEGAME]
+				* (getKingDanger(getKingAttackUnits(parameters, position, 0))
+						- getKingDanger(getKingAttackUnits(parameters, position, ATTACKS / 2)));
+	}
+
+	private double getSigmoid(double evaluation) {
+		return 1 / (1 + Math.pow(10, -k * evaluation / 400));
+	}
+
+	/**
+	 * Gets the mean squared error of the predicted results.
+	 */
+	private double getError(double[] parameters) throws InterruptedException {
+		double error = 0;
+		for (double[] slice : run(parameters, false))
+			error += slice[0];
+		return error / positions.size;
+	}
+
+	/**
+	 * Computes the squared errors of slices of the positions on every thread.
+	 *
+	 * @param gradient Should the gradients of the squared errors be computed too
+	 *                 ?
+	 * @return For each slice, its sum of squared errors followed by the sum of
+	 *         their gradients if computed.
+	 */
+	private List<double[]> run(double[] parameters, boolean gradient) throws InterruptedException {
+		List<Callable<double[]>> tasks = new ArrayList<>();
+		int slices = threads * 4;
+		for (int i = 0; i < slices; i++) {
+			int start = (int) ((long) positions.size * i / slices);
+			int end = (int) ((long) positions.size * (i + 1) / slices);
+			tasks.add(() -> run(parameters, gradient, start, end));
+		}
+		List<double[]> results = new ArrayList<>();
+		for (Future<double[]> future : pool.invokeAll(tasks))
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		return results;
+	}
+
+	private double[] run(double[] parameters, boolean gradient, int start, int end) {
+		double[] result = new double[gradient ? parameters.length + 1 : 1];
+		double scale = k * Math.log(10) / 400;
+		for (int position = start; position < end; position++) {
+			double predicted = getSigmoid(evaluate(parameters, position));
+			double difference = positions.results[position] / 2.0 - predicted;
+			result[0] += difference * difference;
+			if (!gradient)
+				continue;
+			// Derivative of the squared error by the evaluation
+			double derivative = -2 * difference * predicted * (1 - predicted) * scale;
+			double[] weights = getWeights(position);
+			for (int entry = positions.starts[position]; entry < positions.starts[position + 1]; entry++) {
+				int index = positions.indices[entry];
+				result[1 + index] += derivative * positions.counts[entry] * weights[KINDS[index]];
+			}
+			for (int offset = 0; offset < ATTACKS; offset += ATTACKS / 2) {
+				double units = getKingAttackUnits(parameters, position, offset);
+				if (units * units / 4 >= Evaluation.MAX_KING_DANGER)
+					continue;
+				// The white King danger is subtracted, the black one added
+				double sign = offset == 0 ? -1 : 1;
+				for (int type = 0; type < ATTACKS / 2; type++)
+					result[1 + KING_ATTACK_UNITS + type] += derivative * sign * weights[EvaluationParameters.MIDDLEGAME]
+							* units / 2 * positions.attacks[position * ATTACKS + offset + type];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fits the sigmoid scale minimizing the error of the given parameters by a
+	 * golden-section search.
+	 */
+	private void fitScale(double[] parameters) throws InterruptedException {
+		double ratio = (Math.sqrt(5) - 1) / 2;
+		double low = 0;
+		double high = 5;
+		for (int i = 0; i < 40; i++) {
+			double left = high - ratio * (high - low);
+			double right = low + ratio * (high - low);
+			k = left;
+			double leftError = getError(parameters);
+			k = right;
+			if (leftError < getError(parameters))
+				high = right;
+			else
+				low = left;
+		}
+		k = (low + high) / 2;
+	}
+
+	/**
+	 * Minimizes the error by Adam gradient descent.
+	 *
+	 * @param rate The step size, about how much a parameter can change in a
+	 *             single iteration.
+	 */
+	private void optimize(double[] parameters, int iterations, double rate) throws InterruptedException {
+		double beta1 = 0.9;
+		double beta2 = 0.999;
+		double[] mean = new double[parameters.length];
+		double[] variance = new double[parameters.length];
+		for (int iteration = 1; iteration <= iterations; iteration++) {
+			double error = 0;
+			double[] gradient = new double[parameters.length];
+			for (double[] slice : run(parameters, true)) {
+				error += slice[0];
+				for (int i = 0; i < gradient.length; i++)
+					gradient[i] += slice[1 + i];
+			}
+			for (int i = 0; i < parameters.length; i++) {
+				double g = gradient[i] / positions.size;
+				mean[i] = beta1 * mean[i] + (1 - beta1) * g;
+				variance[i] = beta2 * variance[i] + (1 - beta2) * g * g;
+				double meanHat = mean[i] / (1 - Math.pow(beta1, iteration));
+				double varianceHat = variance[i] / (1 - Math.pow(beta2, iteration));
+				parameters[i] -= rate * meanHat / (Math.sqrt(varianceHat) + 1e-12);
+			}
+			if (iteration % 100 == 0 || iteration == iterations)
+				System.out.printf("Iteration: %d  Error: %.6f%n", iteration, error / positions.size);
+		}
+	}
+
+}
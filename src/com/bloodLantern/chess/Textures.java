@@ -0,0 +1,133 @@
+package com.bloodLantern.chess;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+import javax.imageio.ImageIO;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Loads the textures from the classpath. The Pieces come from a single atlas
+ * holding a row of white Pieces above a row of black ones, ordered King, Queen,
+ * Bishop, Knight, Rook and Pawn. The images are decoded on background threads
+ * as soon as {@link #preload()} is called, the getters only waiting for them if
+ * they aren't ready yet.
+ *
+ * @author BloodLantern
+ */
+public final class Textures {
+
+	private static final String ATLAS = "/pieces.png";
+	private static final String BOARD = "/board.jpg";
+	/**
+	 * Column of each Piece type in the atlas, indexed by {@link Piece#getType()}.
+	 */
+	private static final int[] COLUMNS = { 5, 3, 2, 4, 1, 0 };
+
+	private static CompletableFuture<Image[]> pieces = null;
+	private static CompletableFuture<Image> board = null;
+
+	private Textures() {
+	}
+
+	/**
+	 * Starts decoding the textures in the background. Does nothing if already
+	 * started.
+	 */
+	public static synchronized void preload() {
+		if (pieces != null)
+			return;
+		pieces = CompletableFuture.supplyAsync(Textures::loadPieces);
+		board = CompletableFuture.supplyAsync(() -> {
+			BufferedImage image = read(BOARD);
+			return image == null ? null : copy(image, image.getWidth(), image.getHeight());
+		});
+	}
+
+	/**
+	 * Gets the texture of a Piece.
+	 *
+	 * @param type  The type of the Piece as returned by {@link Piece#getType()}.
+	 * @param white The color of the Piece.
+	 * @return The texture, null if the atlas couldn't be loaded.
+	 */
+	public static Image getPiece(int type, boolean white) {
+		preload();
+		return pieces.join()[type * 2 + (white ? 0 : 1)];
+	}
+
+	/**
+	 * Gets the texture of the board.
+	 *
+	 * @return The texture, null if it couldn't be loaded.
+	 */
+	public static Image getBoard() {
+		preload();
+		return board.join();
+	}
+
+	/**
+	 * Slices the atlas into the texture of each Piece.
+	 *
+	 * @return The textures by type then color, white first. Null elements if the
+	 *         atlas couldn't be loaded.
+	 */
+	private static Image[] loadPieces() {
+		Image[] textures = new Image[12];
+		BufferedImage atlas = read(ATLAS);
+		if (atlas == null)
+			return textures;
+		int size = atlas.getWidth() / COLUMNS.length;
+		for (int type = 0; type < COLUMNS.length; type++)
+			for (int row = 0; row < 2; row++)
+				textures[type * 2 + row] = copy(atlas.getSubimage(COLUMNS[type] * size, row * size, size, size), size,
+						size);
+		return textures;
+	}
+
+	/**
+	 * Decodes an image resource.
+	 *
+	 * @return The image, null if it couldn't be read.
+	 */
+	private static BufferedImage read(String resource) {
+		try (InputStream input = Textures.class.getResourceAsStream(resource)) {
+			if (input == null)
+				throw new IOException("Missing resource: " + resource);
+			return ImageIO.read(input);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Draws an image into a new one in the format of the screen, which can be
+	 * kept in video memory.
+	 *
+	 * @param image  The image to copy.
+	 * @param width  The width of the copy, the image being scaled to it.
+	 * @param height The height of the copy.
+	 * @return The copy.
+	 */
+	public static BufferedImage copy(Image image, int width, int height) {
+		BufferedImage copy = GraphicsEnvironment.isHeadless()
+				? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+				: GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+						.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		Graphics2D g = copy.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+		return copy;
+	}
+
+}
@@ -123,7 +123,8 @@ public class Tile {
 	}
 
 	/**
-	 * Setter for the piece value. Also sets {@code piece}'s Tile to this one.
+	 * Setter for the piece value. Also sets {@code piece}'s Tile to this one and
+	 * keeps the board {@link Evaluation} up to date.
 	 *
 	 * @param piece The piece to set.
 	 * @param setXAndY Should this method also set the X and Y coordinates of this
@@ -133,6 +134,13 @@ public class Tile {
 		if (piece != null)
 			if (piece.getTile() != this)
 				piece.setTile(this, setXAndY);
+		if (this.piece != piece) {
+			Evaluation evaluation = Chess.getInstance().getEvaluation();
+			if (this.piece != null)
+				evaluation.remove(this.piece, this);
+			if (piece != null)
+				evaluation.add(piece, this);
+		}
 		this.piece = piece;
 	}
 
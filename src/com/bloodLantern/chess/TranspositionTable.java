@@ -0,0 +1,117 @@
+package com.bloodLantern.chess;
+
+import java.util.Arrays;
+
+/**
+ * Lock-free table of search results keyed by position hash, shared by every
+ * {@link Search}. As in the {@link EvaluationCache}, each entry is stored as the
+ * key XORed with the data then the data itself, so a torn write from another
+ * thread fails the key check instead of returning garbage.
+ * <p>
+ * The data packs the best Move in the Polyglot encoding (bits 0-15), the depth
+ * (bits 16-23), the bound (bits 24-25), a used flag (bit 26) and the score
+ * (bits 32-63).
+ *
+ * @author BloodLantern
+ */
+public final class TranspositionTable {
+
+	/**
+	 * The score is exact.
+	 */
+	public static final int EXACT = 0;
+	/**
+	 * The score is a lower bound: the search failed high.
+	 */
+	public static final int LOWER = 1;
+	/**
+	 * The score is an upper bound: the search failed low.
+	 */
+	public static final int UPPER = 2;
+
+	private final long[] entries;
+	private final int mask;
+
+	/**
+	 * Constructs a TranspositionTable.
+	 *
+	 * @param size The number of entries. Rounded up to a power of two.
+	 * @throws IllegalArgumentException If {@code size} is negative or zero.
+	 */
+	public TranspositionTable(int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("The transposition table size must be positive.");
+		size = Integer.highestOneBit(size - 1) << 1;
+		if (size == 0)
+			size = 1;
+		entries = new long[size * 2];
+		mask = size - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 *
+	 * @param key The hash of the position.
+	 * @return The data of the entry, to read with the static getters, or 0 if the
+	 *         position isn't stored.
+	 */
+	public long probe(long key) {
+		int index = ((int) key & mask) << 1;
+		long data = entries[index + 1];
+		if ((entries[index] ^ data) != key)
+			return 0;
+		return data;
+	}
+
+	/**
+	 * Stores the result of a search. Entries of another position are always
+	 * replaced, entries of the same position only by a search at least as deep.
+	 *
+	 * @param key   The hash of the position.
+	 * @param move  The best Move in the Polyglot encoding, 0 if unknown.
+	 * @param depth The depth of the search.
+	 * @param bound One of {@link #EXACT}, {@link #LOWER} or {@link #UPPER}.
+	 * @param score The score for the side to move.
+	 */
+	public void store(long key, int move, int depth, int bound, int score) {
+		int index = ((int) key & mask) << 1;
+		long old = entries[index + 1];
+		if ((entries[index] ^ old) == key && getDepth(old) > depth)
+			return;
+		long data = (move & 0xFFFFL) | (long) Math.min(depth, 0xFF) << 16 | (long) bound << 24 | 1L << 26
+				| (long) score << 32;
+		entries[index] = key ^ data;
+		entries[index + 1] = data;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+	}
+
+	public static int getMove(long data) {
+		return (int) (data & 0xFFFF);
+	}
+
+	public static int getDepth(long data) {
+		return (int) (data >>> 16 & 0xFF);
+	}
+
+	public static int getBound(long data) {
+		return (int) (data >>> 24 & 3);
+	}
+
+	public static int getScore(long data) {
+		return (int) (data >> 32);
+	}
+
+	/**
+	 * @return The number of entries of this table.
+	 */
+	public int getSize() {
+		return mask + 1;
+	}
+
+}
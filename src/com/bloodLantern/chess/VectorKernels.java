@@ -0,0 +1,52 @@
+package com.bloodLantern.chess;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link NetworkKernels} written with the incubating Vector API, using the
+ * widest vectors of the CPU. This class needs the {@code jdk.incubator.vector}
+ * module both to compile and to run, and is never loaded without it.
+ *
+ * @author BloodLantern
+ */
+final class VectorKernels implements NetworkKernels {
+
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	VectorKernels() {
+	}
+
+	@Override
+	public int dot(int[] input, int[] weights, int offset, int length) {
+		IntVector sums = IntVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+			sums = IntVector.fromArray(SPECIES, input, i).mul(IntVector.fromArray(SPECIES, weights, offset + i))
+					.add(sums);
+		int sum = sums.reduceLanes(VectorOperators.ADD);
+		// Remaining values when the length isn't a multiple of the vector size
+		for (; i < length; i++)
+			sum += input[i] * weights[offset + i];
+		return sum;
+	}
+
+	@Override
+	public void update(int[] values, int[] weights, int offset, int length, boolean add) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+			IntVector value = IntVector.fromArray(SPECIES, values, i);
+			IntVector weight = IntVector.fromArray(SPECIES, weights, offset + i);
+			(add ? value.add(weight) : value.sub(weight)).intoArray(values, i);
+		}
+		for (; i < length; i++)
+			values[i] += add ? weights[offset + i] : -weights[offset + i];
+	}
+
+	@Override
+	public String getName() {
+		return "Vector API, " + SPECIES.vectorBitSize() + " bits";
+	}
+
+}
@@ -0,0 +1,140 @@
+package com.bloodLantern.chess;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import com.bloodLantern.chess.pieces.Piece;
+
+/**
+ * Random keys used to hash positions. The keys follow the Polyglot layout: 768
+ * Piece keys (12 Piece kinds times 64 squares), 4 castling keys, 8 en passant
+ * file keys and a side to move key.
+ * <p>
+ * The standard Polyglot keys (the {@code Random64} array of the Polyglot
+ * sources, 781 big-endian longs) are read from the {@value #RESOURCE} resource
+ * of the classpath, or from any file with {@link #load(Path)}. Only with them
+ * are the books of other tools readable and the books of the
+ * {@link BookBuilder} usable by them, which {@link #isStandard()} tells. When
+ * the resource is missing, keys generated from a fixed seed are used so that
+ * hashing still works.
+ *
+ * @author BloodLantern
+ */
+public final class Zobrist {
+
+	/**
+	 * Index of the first castling key.
+	 */
+	static final int CASTLING = 768;
+	/**
+	 * Index of the first en passant key.
+	 */
+	static final int EN_PASSANT = 772;
+	/**
+	 * Index of the white to move key.
+	 */
+	static final int TURN = 780;
+	/**
+	 * Classpath resource holding the standard Polyglot keys.
+	 */
+	public static final String RESOURCE = "/polyglot-random64.bin";
+	/**
+	 * Hash of the starting position with the standard Polyglot keys, given by the
+	 * Polyglot book format specification.
+	 */
+	static final long STANDARD_STARTING_HASH = 0x463B96181691FC9CL;
+
+	/**
+	 * Every key, in the Polyglot order.
+	 */
+	static final long[] KEYS = new long[781];
+
+	static {
+		try (InputStream in = Zobrist.class.getResourceAsStream(RESOURCE)) {
+			if (in != null)
+				load(in);
+			else {
+				// Fallback keys, only compatible with books built with them
+				SplittableRandom random = new SplittableRandom(0x5EED_C4E55L);
+				for (int i = 0; i < KEYS.length; i++)
+					KEYS[i] = random.nextLong();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Can't read the Polyglot keys from " + RESOURCE, e);
+		}
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Replaces the keys by the ones stored in {@code path}. Must be called before
+	 * any board is set up as the hashes are updated incrementally.
+	 *
+	 * @param path A file of 781 big-endian longs in the Polyglot order.
+	 * @throws IOException If the file can't be read or is too short.
+	 */
+	public static void load(Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			load(in);
+		}
+	}
+
+	private static void load(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		for (int i = 0; i < KEYS.length; i++)
+			KEYS[i] = in.readLong();
+	}
+
+	/**
+	 * Tells if the keys are the standard Polyglot ones, by hashing the starting
+	 * position without setting up any board.
+	 *
+	 * @return True if books made by other Polyglot tools can be read.
+	 */
+	public static boolean isStandard() {
+		return getStartingHash() == STANDARD_STARTING_HASH;
+	}
+
+	/**
+	 * Hashes the starting position with white to move straight from the keys.
+	 *
+	 * @return The same hash as {@link Chess#getPositionHash(boolean)} on the
+	 *         starting position.
+	 */
+	static long getStartingHash() {
+		int[] backRank = { Piece.ROOK, Piece.KNIGHT, Piece.BISHOP, Piece.QUEEN, Piece.KING, Piece.BISHOP,
+				Piece.KNIGHT, Piece.ROOK };
+		long hash = KEYS[TURN];
+		for (int i = 0; i < 4; i++)
+			hash ^= KEYS[CASTLING + i];
+		for (int file = 0; file < 8; file++) {
+			// Polyglot Piece kinds are twice the type, plus one for white
+			hash ^= KEYS[64 * (2 * backRank[file] + 1) + file];
+			hash ^= KEYS[64 * (2 * Piece.PAWN + 1) + 8 + file];
+			hash ^= KEYS[64 * 2 * Piece.PAWN + 48 + file];
+			hash ^= KEYS[64 * 2 * backRank[file] + 56 + file];
+		}
+		return hash;
+	}
+
+	/**
+	 * Gets the key of {@code piece} standing on {@code tile}.
+	 *
+	 * @param piece The Piece to get the key of.
+	 * @param tile  The Tile on which {@code piece} stands.
+	 * @return The key to XOR into the position hash.
+	 */
+	static long getPieceKey(Piece piece, Tile tile) {
+		int kind = 2 * piece.getType() + (piece.isWhite() ? 1 : 0);
+		// Polyglot squares start at a1 while our lines start at the eighth rank
+		return KEYS[64 * kind + 8 * (7 - tile.getLine()) + tile.getRow()];
+	}
+
+}
@@ -73,6 +73,11 @@ public final class Bishop extends Piece {
 		return list;
 	}
 
+	@Override
+	public int getType() {
+		return BISHOP;
+	}
+
 	@Override
 	public char getFENValue() {
 		if (white)
@@ -15,9 +15,6 @@ public final class King extends Piece implements IfNotMoved {
 
 	public static final char FEN_VALUE = 'K';
 
-	private static King whiteKing;
-	private static King blackKing;
-
 	private boolean moved = false;
 
 	/**
@@ -26,10 +23,7 @@ public final class King extends Piece implements IfNotMoved {
 	 */
 	public King(boolean white, Tile tile) {
 		super(white, white ? Piece.TEXTURE_WHITE_KING : Piece.TEXTURE_BLACK_KING, tile);
-		if (white)
-			whiteKing = this;
-		else
-			blackKing = this;
+		Chess.getInstance().setKing(this);
 	}
 
 	/**
@@ -96,7 +90,9 @@ public final class King extends Piece implements IfNotMoved {
 			if (tiles[x][tile.getLine()].getPiece() != null)
 				if (!tiles[x][tile.getLine()].getPiece().equals(this))
 					return false;
-			if (tiles[x][tile.getLine()].isEnemyProtected(white))
+			// Only the Tiles the King crosses must be safe, the Rook may pass an attacked
+			// one
+			if (Math.abs(x - tile.getRow()) <= 2 && tiles[x][tile.getLine()].isEnemyProtected(white))
 				return false;
 		}
 		return true;
@@ -123,21 +119,21 @@ public final class King extends Piece implements IfNotMoved {
 	}
 
 	/**
-	 * Getter for the whiteKing value.
+	 * Gets the white King of the current board.
 	 *
-	 * @return The whiteKing to get.
+	 * @return The white King of {@link Chess#getInstance()}.
 	 */
 	public static King getWhiteKing() {
-		return whiteKing;
+		return Chess.getInstance().getWhiteKing();
 	}
 
 	/**
-	 * Getter for the blackKing value.
+	 * Gets the black King of the current board.
 	 *
-	 * @return The blackKing to get.
+	 * @return The black King of {@link Chess#getInstance()}.
 	 */
 	public static King getBlackKing() {
-		return blackKing;
+		return Chess.getInstance().getBlackKing();
 	}
 	
 	/**
@@ -147,7 +143,12 @@ public final class King extends Piece implements IfNotMoved {
 	 * @return The enemy King of {@code piece}.
 	 */
 	public static King getEnemyKing(Piece piece) {
-		return !piece.isWhite() ? whiteKing : blackKing;
+		return !piece.isWhite() ? getWhiteKing() : getBlackKing();
+	}
+
+	@Override
+	public int getType() {
+		return KING;
 	}
 
 	@Override
@@ -62,6 +62,11 @@ public final class Knight extends Piece {
 		return getProtectedTiles();
 	}
 
+	@Override
+	public int getType() {
+		return KNIGHT;
+	}
+
 	@Override
 	public char getFENValue() {
 		if (white)
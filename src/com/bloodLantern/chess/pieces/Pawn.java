@@ -32,6 +32,10 @@ public final class Pawn extends Piece implements IfNotMoved {
 
 	private boolean moved = false;
 	private int adaptiveDirection = 0;
+	/**
+	 * The Piece this Pawn was transformed into, null if it wasn't.
+	 */
+	private Piece promotion = null;
 
 	/**
 	 * @param white Whether the Piece should be white or black.
@@ -157,6 +161,17 @@ public final class Pawn extends Piece implements IfNotMoved {
 		}
 	}
 
+	/**
+	 * Transforms this Pawn into an already chosen Piece, without asking anything.
+	 * Used when replaying recorded Moves.
+	 *
+	 * @param piece The Piece to transform this Pawn into. Must have been
+	 *              constructed from this Pawn.
+	 */
+	public void promote(Piece piece) {
+		transform(piece);
+	}
+
 	/**
 	 * Transforms this Pawn into another Piece. This method also turns the
 	 * {@link Chess#timer} back on.
@@ -165,9 +180,11 @@ public final class Pawn extends Piece implements IfNotMoved {
 	 */
 	private void transform(Piece piece) {
 		if (!(piece instanceof Pawn)) {
+			promotion = piece;
 			piece.setTile(tile, true);
 			piece.refreshTileProtection();
-			Chess.getInstance().mainPanel.repaint();
+			if (Chess.getInstance().mainPanel != null)
+				Chess.getInstance().mainPanel.repaint();
 		}
 		Chess.timer = true;
 		Chess.getInstance().computeTileProtection();
@@ -195,7 +212,7 @@ public final class Pawn extends Piece implements IfNotMoved {
 					if (moveTo.getPiece() == null)
 						if (moveTo.getLine() - adaptiveDirection == 0)
 							pawnCheck = true;
-						else if (!moved)
+						else if (isOnStartingLine())
 							if (moveTo.getLine() - adaptiveDirection == -1 || moveTo.getLine() - adaptiveDirection == 1)
 								if (Chess.getInstance().getTiles()[this.tile.getRow()][adaptiveDirection]
 										.getPiece() == null)
@@ -212,6 +229,10 @@ public final class Pawn extends Piece implements IfNotMoved {
 					return true;
 				// If this Piece's King is in check this Piece may move to protect it
 			} else {
+				// Taking en passant removes the Pawn from another Tile than moveTo, so let
+				// tryMove() tell if it takes the checking Pawn or blocks the check
+				if (moveTo.equals(Chess.getInstance().getEnPassant()))
+					return tryMove(moveTo);
 				// If this Piece's King is in check by only one enemy Piece
 				if (getKing().getTile().getEnemyProtection(white).size() == 1)
 					// If this Piece can attack the attacking one
@@ -226,12 +247,91 @@ public final class Pawn extends Piece implements IfNotMoved {
 		return false;
 	}
 
+	/**
+	 * Checks if another allied Pawn stands on the same row as this one.
+	 *
+	 * @return True if this Pawn is doubled.
+	 */
+	public boolean isDoubled() {
+		for (Tile t : Chess.getInstance().getTiles()[tile.getRow()])
+			if (t != tile && t.getPiece() instanceof Pawn pawn && pawn.white == white)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks if no allied Pawn stands on the adjacent rows.
+	 *
+	 * @return True if this Pawn is isolated.
+	 */
+	public boolean isIsolated() {
+		Tile[][] tiles = Chess.getInstance().getTiles();
+		for (int row = tile.getRow() - 1; row <= tile.getRow() + 1; row += 2)
+			if (row >= 0 && row <= 7)
+				for (Tile t : tiles[row])
+					if (t.getPiece() instanceof Pawn pawn && pawn.white == white)
+						return false;
+		return true;
+	}
+
+	/**
+	 * Checks if no enemy Pawn can stop this one from reaching the last line, that
+	 * means none stands in front of it on its row or the adjacent ones.
+	 *
+	 * @return True if this Pawn is passed.
+	 */
+	public boolean isPassed() {
+		Tile[][] tiles = Chess.getInstance().getTiles();
+		int direction = white ? -1 : 1;
+		for (int row = Math.max(tile.getRow() - 1, 0); row <= Math.min(tile.getRow() + 1, 7); row++)
+			for (int line = tile.getLine() + direction; line >= 0 && line <= 7; line += direction)
+				if (tiles[row][line].getPiece() instanceof Pawn pawn && pawn.white != white)
+					return false;
+		return true;
+	}
+
+	/**
+	 * Checks if this Pawn is behind every allied Pawn of the adjacent rows and
+	 * can't safely advance because an enemy Pawn protects the Tile in front of
+	 * it.
+	 *
+	 * @return True if this Pawn is backward.
+	 */
+	public boolean isBackward() {
+		Tile[][] tiles = Chess.getInstance().getTiles();
+		int direction = white ? -1 : 1;
+		// Allied Pawns on the same line or behind can still support this one
+		for (int row = tile.getRow() - 1; row <= tile.getRow() + 1; row += 2)
+			if (row >= 0 && row <= 7)
+				for (int line = tile.getLine(); line >= 0 && line <= 7; line -= direction)
+					if (tiles[row][line].getPiece() instanceof Pawn pawn && pawn.white == white)
+						return false;
+		int attackLine = tile.getLine() + 2 * direction;
+		if (attackLine < 0 || attackLine > 7)
+			return false;
+		for (int row = tile.getRow() - 1; row <= tile.getRow() + 1; row += 2)
+			if (row >= 0 && row <= 7)
+				if (tiles[row][attackLine].getPiece() instanceof Pawn pawn && pawn.white != white)
+					return true;
+		return false;
+	}
+
+	/**
+	 * Checks if this Pawn can still advance two Tiles. This depends on its line
+	 * rather than on {@link #isMoved()}, which simulated Moves don't update.
+	 *
+	 * @return True if this Pawn stands on its starting line.
+	 */
+	public boolean isOnStartingLine() {
+		return tile.getLine() == (white ? 6 : 1);
+	}
+
 	public ArrayList<Tile> getMovingTiles() {
 		computeAdaptiveDirection();
 		ArrayList<Tile> list = new ArrayList<>();
 		list.addAll(getProtectedTiles());
 		list.add(Chess.getInstance().getTiles()[tile.getRow()][adaptiveDirection]);
-		if (!moved)
+		if (isOnStartingLine())
 			list.add(Chess.getInstance().getTiles()[tile.getRow()][white ? adaptiveDirection - 1
 					: adaptiveDirection + 1]);
 		return list;
@@ -268,6 +368,16 @@ public final class Pawn extends Piece implements IfNotMoved {
 		return getProtectedTiles();
 	}
 
+	/**
+	 * Getter for the promotion value. Lets a Move know what its Pawn was
+	 * transformed into when the player chose it after the Move was played.
+	 *
+	 * @return The Piece this Pawn was transformed into, null if it wasn't.
+	 */
+	public Piece getPromotion() {
+		return promotion;
+	}
+
 	/**
 	 * Getter for the moved value.
 	 *
@@ -288,6 +398,11 @@ public final class Pawn extends Piece implements IfNotMoved {
 		this.moved = moved;
 	}
 
+	@Override
+	public int getType() {
+		return PAWN;
+	}
+
 	@Override
 	public char getFENValue() {
 		if (white)
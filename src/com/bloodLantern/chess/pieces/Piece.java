@@ -1,14 +1,14 @@
 package com.bloodLantern.chess.pieces;
 
 import java.awt.Image;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.ArrayList;
-
-import javax.imageio.ImageIO;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import com.bloodLantern.chess.Chess;
 import com.bloodLantern.chess.Move;
+import com.bloodLantern.chess.Textures;
 import com.bloodLantern.chess.Tile;
 
 /**
@@ -19,27 +19,35 @@ import com.bloodLantern.chess.Tile;
  */
 public abstract sealed class Piece permits Pawn,King,Queen,Bishop,Knight,Rook {
 
-	public static final Image TEXTURE_WHITE_PAWN = getImage("white_pawn");
-	public static final Image TEXTURE_BLACK_PAWN = getImage("black_pawn");
-	public static final Image TEXTURE_WHITE_ROOK = getImage("white_rook");
-	public static final Image TEXTURE_BLACK_ROOK = getImage("black_rook");
-	public static final Image TEXTURE_WHITE_KNIGHT = getImage("white_knight");
-	public static final Image TEXTURE_BLACK_KNIGHT = getImage("black_knight");
-	public static final Image TEXTURE_WHITE_BISHOP = getImage("white_bishop");
-	public static final Image TEXTURE_BLACK_BISHOP = getImage("black_bishop");
-	public static final Image TEXTURE_WHITE_QUEEN = getImage("white_queen");
-	public static final Image TEXTURE_BLACK_QUEEN = getImage("black_queen");
-	public static final Image TEXTURE_WHITE_KING = getImage("white_king");
-	public static final Image TEXTURE_BLACK_KING = getImage("black_king");
-
-	private static Image getImage(String string) {
-		try {
-			return ImageIO.read(new FileInputStream("pieces/" + string + ".png"));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return null;
-	}
+	/**
+	 * Type indices returned by {@link #getType()}. They are used to index the
+	 * evaluation tables without going through an {@code instanceof} chain.
+	 */
+	public static final int PAWN = 0;
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+
+	public static final Image TEXTURE_WHITE_PAWN = Textures.getPiece(PAWN, true);
+	public static final Image TEXTURE_BLACK_PAWN = Textures.getPiece(PAWN, false);
+	public static final Image TEXTURE_WHITE_ROOK = Textures.getPiece(ROOK, true);
+	public static final Image TEXTURE_BLACK_ROOK = Textures.getPiece(ROOK, false);
+	public static final Image TEXTURE_WHITE_KNIGHT = Textures.getPiece(KNIGHT, true);
+	public static final Image TEXTURE_BLACK_KNIGHT = Textures.getPiece(KNIGHT, false);
+	public static final Image TEXTURE_WHITE_BISHOP = Textures.getPiece(BISHOP, true);
+	public static final Image TEXTURE_BLACK_BISHOP = Textures.getPiece(BISHOP, false);
+	public static final Image TEXTURE_WHITE_QUEEN = Textures.getPiece(QUEEN, true);
+	public static final Image TEXTURE_BLACK_QUEEN = Textures.getPiece(QUEEN, false);
+	public static final Image TEXTURE_WHITE_KING = Textures.getPiece(KING, true);
+	public static final Image TEXTURE_BLACK_KING = Textures.getPiece(KING, false);
+
+	/**
+	 * The textures already scaled to the sizes they are drawn at, by texture then
+	 * size. Only used on the Event Dispatch Thread.
+	 */
+	private static final Map<Image, Map<Integer, Image>> sprites = new IdentityHashMap<>();
 
 	public static Image getPieceImage(Piece piece) {
 		if (piece.isWhite()) {
@@ -147,7 +155,8 @@ public abstract sealed class Piece permits Pawn,King,Queen,Bishop,Knight,Rook {
 							if (getKing().getTile().getEnemyProtection(white).size() == 1)
 								// If this Piece can attack the attacking one
 								if (getKing().getTile().getEnemyProtection(white).get(0).getTile().equals(moveTo))
-									return true;
+									// Unless this Piece is pinned
+									return tryMove(moveTo);
 								else
 									// If this Piece can move between its King and the Piece that attacks it
 									for (Tile t : getKing().getTile().getEnemyProtection(white).get(0)
@@ -325,7 +334,9 @@ public abstract sealed class Piece permits Pawn,King,Queen,Bishop,Knight,Rook {
 	 *                 Piece according to {@code tile}'s position on the board ?
 	 */
 	public void setTile(Tile tile, boolean setXAndY) {
-		if (this.tile != null)
+		// The old Tile may already hold another Piece if this one was lifted off the
+		// board, as Fen does
+		if (this.tile != null && this.tile.getPiece() == this)
 			this.tile.setPiece(null, false);
 		this.tile = tile;
 		if (tile.getPiece() != this)
@@ -345,6 +356,32 @@ public abstract sealed class Piece permits Pawn,King,Queen,Bishop,Knight,Rook {
 		return texture;
 	}
 
+	/**
+	 * Gets this Piece's texture scaled to {@link Chess#TILES_SIZE}.
+	 *
+	 * @return The sprite to draw at the Piece's position.
+	 * @see #getSprite(Image, int)
+	 */
+	public Image getSprite() {
+		return getSprite(texture, Chess.TILES_SIZE);
+	}
+
+	/**
+	 * Gets a texture scaled to {@code size}. The scaled image is created once, in
+	 * the format of the screen so that drawing it is a plain copy, then kept for
+	 * the next calls. Must be called on the Event Dispatch Thread.
+	 *
+	 * @param texture The texture to scale.
+	 * @param size    The width and height of the sprite (in px).
+	 * @return The sprite, null if {@code texture} is null.
+	 */
+	public static Image getSprite(Image texture, int size) {
+		if (texture == null)
+			return null;
+		return sprites.computeIfAbsent(texture, t -> new HashMap<>()).computeIfAbsent(size,
+				s -> Textures.copy(texture, s, s));
+	}
+
 	/**
 	 * Getter for the FEN value of this Piece.
 	 *
@@ -353,6 +390,14 @@ public abstract sealed class Piece permits Pawn,King,Queen,Bishop,Knight,Rook {
 	 */
 	public abstract char getFENValue();
 
+	/**
+	 * Getter for the type of this Piece.
+	 *
+	 * @return One of {@link #PAWN}, {@link #KNIGHT}, {@link #BISHOP},
+	 *         {@link #ROOK}, {@link #QUEEN} or {@link #KING}.
+	 */
+	public abstract int getType();
+
 	/**
 	 * 
 	 */
@@ -136,6 +136,11 @@ public final class Queen extends Piece {
 		return list;
 	}
 
+	@Override
+	public int getType() {
+		return QUEEN;
+	}
+
 	@Override
 	public char getFENValue() {
 		if (white)
@@ -127,6 +127,11 @@ public final class Rook extends Piece implements IfNotMoved {
 		this.moved = moved;
 	}
 
+	@Override
+	public int getType() {
+		return ROOK;
+	}
+
 	@Override
 	public char getFENValue() {
 		if (white)